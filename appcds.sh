@@ -0,0 +1,21 @@
+#!/bin/sh
+# Builds build/inventory.jar and a class data sharing archive for it, so short scripted runs
+# neither compile the source nor load most classes from scratch. The training run connects
+# with the settings in JAVA_OPTS, so the database must be reachable and already migrated:
+#
+#   JAVA_OPTS="-Dinventory.db.url=jdbc:mysql://localhost:3306/inventory_db" ./appcds.sh mysql-connector-j.jar
+set -e
+cd "$(dirname "$0")"
+DRIVER=${1:?usage: appcds.sh <jdbc-driver.jar>}
+
+mkdir -p build/src build/classes
+cp inventory.java build/src/InventoryManagementSystem.java
+javac -nowarn -d build/classes build/src/InventoryManagementSystem.java
+jar --create --file build/inventory.jar --main-class InventoryManagementSystem -C build/classes .
+
+rm -f build/inventory.jsa
+java -XX:ArchiveClassesAtExit=build/inventory.jsa -Xlog:cds=off -Xlog:cds+dynamic=off $JAVA_OPTS \
+    -Dinventory.fastStart=true -cp "build/inventory.jar:$DRIVER" InventoryManagementSystem --startup-check
+
+echo "Archive written to build/inventory.jsa. Run with:"
+echo "  java -XX:SharedArchiveFile=build/inventory.jsa -Dinventory.fastStart=true -cp build/inventory.jar:$DRIVER InventoryManagementSystem"
@@ -1,90 +1,442 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 
 public class InventoryManagementSystem {
-    private Connection connection;
+    private static final int PAGE_SIZE = Integer.getInteger("inventory.page.size", 20);
+
+    private final OperationMetrics metrics = new OperationMetrics();
+    private WarehouseRouter router;
+    private InventoryStore store;
+    private LowStockEvaluator lowStock;
+    private AlertPipeline alertPipeline;
+    private StockCounters stockCounters;
+    private CatalogAnalytics analytics;
+    private final ItemSearchIndex searchIndex = new ItemSearchIndex();
+    private CatalogCache catalog;
+    private ScheduledExecutorService snapshots;
+    private ScheduledExecutorService folding;
+    private HistoryArchiver archiver;
+    private ScheduledExecutorService archiving;
+    private ScheduledExecutorService searchLoading;
     private Scanner scanner;
+    /** Set once shutdown starts, so background work cut off by it is not reported as failed. */
+    private volatile boolean stopping;
+    /** Connect on first use and check the schema version instead of migrating; see {@link #connectToDatabase}. */
+    private final boolean fastStart = Boolean.getBoolean("inventory.fastStart");
+    /** Startup phases so far, printed with {@code inventory.startup.timing}. */
+    private final StringBuilder startupPhases = new StringBuilder();
+    private long phaseStarted = MAIN_STARTED;
+    private boolean startupReported;
+
+    private static final long MAIN_STARTED = System.nanoTime();
 
     public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals("--bench")) {
+            InventoryBenchmark.main(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--load")) {
+            LoadGenerator.main(args);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--bench-compare")) {
+            InventoryBenchmark.compare(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+        
         InventoryManagementSystem system = new InventoryManagementSystem();
         system.connectToDatabase();
-        system.createTablesIfNotExist();
+        system.startupPhase("connect");
+        system.migrateSchema();
+        system.startupPhase("schema");
+        system.startServices();
+        system.startupPhase("services");
+        
+        if (args.length == 1 && args[0].equals("--startup-check")) {
+            system.checkDatabase();
+            system.shutdown();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--receive-probe")) {
+            ReceiveThroughputProbe probe = new ReceiveThroughputProbe(system.store);
+            try {
+                for (String threads : args[1].split(",")) {
+                    probe.run(Integer.parseInt(threads.trim()), Integer.parseInt(args[2]));
+                }
+            } catch (Exception e) {
+                System.err.println("Receive probe failed: " + e.getMessage());
+            }
+            system.shutdown();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--consume-probe")) {
+            ConsumeThroughputProbe probe = new ConsumeThroughputProbe(system.store, system.stockCounters,
+                system.catalog);
+            try {
+                for (String threads : args[1].split(",")) {
+                    probe.run(Integer.parseInt(threads.trim()), Integer.parseInt(args[2]));
+                }
+            } catch (Exception e) {
+                System.err.println("Consume probe failed: " + e.getMessage());
+            }
+            system.shutdown();
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--reorder")) {
+            system.reorderLowStock(false);
+            system.shutdown();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--export")) {
+            system.exportTable(args[1], Paths.get(args[2]));
+            system.shutdown();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--export-changes")) {
+            system.exportChanges(Long.parseLong(args[1]), Paths.get(args[2]));
+            system.shutdown();
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--archive")) {
+            system.archiveHistory();
+            system.shutdown();
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--warehouse-stock")) {
+            system.viewWarehouseStock();
+            system.shutdown();
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--import")) {
+            system.importItems(Paths.get(args[1]),
+                Integer.getInteger("inventory.import.batchSize", 1000),
+                Integer.getInteger("inventory.import.transactionSize", 10000));
+            system.shutdown();
+            return;
+        }
         system.run();
     }
 
     public void connectToDatabase() {
         try {
-            Class.forName("com.mysql.jdbc.Driver");
-            connection = DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/inventory_db", "username", "password");
-            System.out.println("Connected to database successfully");
+            boolean timeJdbc = Boolean.parseBoolean(System.getProperty("inventory.metrics.jdbc", "true"));
+            router = WarehouseRouter.fromSystemProperties(timeJdbc ? metrics : null);
+            store = router.store(router.home());
+            System.out.println((fastStart ? "Using " : "Connected to ") + router.config(router.home()).dialect.displayName +
+                (fastStart ? " database, connecting on first use" : " database successfully") +
+                (router.warehouses().size() > 1 ? " (warehouse " + router.home() + ")" : ""));
         } catch (Exception e) {
             System.err.println("Database connection error: " + e.getMessage());
         }
     }
 
-    public void createTablesIfNotExist() {
+    public void migrateSchema() {
+        if (fastStart) {
+            return; // The first connection checks the version instead
+        }
         try {
-            Statement stmt = connection.createStatement();
-            
-            // Items table
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS items (" +
-                "item_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                "name VARCHAR(100) NOT NULL, " +
-                "description VARCHAR(255), " +
-                "quantity INT NOT NULL, " +
-                "price DECIMAL(10,2) NOT NULL, " +
-                "threshold INT NOT NULL)");
-            
-            // Suppliers table
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS suppliers (" +
-                "supplier_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                "name VARCHAR(100) NOT NULL, " +
-                "contact VARCHAR(100), " +
-                "phone VARCHAR(20), " +
-                "email VARCHAR(100))");
-            
-            // Orders table
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS orders (" +
-                "order_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                "supplier_id INT, " +
-                "item_id INT, " +
-                "quantity INT NOT NULL, " +
-                "order_date DATE NOT NULL, " +
-                "status VARCHAR(20) NOT NULL, " +
-                "FOREIGN KEY (supplier_id) REFERENCES suppliers(supplier_id), " +
-                "FOREIGN KEY (item_id) REFERENCES items(item_id))");
-            
-            // Alerts table
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS alerts (" +
-                "alert_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                "item_id INT, " +
-                "message VARCHAR(255) NOT NULL, " +
-                "alert_date DATE NOT NULL, " +
-                "status VARCHAR(20) NOT NULL, " +
-                "FOREIGN KEY (item_id) REFERENCES items(item_id))");
-            
-            System.out.println("Tables created/verified successfully");
+            int version = store.migrate();
+            System.out.println("Database schema is at version " + version);
+        } catch (SQLException e) {
+            System.err.println("Error migrating database schema: " + e.getMessage());
+        }
+    }
+
+    public void startServices() {
+        catalog = new CatalogCache(store.items(), store.suppliers(),
+            Integer.getInteger("inventory.cache.items", 10000),
+            Integer.getInteger("inventory.cache.suppliers", 1000));
+        lowStock = new LowStockEvaluator(store.items(), store.alerts());
+        if (Boolean.parseBoolean(System.getProperty("inventory.metrics.jmx", "true"))) {
+            if (fastStart) {
+                // Starting the platform MBean server takes longer than the rest of startup
+                Thread exporter = new Thread(metrics::exportToJmx, "jmx-export");
+                exporter.setDaemon(true);
+                exporter.start();
+            } else {
+                metrics.exportToJmx();
+            }
+        }
+        int logInterval = Integer.getInteger("inventory.metrics.logIntervalSeconds", 60);
+        if (logInterval > 0) {
+            metrics.startSummaryLog(logInterval);
+        }
+        int snapshotInterval = Integer.getInteger("inventory.ledger.snapshotIntervalSeconds", 3600);
+        if (snapshotInterval > 0) {
+            scheduleStockSnapshots(snapshotInterval);
+        }
+        int foldInterval = Integer.getInteger("inventory.ledger.foldIntervalSeconds", 5);
+        if (foldInterval > 0) {
+            scheduleStockFold(foldInterval);
+        }
+        archiver = new HistoryArchiver(store.orders(), store.alerts(),
+            Integer.getInteger("inventory.archive.maxAgeDays", 90),
+            Integer.getInteger("inventory.archive.batchSize", 500),
+            Long.getLong("inventory.archive.pauseMillis", 50L));
+        int archiveInterval = Integer.getInteger("inventory.archive.intervalMinutes", 60);
+        if (archiveInterval > 0) {
+            scheduleArchiving(archiveInterval);
+        }
+        if (!fastStart) {
+            try {
+                lowStock.loadPendingAlerts();
+            } catch (SQLException e) {
+                System.err.println("Error loading pending alerts: " + e.getMessage());
+            }
+        }
+        alertPipeline = new AlertPipeline(lowStock, metrics,
+            Integer.getInteger("inventory.alerts.queueCapacity", 10000),
+            Integer.getInteger("inventory.alerts.batchSize", 500),
+            Long.getLong("inventory.alerts.offerTimeoutMillis", 50L));
+        analytics = new CatalogAnalytics(store.items(), metrics,
+            TimeUnit.SECONDS.toMillis(Long.getLong("inventory.analytics.maxAgeSeconds", 300L)));
+        // Flushed consumption changes current quantities behind the cache's back
+        stockCounters = new StockCounters(store.items(), new StockConsumerClaim(store.pool(), store.dialect()),
+            alertPipeline, itemIds -> {
+                analytics.itemsChanged(itemIds);
+                for (int itemId : itemIds) {
+                    catalog.invalidateItem(itemId);
+                }
+            }, metrics,
+            Integer.getInteger("inventory.consume.stripes", 64),
+            Long.getLong("inventory.consume.flushMillis", 200L),
+            Long.getLong("inventory.consume.refreshMillis", 5000L));
+    }
+
+    /** Opens a connection, which under fast start also checks the schema version. */
+    public void checkDatabase() {
+        try {
+            store.pool().borrow().close();
+            System.out.println("Database is ready");
         } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
+            System.err.println("Database connection error: " + e.getMessage());
+        }
+    }
+
+    private void startupPhase(String name) {
+        long now = System.nanoTime();
+        startupPhases.append(startupPhases.length() == 0 ? "" : ", ").append(name).append(' ')
+            .append((now - phaseStarted) / 1_000_000).append(" ms");
+        phaseStarted = now;
+    }
+
+    /**
+     * With {@code inventory.startup.timing}, prints once how long the process took to reach
+     * {@code milestone}, from JVM start where the OS reports it, and the phases since main.
+     */
+    private void reportStartup(String milestone) {
+        if (startupReported || !Boolean.getBoolean("inventory.startup.timing")) {
+            return;
+        }
+        startupReported = true;
+        startupPhase(milestone);
+        long sinceMain = (System.nanoTime() - MAIN_STARTED) / 1_000_000;
+        String sinceJvm = ProcessHandle.current().info().startInstant()
+            .map(start -> (System.currentTimeMillis() - start.toEpochMilli()) + " ms after JVM start, ")
+            .orElse("");
+        System.err.println("Startup: " + milestone + " " + sinceJvm + sinceMain + " ms after main (" +
+            startupPhases + ")");
+    }
+
+    /**
+     * Indexes items not yet in the search index, in the background so startup does not wait.
+     * The first call also schedules a load every {@code inventory.search.reloadSeconds}, which
+     * picks up items that other processes add.
+     */
+    private void loadSearchIndex() {
+        if (searchLoading == null) {
+            searchLoading = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "search-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+            int seconds = Integer.getInteger("inventory.search.reloadSeconds", 30);
+            if (seconds > 0) {
+                searchLoading.scheduleWithFixedDelay(this::indexNewItems, seconds, seconds, TimeUnit.SECONDS);
+            }
+        }
+        searchLoading.execute(this::indexNewItems);
+    }
+
+    private void indexNewItems() {
+        try {
+            metrics.time("loadSearchIndex", () -> searchIndex.load(store.items()));
+        } catch (SQLException e) {
+            if (!stopping) {
+                System.err.println("Error loading search index: " + e.getMessage());
+            }
         }
     }
 
+    /** Flushes queued alert checks, then stops background work and closes the database. */
+    public void shutdown() {
+        reportStartup("first command done");
+        stopping = true;
+        if (stockCounters != null) {
+            stockCounters.close();
+        }
+        if (alertPipeline != null) {
+            alertPipeline.close();
+            printRaisedAlerts();
+        }
+        if (snapshots != null) snapshots.shutdownNow();
+        if (folding != null) folding.shutdownNow();
+        if (archiving != null) archiving.shutdownNow();
+        if (searchLoading != null) searchLoading.shutdownNow();
+        if (router != null) router.close();
+        metrics.close();
+    }
+
+    /** Snapshots the stock ledger on a fixed interval so point-in-time queries stay cheap. */
+    private void scheduleStockSnapshots(int seconds) {
+        snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                metrics.time("takeStockSnapshot", () -> store.ledger().takeSnapshot());
+            } catch (SQLException e) {
+                if (!stopping) {
+                    System.err.println("Error taking stock snapshot: " + e.getMessage());
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Folds committed ledger movements into {@code items.quantity} on a fixed interval, so the
+     * tail every stock read adds up stays about one interval long.
+     */
+    private void scheduleStockFold(int seconds) {
+        folding = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-fold");
+            thread.setDaemon(true);
+            return thread;
+        });
+        folding.scheduleWithFixedDelay(() -> {
+            try {
+                metrics.time("foldStockLedger", () -> store.ledger().fold());
+            } catch (SQLException e) {
+                if (!stopping) {
+                    System.err.println("Error folding stock ledger: " + e.getMessage());
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /** Archives closed orders and resolved alerts in the background, one pass per interval. */
+    private void scheduleArchiving(int minutes) {
+        archiving = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiving.scheduleWithFixedDelay(() -> {
+            try {
+                metrics.time("archiveHistory", archiver::run);
+            } catch (SQLException e) {
+                if (!stopping) {
+                    System.err.println("Error archiving history: " + e.getMessage());
+                }
+            }
+        }, minutes, minutes, TimeUnit.MINUTES);
+    }
+
     public void run() {
+        loadSearchIndex(); // Only the menus search, so headless modes never build the index
         scanner = new Scanner(System.in);
         boolean running = true;
         
         while (running) {
+            printRaisedAlerts();
             System.out.println("\nInventory Management System");
             System.out.println("1. Item Management");
             System.out.println("2. Supplier Management");
             System.out.println("3. Order Management");
             System.out.println("4. View Alerts");
-            System.out.println("5. Exit");
+            System.out.println("5. Administration");
+            System.out.println("6. Exit");
             System.out.print("Select an option: ");
+            reportStartup("menu shown");
             
             int choice = scanner.nextInt();
             scanner.nextLine(); // consume newline
@@ -103,6 +455,9 @@ public class InventoryManagementSystem {
                     viewAlerts();
                     break;
                 case 5:
+                    administration();
+                    break;
+                case 6:
                     running = false;
                     break;
                 default:
@@ -110,24 +465,333 @@ public class InventoryManagementSystem {
             }
         }
         
+        shutdown();
+        scanner.close();
+    }
+
+    private void administration() {
+        boolean back = false;
+        
+        while (!back) {
+            printRaisedAlerts();
+            System.out.println("\nAdministration");
+            System.out.println("1. Connection Pool Statistics");
+            System.out.println("2. Reconcile Low Stock Alerts");
+            System.out.println("3. Catalog Cache Statistics");
+            System.out.println("4. Operation Metrics");
+            System.out.println("5. Verify Stock Against Ledger");
+            System.out.println("6. Inventory Valuation");
+            System.out.println("7. Export Data");
+            System.out.println("8. Stock Across Warehouses");
+            System.out.println("9. Archive Closed Orders and Alerts");
+            System.out.println("10. Alert History by Date");
+            System.out.println("11. Back to Main Menu");
+            System.out.print("Select an option: ");
+            
+            int choice = scanner.nextInt();
+            scanner.nextLine(); // consume newline
+            
+            switch (choice) {
+                case 1:
+                    viewPoolStatistics();
+                    break;
+                case 2:
+                    checkForLowStock();
+                    break;
+                case 3:
+                    viewCacheStatistics();
+                    break;
+                case 4:
+                    viewOperationMetrics();
+                    break;
+                case 5:
+                    verifyStockLedger();
+                    break;
+                case 6:
+                    viewValuation();
+                    break;
+                case 7:
+                    exportData();
+                    break;
+                case 8:
+                    viewWarehouseStock();
+                    break;
+                case 9:
+                    archiveHistory();
+                    break;
+                case 10:
+                    viewAlertsByDate();
+                    break;
+                case 11:
+                    back = true;
+                    break;
+                default:
+                    System.out.println("Invalid option. Please try again.");
+            }
+        }
+    }
+
+    private void viewPoolStatistics() {
+        PoolStats stats = store.pool().stats();
+        System.out.println("\nConnection Pool:");
+        System.out.printf("%-25s %d%n", "Max size", stats.maxSize);
+        System.out.printf("%-25s %d%n", "Active connections", stats.active);
+        System.out.printf("%-25s %d%n", "Idle connections", stats.idle);
+        System.out.printf("%-25s %d%n", "Waiting threads", stats.waiting);
+        System.out.printf("%-25s %d%n", "Borrows", stats.borrows);
+        System.out.printf("%-25s %d%n", "Borrow timeouts", stats.timeouts);
+        System.out.printf("%-25s %.3f%n", "Avg wait (ms)", stats.averageWaitMillis());
+        System.out.printf("%-25s %.3f%n", "Max wait (ms)", stats.maxWaitNanos / 1_000_000.0);
+        System.out.printf("%-25s %d / %d%n", "Statement cache hit/miss",
+            stats.statementCacheHits, stats.statementCacheMisses);
+        
+        ReplicaRouter router = store.replicas();
+        if (router == null) {
+            return;
+        }
+        System.out.printf("%nReplicas (max lag %d ms, read-your-writes %s):%n", router.maxLagMillis(),
+            router.readYourWrites() ? "on" : "off");
+        System.out.printf("%-45s %-10s %-10s %s%n", "URL", "Lag (ms)", "Reads", "Status");
+        for (ReplicaRouter.Replica replica : router.replicas()) {
+            long lag = replica.lagMillis;
+            System.out.printf("%-45s %-10s %-10d %s%n", replica.url, lag == Long.MAX_VALUE ? "-" : String.valueOf(lag),
+                replica.reads.sum(), replica.error != null ? replica.error
+                    : lag > router.maxLagMillis() ? "lagging" : "in use");
+        }
+        System.out.printf("%-45s %-10s %-10d %s%n", "(primary)", "", router.primaryReads(),
+            router.heartbeatError() != null ? "heartbeat failing: " + router.heartbeatError() : "");
+    }
+
+    private void viewCacheStatistics() {
+        System.out.println("\nCatalog Cache:");
+        System.out.printf("%-12s %-10s %-10s %-12s %-12s %-12s %-10s%n",
+            "Cache", "Size", "Max", "Hits", "Misses", "Evictions", "Hit Rate");
+        printCacheStats("Items", catalog.itemStats());
+        printCacheStats("Suppliers", catalog.supplierStats());
+    }
+
+    private void printCacheStats(String name, CacheStats stats) {
+        System.out.printf("%-12s %-10d %-10d %-12d %-12d %-12d %-10.1f%n",
+            name, stats.size, stats.maxSize, stats.hits, stats.misses, stats.evictions,
+            stats.hitRate() * 100);
+    }
+
+    private void viewOperationMetrics() {
+        List<OperationStats> operations = metrics.snapshot();
+        if (operations.isEmpty()) {
+            System.out.println("\nNo operations recorded yet");
+            return;
+        }
+        System.out.println("\nOperation Metrics (latency in microseconds):");
+        System.out.printf("%-50s %-10s %-8s %-10s %-10s %-10s %-10s%n",
+            "Operation", "Calls", "Errors", "Mean", "p50", "p99", "Max");
+        for (OperationStats stats : operations) {
+            LatencyHistogram latency = stats.latency;
+            System.out.printf("%-50s %-10d %-8d %-10.0f %-10.0f %-10.0f %-10.0f%n",
+                OperationMetrics.abbreviate(stats.name, 50), latency.count(), stats.errors(),
+                latency.meanMicros(), latency.percentileMicros(50), latency.percentileMicros(99),
+                latency.maxMicros());
+        }
+        System.out.println("Alert pipeline: " + alertPipeline.describe());
+        System.out.println("Stock counters: " + stockCounters.describe());
+    }
+
+    private void verifyStockLedger() {
         try {
-            if (connection != null) connection.close();
+            List<StockDrift> drifted = metrics.time("verifyStockLedger", () -> store.ledger().verify(false));
+            if (drifted.isEmpty()) {
+                System.out.println("\nEvery item's quantity matches its stock ledger");
+                return;
+            }
+            printDrift(drifted);
+            
+            System.out.print("Reset these items to their ledger quantity? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            List<StockDrift> repaired = metrics.time("repairStockLedger", () -> store.ledger().verify(true));
+            List<Integer> itemIds = new ArrayList<>();
+            for (StockDrift drift : repaired) {
+                catalog.invalidateItem(drift.itemId);
+                itemIds.add(drift.itemId);
+            }
+            System.out.println("Repaired " + repaired.size() + " items");
+            stockChanged(itemIds);
         } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+            System.err.println("Error verifying stock ledger: " + e.getMessage());
+        }
+    }
+
+    private void printDrift(List<StockDrift> drifted) {
+        System.out.println("\nItems whose quantity differs from the stock ledger:");
+        System.out.printf("%-10s %-15s %-15s%n", "Item ID", "Quantity", "Ledger");
+        for (StockDrift drift : drifted) {
+            System.out.printf("%-10d %-15d %-15d%n", drift.itemId, drift.materialized, drift.ledger);
+        }
+    }
+
+    private void viewValuation() {
+        try {
+            CatalogSnapshot snapshot = analytics.current();
+            System.out.printf("%nInventory Valuation (%d items, loaded %d s ago)%n", snapshot.size,
+                (System.currentTimeMillis() - snapshot.loadedAtMillis) / 1000);
+            System.out.printf("%-25s %d%n", "Total units", snapshot.totalUnits());
+            System.out.printf("%-25s %s%n", "Total value", BigDecimal.valueOf(snapshot.totalValueCents(), 2));
+            System.out.printf("%-25s %d%n", "Items at or below threshold", snapshot.lowStockCount());
+            
+            List<CatalogSnapshot.SupplierTotal> totals = snapshot.supplierTotals();
+            System.out.println("\nValue by supplier of each item's latest order:");
+            System.out.printf("%-10s %-20s %-10s %-12s %-15s%n", "ID", "Supplier", "Items", "Units", "Value");
+            for (CatalogSnapshot.SupplierTotal total : totals.subList(0, Math.min(PAGE_SIZE, totals.size()))) {
+                SupplierRow supplier = total.supplierId == 0 ? null : catalog.supplier(total.supplierId);
+                System.out.printf("%-10s %-20s %-10d %-12d %-15s%n",
+                    total.supplierId == 0 ? "-" : String.valueOf(total.supplierId),
+                    total.supplierId == 0 ? "(never ordered)" : supplier == null ? "" : supplier.name,
+                    total.items, total.units, BigDecimal.valueOf(total.valueCents, 2));
+            }
+            
+            int[] lowest = snapshot.lowestHeadroom(PAGE_SIZE);
+            List<Integer> itemIds = new ArrayList<>(lowest.length);
+            for (int position : lowest) {
+                itemIds.add(snapshot.itemIds[position]);
+            }
+            Map<Integer, ItemRow> names = catalog.items(itemIds);
+            System.out.println("\nLowest headroom:");
+            System.out.printf("%-10s %-20s %-10s %-10s %-10s%n", "ID", "Name", "Qty", "Threshold", "Headroom");
+            for (int position : lowest) {
+                ItemRow item = names.get(snapshot.itemIds[position]);
+                System.out.printf("%-10d %-20s %-10d %-10d %-10d%n", snapshot.itemIds[position],
+                    item == null ? "" : item.name, snapshot.quantities[position], snapshot.thresholds[position],
+                    snapshot.headroom(position));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error computing inventory valuation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Totals and the lowest headroom items of every warehouse, queried on all shards at once.
+     * Each shard returns only its own first page of low stock items, and the pages are merged.
+     */
+    public void viewWarehouseStock() {
+        try {
+            Map<String, StockTotals> totals = metrics.time("warehouseTotals",
+                () -> router.fanOut((warehouse, shard) -> shard.items().totals()));
+            Map<String, List<ItemRow>> lowest = metrics.time("warehouseLowStock",
+                () -> router.fanOut((warehouse, shard) -> shard.items().lowestHeadroom(PAGE_SIZE)));
+            
+            System.out.printf("%nStock Across Warehouses%n");
+            System.out.printf("%-15s %-10s %-12s %-15s %-10s%n", "Warehouse", "Items", "Units", "Value", "Low stock");
+            StockTotals all = new StockTotals(0, 0, BigDecimal.ZERO, 0);
+            for (Map.Entry<String, StockTotals> warehouse : totals.entrySet()) {
+                StockTotals total = warehouse.getValue();
+                System.out.printf("%-15s %-10d %-12d %-15s %-10d%n", warehouse.getKey(), total.items, total.units,
+                    total.value, total.lowStockItems);
+                all = all.plus(total);
+            }
+            System.out.printf("%-15s %-10d %-12d %-15s %-10d%n", "All", all.items, all.units, all.value,
+                all.lowStockItems);
+            
+            List<Map.Entry<String, ItemRow>> merged = new ArrayList<>();
+            for (Map.Entry<String, List<ItemRow>> warehouse : lowest.entrySet()) {
+                for (ItemRow item : warehouse.getValue()) {
+                    merged.add(new AbstractMap.SimpleEntry<>(warehouse.getKey(), item));
+                }
+            }
+            merged.sort(Comparator.comparingInt((Map.Entry<String, ItemRow> entry) ->
+                entry.getValue().quantity - entry.getValue().threshold));
+            System.out.println("\nLowest headroom in any warehouse:");
+            System.out.printf("%-15s %-10s %-20s %-10s %-10s%n", "Warehouse", "ID", "Name", "Qty", "Threshold");
+            for (Map.Entry<String, ItemRow> entry : merged.subList(0, Math.min(PAGE_SIZE, merged.size()))) {
+                ItemRow item = entry.getValue();
+                System.out.printf("%-15s %-10d %-20s %-10d %-10d%n", entry.getKey(), item.itemId, item.name,
+                    item.quantity, item.threshold);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error querying warehouses: " + e.getMessage());
+        }
+    }
+
+    /** Runs one archive pass now, on the calling thread. */
+    public void archiveHistory() {
+        try {
+            ArchiveReport report = metrics.time("archiveHistory", archiver::run);
+            System.out.printf("Archived %d orders and %d alerts dated before %s in %.1f s%n",
+                report.orders, report.alerts, report.cutoff, report.elapsedNanos / 1e9);
+        } catch (SQLException e) {
+            System.err.println("Error archiving history: " + e.getMessage());
+        }
+    }
+
+    private void exportData() {
+        System.out.println("\nExport Data");
+        System.out.print("Enter table to export " + DataExporter.TABLES + ", or 'changes': ");
+        String table = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+        if (table.equals("changes")) {
+            System.out.print("Enter watermark from the previous export: ");
+            long watermark = scanner.nextLong();
+            scanner.nextLine(); // consume newline
+            System.out.print("Enter file path (.jsonl, add .gz to compress): ");
+            exportChanges(watermark, Paths.get(scanner.nextLine().trim()));
+            return;
+        }
+        System.out.print("Enter file path (.csv or .jsonl, add .gz to compress): ");
+        String path = scanner.nextLine().trim();
+        exportTable(table, Paths.get(path));
+    }
+
+    private DataExporter exporter() {
+        return new DataExporter(store.pool(), store.changes(),
+            Integer.getInteger("inventory.export.fetchSize", 1000),
+            Integer.getInteger("inventory.export.bufferKiB", 256) * 1024);
+    }
+
+    /** Streams one table to a file; the format follows the file name. */
+    public void exportTable(String table, Path file) {
+        try {
+            ExportReport report = exporter().export(table, file);
+            System.out.printf("Exported %d %s to %s in %.1f s (%.0f rows/s, %d bytes); sync changes after %d%n",
+                report.rows, report.table, report.file, report.elapsedNanos / 1e9,
+                report.rowsPerSecond(), report.bytes, report.watermark);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing export file: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Error exporting " + table + ": " + e.getMessage());
+        }
+    }
+
+    /** Writes the rows changed after {@code watermark} to a JSON Lines file and prints the next watermark. */
+    public void exportChanges(long watermark, Path file) {
+        try {
+            ExportReport report = exporter().exportChanges(watermark, file);
+            System.out.printf("Exported %d changed rows to %s in %.1f s (%d bytes); next watermark %d%n",
+                report.rows, report.file, report.elapsedNanos / 1e9, report.bytes, report.watermark);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error writing export file: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Error exporting changes: " + e.getMessage());
         }
-        scanner.close();
     }
 
     private void itemManagement() {
         boolean back = false;
         
         while (!back) {
+            printRaisedAlerts();
             System.out.println("\nItem Management");
             System.out.println("1. Add New Item");
             System.out.println("2. Update Item");
             System.out.println("3. View All Items");
             System.out.println("4. Check Stock Levels");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. Bulk Import Items");
+            System.out.println("6. Stock History");
+            System.out.println("7. Consume Stock");
+            System.out.println("8. Search Items");
+            System.out.println("9. Back to Main Menu");
             System.out.print("Select an option: ");
             
             int choice = scanner.nextInt();
@@ -141,12 +805,26 @@ public class InventoryManagementSystem {
                     updateItem();
                     break;
                 case 3:
-                    viewAllItems();
+                    System.out.print("Filter by name prefix (leave blank for all): ");
+                    viewAllItems(scanner.nextLine().trim());
                     break;
                 case 4:
                     checkStockLevels();
                     break;
                 case 5:
+                    bulkImportItems();
+                    break;
+                case 6:
+                    viewStockHistory();
+                    break;
+                case 7:
+                    consumeStock();
+                    break;
+                case 8:
+                    System.out.print("Search by name or description: ");
+                    searchItems(scanner.nextLine());
+                    break;
+                case 9:
                     back = true;
                     break;
                 default:
@@ -173,27 +851,106 @@ public class InventoryManagementSystem {
             System.out.print("Enter threshold for alerts: ");
             int threshold = scanner.nextInt();
             
-            PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO items (name, description, quantity, price, threshold) VALUES (?, ?, ?, ?, ?)");
-            stmt.setString(1, name);
-            stmt.setString(2, description);
-            stmt.setInt(3, quantity);
-            stmt.setDouble(4, price);
-            stmt.setInt(5, threshold);
+            BigDecimal itemPrice = BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP);
+            int itemId = metrics.time("addItem",
+                () -> store.items().insert(name, description, quantity, itemPrice, threshold));
+            System.out.println("Item added successfully");
+            catalog.putItem(new ItemRow(itemId, name, description, quantity, itemPrice, threshold));
+            searchIndex.put(itemId, name, description);
+            stockChanged(Collections.singleton(itemId)); // Check if new item is already low
+        } catch (SQLException e) {
+            System.err.println("Error adding item: " + e.getMessage());
+        }
+    }
+
+    private void viewStockHistory() {
+        try {
+            System.out.print("\nEnter item ID: ");
+            final int itemId = scanner.nextInt();
+            scanner.nextLine(); // consume newline
+            
+            ItemRow item = catalog.item(itemId);
+            if (item == null) {
+                System.out.println("No item found with ID: " + itemId);
+                return;
+            }
+            
+            List<StockMovement> movements = metrics.time("stockHistory",
+                () -> store.ledger().history(itemId, PAGE_SIZE));
+            System.out.println("\nStock History: " + item.name + " (current quantity " + item.quantity + ")");
+            System.out.printf("%-12s %-22s %-12s %-10s %-10s%n", "Movement", "Time", "Type", "Change", "Order");
+            for (StockMovement movement : movements) {
+                System.out.printf("%-12d %-22s %-12s %+-10d %-10s%n", movement.movementId, movement.movedAt,
+                    movement.type, movement.quantityDelta, movement.orderId > 0 ? movement.orderId : "");
+            }
             
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Item added successfully");
-                checkForLowStock(); // Check if new item is already low
+            System.out.print("\nShow stock as of (yyyy-mm-dd hh:mm:ss, leave blank to skip): ");
+            String when = scanner.nextLine().trim();
+            if (when.isEmpty()) {
+                return;
             }
+            final Timestamp at;
+            try {
+                at = Timestamp.valueOf(when.length() == 10 ? when + " 23:59:59" : when);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Not a date and time: " + when);
+                return;
+            }
+            int quantity = metrics.time("stockAt", () -> store.ledger().quantityAt(itemId, at));
+            System.out.println("Stock of " + item.name + " as of " + at + ": " + quantity);
         } catch (SQLException e) {
-            System.err.println("Error adding item: " + e.getMessage());
+            System.err.println("Error retrieving stock history: " + e.getMessage());
+        }
+    }
+
+    private void bulkImportItems() {
+        System.out.println("\nBulk Import Items");
+        System.out.print("Enter path to CSV or JSON file: ");
+        String path = scanner.nextLine().trim();
+        
+        System.out.print("Enter batch size (0 for default): ");
+        int batchSize = scanner.nextInt();
+        
+        System.out.print("Enter rows per transaction (0 for default): ");
+        int transactionSize = scanner.nextInt();
+        scanner.nextLine(); // consume newline
+        
+        importItems(Paths.get(path),
+            batchSize > 0 ? batchSize : Integer.getInteger("inventory.import.batchSize", 1000),
+            transactionSize > 0 ? transactionSize : Integer.getInteger("inventory.import.transactionSize", 10000));
+    }
+
+    private void importItems(Path file, int batchSize, int transactionSize) {
+        try {
+            BulkItemImporter importer = new BulkItemImporter(store.pool(), JdbcItemRepository.INSERT_SQL,
+                batchSize, transactionSize);
+            ImportReport report = importer.importFile(file);
+            
+            System.out.printf("Imported %d of %d rows in %.1f s (%.0f rows/s), %d rejected%n",
+                report.imported, report.rowsRead, report.elapsedNanos / 1e9,
+                report.rowsPerSecond(), report.rejected);
+            for (String rejection : report.rejections) {
+                System.out.println("  " + rejection);
+            }
+            if (report.rejected > report.rejections.size()) {
+                System.out.println("  ... " + (report.rejected - report.rejections.size()) + " more");
+            }
+            
+            if (report.imported > 0) {
+                analytics.invalidate();
+                loadSearchIndex();
+                checkForLowStock(); // One evaluation for the whole import
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading import file: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Error importing items: " + e.getMessage());
         }
     }
 
     private void updateItem() {
         try {
-            viewAllItems();
+            findItems();
             System.out.print("\nEnter item ID to update: ");
             int itemId = scanner.nextInt();
             scanner.nextLine(); // consume newline
@@ -213,44 +970,23 @@ public class InventoryManagementSystem {
             System.out.print("Enter new threshold (-1 to keep current): ");
             int threshold = scanner.nextInt();
             
-            StringBuilder query = new StringBuilder("UPDATE items SET ");
-            List<Object> params = new ArrayList<>();
-            
-            if (!name.isEmpty()) {
-                query.append("name = ?, ");
-                params.add(name);
-            }
-            if (!description.isEmpty()) {
-                query.append("description = ?, ");
-                params.add(description);
-            }
-            if (quantity != -1) {
-                query.append("quantity = ?, ");
-                params.add(quantity);
-            }
-            if (price != -1) {
-                query.append("price = ?, ");
-                params.add(price);
-            }
-            if (threshold != -1) {
-                query.append("threshold = ?, ");
-                params.add(threshold);
-            }
-            
-            // Remove trailing comma and space
-            query.delete(query.length() - 2, query.length());
-            query.append(" WHERE item_id = ?");
-            params.add(itemId);
+            boolean found = metrics.time("updateItem", () -> store.items().update(itemId,
+                name.isEmpty() ? null : name,
+                description.isEmpty() ? null : description,
+                quantity == -1 ? null : quantity,
+                price == -1 ? null : BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP),
+                threshold == -1 ? null : threshold));
             
-            PreparedStatement stmt = connection.prepareStatement(query.toString());
-            for (int i = 0; i < params.size(); i++) {
-                stmt.setObject(i + 1, params.get(i));
-            }
-            
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
+            if (found) {
                 System.out.println("Item updated successfully");
-                checkForLowStock(); // Re-check stock levels after update
+                catalog.refreshItem(itemId);
+                if (!name.isEmpty() || !description.isEmpty()) {
+                    ItemRow item = catalog.item(itemId);
+                    searchIndex.put(itemId, item.name, item.description);
+                }
+                if (quantity != -1 || threshold != -1 || price != -1) {
+                    stockChanged(Collections.singleton(itemId)); // Re-check stock levels after update
+                }
             } else {
                 System.out.println("No item found with ID: " + itemId);
             }
@@ -260,58 +996,154 @@ public class InventoryManagementSystem {
     }
 
     private void viewAllItems() {
-        try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM items");
-            
-            System.out.println("\nItem List:");
-            System.out.printf("%-10s %-20s %-50s %-10s %-10s %-10s%n", 
-                "ID", "Name", "Description", "Qty", "Price", "Threshold");
-            
-            while (rs.next()) {
-                System.out.printf("%-10d %-20s %-50s %-10d %-10.2f %-10d%n",
-                    rs.getInt("item_id"),
-                    rs.getString("name"),
-                    rs.getString("description"),
-                    rs.getInt("quantity"),
-                    rs.getDouble("price"),
-                    rs.getInt("threshold"));
+        viewAllItems("");
+    }
+
+    /** Helps the operator find an item before entering its ID: a search, or the full listing. */
+    private void findItems() {
+        System.out.print("Search items by name or description (leave blank to list all): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) {
+            viewAllItems();
+        } else {
+            searchItems(query);
+        }
+    }
+
+    private void searchItems(String query) {
+        try {
+            long start = System.nanoTime();
+            List<Integer> itemIds = searchIndex.search(query, PAGE_SIZE);
+            long elapsed = System.nanoTime() - start;
+            metrics.record("searchItems", elapsed, false);
+            if (!searchIndex.isLoaded()) {
+                System.out.println("(Search index still loading, " + searchIndex.size() + " items so far)");
+            }
+            if (itemIds.isEmpty()) {
+                System.out.println("\nNo items match: " + query);
+                return;
+            }
+            
+            Map<Integer, ItemRow> items = catalog.items(itemIds);
+            System.out.printf("%nTop %d matches (%d us):%n", itemIds.size(), elapsed / 1000);
+            System.out.printf("%-10s %-20s %-50s %-10s %-10s%n", "ID", "Name", "Description", "Qty", "Price");
+            for (int itemId : itemIds) {
+                ItemRow item = items.get(itemId);
+                if (item != null) {
+                    System.out.printf("%-10d %-20s %-50s %-10d %-10.2f%n",
+                        item.itemId, item.name, item.description, item.quantity, item.price);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error retrieving items: " + e.getMessage());
         }
     }
 
-    private void checkStockLevels() {
+    private void viewAllItems(final String namePrefix) {
+        try {
+            browse(afterId -> metrics.time("listItems",
+                    () -> store.items().list(afterId, PAGE_SIZE, namePrefix, false)),
+                item -> System.out.printf("%-10d %-20s %-50s %-10d %-10.2f %-10d%n",
+                    item.itemId, item.name, item.description, item.quantity, item.price, item.threshold),
+                "\nNo items found",
+                () -> {
+                    System.out.println("\nItem List:");
+                    System.out.printf("%-10s %-20s %-50s %-10s %-10s %-10s%n", 
+                        "ID", "Name", "Description", "Qty", "Price", "Threshold");
+                });
+        } catch (SQLException e) {
+            System.err.println("Error retrieving items: " + e.getMessage());
+        }
+    }
+
+    private void consumeStock() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(
-                "SELECT item_id, name, quantity, threshold FROM items WHERE quantity <= threshold");
+            System.out.println("\nConsume Stock");
+            System.out.print("Enter item ID: ");
+            int itemId = scanner.nextInt();
             
-            if (!rs.isBeforeFirst()) {
-                System.out.println("\nAll items have sufficient stock");
+            System.out.print("Enter quantity consumed: ");
+            int quantity = scanner.nextInt();
+            scanner.nextLine(); // consume newline
+            if (quantity <= 0) {
+                System.out.println("Quantity must be positive");
                 return;
             }
             
-            System.out.println("\nLow Stock Items:");
-            System.out.printf("%-10s %-20s %-10s %-10s%n", "ID", "Name", "Current", "Threshold");
-            
-            while (rs.next()) {
-                System.out.printf("%-10d %-20s %-10d %-10d%n",
-                    rs.getInt("item_id"),
-                    rs.getString("name"),
-                    rs.getInt("quantity"),
-                    rs.getInt("threshold"));
+            StockCounters.Result result = stockCounters.consume(itemId, quantity);
+            switch (result.outcome) {
+                case ACCEPTED:
+                    System.out.println("Stock consumed, " + result.available + " remaining");
+                    break;
+                case INSUFFICIENT:
+                    System.out.println("Insufficient stock: only " + result.available + " available");
+                    break;
+                default:
+                    System.out.println("No item found with ID: " + itemId);
             }
+        } catch (SQLException e) {
+            System.err.println("Error consuming stock: " + e.getMessage());
+        }
+    }
+
+    private void checkStockLevels() {
+        try {
+            browse(afterId -> metrics.time("listLowStockItems",
+                    () -> store.items().list(afterId, PAGE_SIZE, null, true)),
+                item -> System.out.printf("%-10d %-20s %-10d %-10d%n",
+                    item.itemId, item.name, item.quantity, item.threshold),
+                "\nAll items have sufficient stock",
+                () -> {
+                    System.out.println("\nLow Stock Items:");
+                    System.out.printf("%-10s %-20s %-10s %-10s%n", "ID", "Name", "Current", "Threshold");
+                });
         } catch (SQLException e) {
             System.err.println("Error checking stock levels: " + e.getMessage());
         }
     }
 
+    /** Loads one page of a listing, starting after the given key. */
+    private interface PageLoader<T> {
+        Page<T> load(int afterId) throws SQLException;
+    }
+
+    private interface RowPrinter<T> {
+        void print(T row);
+    }
+
+    /**
+     * Prints a listing one page at a time, asking before fetching the next page, so the cost
+     * of showing a list does not grow with the size of the table.
+     */
+    private <T> void browse(PageLoader<T> loader, RowPrinter<T> printer, String emptyMessage,
+                            Runnable header) throws SQLException {
+        Page<T> page = loader.load(0);
+        if (page.rows.isEmpty()) {
+            System.out.println(emptyMessage);
+            return;
+        }
+        
+        header.run();
+        while (true) {
+            for (T row : page.rows) {
+                printer.print(row);
+            }
+            if (!page.hasMore) {
+                return;
+            }
+            System.out.print("-- Press Enter for the next page, or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
+            page = loader.load(page.nextCursor);
+        }
+    }
+
     private void supplierManagement() {
         boolean back = false;
         
         while (!back) {
+            printRaisedAlerts();
             System.out.println("\nSupplier Management");
             System.out.println("1. Add New Supplier");
             System.out.println("2. Update Supplier");
@@ -356,17 +1188,10 @@ public class InventoryManagementSystem {
             System.out.print("Enter email: ");
             String email = scanner.nextLine();
             
-            PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO suppliers (name, contact, phone, email) VALUES (?, ?, ?, ?)");
-            stmt.setString(1, name);
-            stmt.setString(2, contact);
-            stmt.setString(3, phone);
-            stmt.setString(4, email);
-            
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Supplier added successfully");
-            }
+            int supplierId = metrics.time("addSupplier",
+                () -> store.suppliers().insert(name, contact, phone, email));
+            System.out.println("Supplier added successfully");
+            catalog.putSupplier(new SupplierRow(supplierId, name, contact, phone, email));
         } catch (SQLException e) {
             System.err.println("Error adding supplier: " + e.getMessage());
         }
@@ -391,39 +1216,15 @@ public class InventoryManagementSystem {
             System.out.print("Enter new email (leave blank to keep current): ");
             String email = scanner.nextLine();
             
-            StringBuilder query = new StringBuilder("UPDATE suppliers SET ");
-            List<Object> params = new ArrayList<>();
-            
-            if (!name.isEmpty()) {
-                query.append("name = ?, ");
-                params.add(name);
-            }
-            if (!contact.isEmpty()) {
-                query.append("contact = ?, ");
-                params.add(contact);
-            }
-            if (!phone.isEmpty()) {
-                query.append("phone = ?, ");
-                params.add(phone);
-            }
-            if (!email.isEmpty()) {
-                query.append("email = ?, ");
-                params.add(email);
-            }
-            
-            // Remove trailing comma and space
-            query.delete(query.length() - 2, query.length());
-            query.append(" WHERE supplier_id = ?");
-            params.add(supplierId);
-            
-            PreparedStatement stmt = connection.prepareStatement(query.toString());
-            for (int i = 0; i < params.size(); i++) {
-                stmt.setObject(i + 1, params.get(i));
-            }
+            boolean found = metrics.time("updateSupplier", () -> store.suppliers().update(supplierId,
+                name.isEmpty() ? null : name,
+                contact.isEmpty() ? null : contact,
+                phone.isEmpty() ? null : phone,
+                email.isEmpty() ? null : email));
             
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
+            if (found) {
                 System.out.println("Supplier updated successfully");
+                catalog.refreshSupplier(supplierId);
             } else {
                 System.out.println("No supplier found with ID: " + supplierId);
             }
@@ -434,21 +1235,16 @@ public class InventoryManagementSystem {
 
     private void viewAllSuppliers() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM suppliers");
-            
-            System.out.println("\nSupplier List:");
-            System.out.printf("%-10s %-20s %-20s %-15s %-20s%n", 
-                "ID", "Name", "Contact", "Phone", "Email");
-            
-            while (rs.next()) {
-                System.out.printf("%-10d %-20s %-20s %-15s %-20s%n",
-                    rs.getInt("supplier_id"),
-                    rs.getString("name"),
-                    rs.getString("contact"),
-                    rs.getString("phone"),
-                    rs.getString("email"));
-            }
+            browse(afterId -> metrics.time("listSuppliers",
+                    () -> store.suppliers().list(afterId, PAGE_SIZE, null)),
+                supplier -> System.out.printf("%-10d %-20s %-20s %-15s %-20s%n",
+                    supplier.supplierId, supplier.name, supplier.contact, supplier.phone, supplier.email),
+                "\nNo suppliers found",
+                () -> {
+                    System.out.println("\nSupplier List:");
+                    System.out.printf("%-10s %-20s %-20s %-15s %-20s%n", 
+                        "ID", "Name", "Contact", "Phone", "Email");
+                });
         } catch (SQLException e) {
             System.err.println("Error retrieving suppliers: " + e.getMessage());
         }
@@ -458,12 +1254,17 @@ public class InventoryManagementSystem {
         boolean back = false;
         
         while (!back) {
+            printRaisedAlerts();
             System.out.println("\nOrder Management");
             System.out.println("1. Create New Order");
             System.out.println("2. Update Order Status");
             System.out.println("3. View All Orders");
             System.out.println("4. View Orders by Status");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. Receive Shipment");
+            System.out.println("6. Reorder Low Stock Items");
+            System.out.println("7. Order Dashboard");
+            System.out.println("8. Orders by Date");
+            System.out.println("9. Back to Main Menu");
             System.out.print("Select an option: ");
             
             int choice = scanner.nextInt();
@@ -483,6 +1284,18 @@ public class InventoryManagementSystem {
                     viewOrdersByStatus();
                     break;
                 case 5:
+                    receiveShipment();
+                    break;
+                case 6:
+                    reorderLowStock(true);
+                    break;
+                case 7:
+                    viewOrderDashboard();
+                    break;
+                case 8:
+                    viewOrdersByDate();
+                    break;
+                case 9:
                     back = true;
                     break;
                 default:
@@ -491,41 +1304,115 @@ public class InventoryManagementSystem {
         }
     }
 
+    /**
+     * Orders every low stock item back up to its target level in one transaction. When
+     * {@code confirm} is set the plan is shown first and only placed if the operator agrees.
+     */
+    public void reorderLowStock(boolean confirm) {
+        final double targetFactor = Double.parseDouble(System.getProperty("inventory.reorder.targetFactor", "2"));
+        final int defaultSupplier = Integer.getInteger("inventory.reorder.defaultSupplier", 0);
+        try {
+            if (confirm) {
+                OrderRepository.ReorderPlan plan = metrics.time("planReorder",
+                    () -> store.orders().reorder(targetFactor, defaultSupplier, true));
+                printReorderPlan(plan, "\nReorder plan:");
+                if (plan.bySupplier.isEmpty()) {
+                    return;
+                }
+                System.out.print("Place these " + plan.orderCount() + " orders? (y/n): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    return;
+                }
+            }
+            
+            // Re-planned inside the placing transaction, so it reflects stock as of now
+            OrderRepository.ReorderPlan placed = metrics.time("reorderLowStock",
+                () -> store.orders().reorder(targetFactor, defaultSupplier, false));
+            printReorderPlan(placed, "\nPlaced orders:");
+            List<Integer> itemIds = new ArrayList<>();
+            for (List<OrderRepository.ReorderLine> lines : placed.bySupplier.values()) {
+                for (OrderRepository.ReorderLine line : lines) {
+                    itemIds.add(line.itemId);
+                }
+            }
+            analytics.itemsChanged(itemIds); // Their latest supplier may have changed
+        } catch (SQLException e) {
+            System.err.println("Error reordering low stock items: " + e.getMessage());
+        }
+    }
+
+    private void printReorderPlan(OrderRepository.ReorderPlan plan, String title) throws SQLException {
+        if (plan.bySupplier.isEmpty()) {
+            System.out.println("\nNothing to reorder");
+        } else {
+            System.out.println(title);
+            System.out.printf("%-10s %-20s %-10s %-12s%n", "ID", "Supplier", "Orders", "Units");
+            for (Map.Entry<Integer, List<OrderRepository.ReorderLine>> group : plan.bySupplier.entrySet()) {
+                long units = 0;
+                for (OrderRepository.ReorderLine line : group.getValue()) {
+                    units += line.quantity;
+                }
+                SupplierRow supplier = catalog.supplier(group.getKey());
+                System.out.printf("%-10d %-20s %-10d %-12d%n", group.getKey(),
+                    supplier == null ? "" : supplier.name, group.getValue().size(), units);
+            }
+        }
+        if (plan.alreadyOnOrder > 0) {
+            System.out.println(plan.alreadyOnOrder + " low stock items already have enough on order");
+        }
+        if (!plan.withoutSupplier.isEmpty()) {
+            System.out.println(plan.withoutSupplier.size() + " low stock items have never been ordered " +
+                "and no default supplier is set, e.g. item " + plan.withoutSupplier.get(0));
+        }
+    }
+
     private void createOrder() {
         try {
             System.out.println("\nCreate New Order");
             
-            viewAllItems();
+            findItems();
             System.out.print("Enter item ID to order: ");
             int itemId = scanner.nextInt();
+            scanner.nextLine(); // consume newline
+            
+            ItemRow item = catalog.item(itemId);
+            if (item == null) {
+                System.out.println("No item found with ID: " + itemId);
+                return;
+            }
+            System.out.println("Ordering: " + item.name);
             
             viewAllSuppliers();
             System.out.print("Enter supplier ID: ");
             int supplierId = scanner.nextInt();
             
+            SupplierRow supplier = catalog.supplier(supplierId);
+            if (supplier == null) {
+                System.out.println("No supplier found with ID: " + supplierId);
+                scanner.nextLine(); // consume newline
+                return;
+            }
+            System.out.println("Supplier: " + supplier.name);
+            
             System.out.print("Enter quantity to order: ");
             int quantity = scanner.nextInt();
             scanner.nextLine(); // consume newline
             
             System.out.print("Enter order status (Pending/Shipped/Received): ");
-            String status = scanner.nextLine();
-            
-            PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO orders (supplier_id, item_id, quantity, order_date, status) VALUES (?, ?, ?, ?, ?)");
-            stmt.setInt(1, supplierId);
-            stmt.setInt(2, itemId);
-            stmt.setInt(3, quantity);
-            stmt.setDate(4, new java.sql.Date(new Date().getTime()));
-            stmt.setString(5, status);
+            String input = scanner.nextLine();
+            OrderStatus status = OrderStatus.parse(input);
+            if (status == null || status == OrderStatus.CANCELLED) {
+                System.out.println("Invalid order status: " + input);
+                return;
+            }
             
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Order created successfully");
-                
-                // If order is received, update inventory
-                if (status.equalsIgnoreCase("Received")) {
-                    updateInventoryAfterOrder(itemId, quantity);
-                }
+            // A received order is inserted and its stock added in one transaction
+            OrderRepository.Result result = metrics.time("createOrder",
+                () -> store.orders().create(supplierId, itemId, quantity, status));
+            System.out.println("Order created successfully");
+            analytics.itemsChanged(Collections.singleton(itemId)); // Its latest supplier may have changed
+            if (result.outcome == OrderRepository.Outcome.RECEIVED) {
+                onOrderReceived(result.itemId, result.quantity);
             }
         } catch (SQLException e) {
             System.err.println("Error creating order: " + e.getMessage());
@@ -539,84 +1426,103 @@ public class InventoryManagementSystem {
             int orderId = scanner.nextInt();
             scanner.nextLine(); // consume newline
             
-            System.out.print("Enter new status (Pending/Shipped/Received): ");
-            String status = scanner.nextLine();
-            
-            // First get the current status and item details
-            PreparedStatement getStmt = connection.prepareStatement(
-                "SELECT status, item_id, quantity FROM orders WHERE order_id = ?");
-            getStmt.setInt(1, orderId);
-            ResultSet rs = getStmt.executeQuery();
-            
-            if (!rs.next()) {
-                System.out.println("No order found with ID: " + orderId);
+            System.out.print("Enter new status (Pending/Shipped/Received/Cancelled): ");
+            String input = scanner.nextLine();
+            OrderStatus status = OrderStatus.parse(input);
+            if (status == null) {
+                System.out.println("Invalid order status: " + input);
                 return;
             }
             
-            String currentStatus = rs.getString("status");
-            int itemId = rs.getInt("item_id");
-            int quantity = rs.getInt("quantity");
+            // Receiving flips the status and adds the stock atomically, and only once
+            OrderRepository.Result result = metrics.time("updateOrderStatus",
+                () -> store.orders().changeStatus(orderId, status));
             
-            // Update the status
-            PreparedStatement updateStmt = connection.prepareStatement(
-                "UPDATE orders SET status = ? WHERE order_id = ?");
-            updateStmt.setString(1, status);
-            updateStmt.setInt(2, orderId);
-            
-            int rows = updateStmt.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Order status updated successfully");
-                
-                // If status changed to Received, update inventory
-                if (!currentStatus.equalsIgnoreCase("Received") && status.equalsIgnoreCase("Received")) {
-                    updateInventoryAfterOrder(itemId, quantity);
-                }
+            switch (result.outcome) {
+                case NOT_FOUND:
+                    System.out.println("No order found with ID: " + orderId);
+                    break;
+                case ALREADY_RECEIVED:
+                    System.out.println("Order " + orderId + " has already been received");
+                    break;
+                case INVALID_TRANSITION:
+                    System.out.println("Order " + orderId + " is " + result.status + " and cannot become " + status);
+                    break;
+                case RECEIVED:
+                    System.out.println("Order status updated successfully");
+                    onOrderReceived(result.itemId, result.quantity);
+                    break;
+                default:
+                    System.out.println("Order status updated successfully");
             }
         } catch (SQLException e) {
             System.err.println("Error updating order status: " + e.getMessage());
         }
     }
 
-    private void updateInventoryAfterOrder(int itemId, int quantity) {
+    private void receiveShipment() {
+        System.out.println("\nReceive Shipment");
+        System.out.print("Enter order IDs in the shipment (separated by spaces or commas): ");
+        String line = scanner.nextLine().trim();
+        
+        List<Integer> orderIds = new ArrayList<>();
+        for (String token : line.split("[\\s,]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            try {
+                orderIds.add(Integer.parseInt(token));
+            } catch (NumberFormatException e) {
+                System.out.println("Not an order ID: " + token);
+                return;
+            }
+        }
+        if (orderIds.isEmpty()) {
+            System.out.println("No order IDs entered");
+            return;
+        }
+        
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                "UPDATE items SET quantity = quantity + ? WHERE item_id = ?");
-            stmt.setInt(1, quantity);
-            stmt.setInt(2, itemId);
+            OrderRepository.ShipmentResult result = metrics.time("receiveShipment",
+                () -> store.orders().receiveShipment(orderIds));
+            System.out.printf("Received %d orders covering %d items%n",
+                result.receivedOrderIds.size(), result.stockDeltas.size());
+            if (!result.skippedOrderIds.isEmpty()) {
+                System.out.println("Skipped (not found, already received or cancelled): " + result.skippedOrderIds);
+            }
             
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
+            for (Map.Entry<Integer, Integer> delta : result.stockDeltas.entrySet()) {
+                catalog.adjustItemQuantity(delta.getKey(), delta.getValue());
+            }
+            if (!result.stockDeltas.isEmpty()) {
                 System.out.println("Inventory updated after order receipt");
-                checkForLowStock(); // Re-check stock levels
+                stockChanged(result.stockDeltas.keySet());
             }
         } catch (SQLException e) {
-            System.err.println("Error updating inventory: " + e.getMessage());
+            System.err.println("Error receiving shipment: " + e.getMessage());
         }
     }
 
+    /** In-memory follow-up once a receipt has been committed. */
+    private void onOrderReceived(int itemId, int quantity) {
+        System.out.println("Inventory updated after order receipt");
+        catalog.adjustItemQuantity(itemId, quantity);
+        stockChanged(Collections.singleton(itemId)); // Re-check stock levels
+    }
+
     private void viewAllOrders() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(
-                "SELECT o.order_id, o.order_date, o.quantity, o.status, " +
-                "i.name as item_name, s.name as supplier_name " +
-                "FROM orders o " +
-                "JOIN items i ON o.item_id = i.item_id " +
-                "JOIN suppliers s ON o.supplier_id = s.supplier_id");
-            
-            System.out.println("\nOrder List:");
-            System.out.printf("%-10s %-15s %-20s %-20s %-10s %-15s%n", 
-                "ID", "Date", "Supplier", "Item", "Qty", "Status");
-            
-            while (rs.next()) {
-                System.out.printf("%-10d %-15s %-20s %-20s %-10d %-15s%n",
-                    rs.getInt("order_id"),
-                    rs.getDate("order_date"),
-                    rs.getString("supplier_name"),
-                    rs.getString("item_name"),
-                    rs.getInt("quantity"),
-                    rs.getString("status"));
-            }
+            browse(afterId -> metrics.time("listOrders",
+                    () -> catalog.withNames(store.orders().list(afterId, PAGE_SIZE, null, 0))),
+                order -> System.out.printf("%-10d %-15s %-20s %-20s %-10d %-15s%n",
+                    order.orderId, order.orderDate, order.supplierName, order.itemName,
+                    order.quantity, order.status),
+                "\nNo orders found",
+                () -> {
+                    System.out.println("\nOrder List:");
+                    System.out.printf("%-10s %-15s %-20s %-20s %-10s %-15s%n", 
+                        "ID", "Date", "Supplier", "Item", "Qty", "Status");
+                });
         } catch (SQLException e) {
             System.err.println("Error retrieving orders: " + e.getMessage());
         }
@@ -624,62 +1530,130 @@ public class InventoryManagementSystem {
 
     private void viewOrdersByStatus() {
         try {
-            System.out.print("\nEnter status to filter (Pending/Shipped/Received): ");
-            String status = scanner.nextLine();
-            
-            PreparedStatement stmt = connection.prepareStatement(
-                "SELECT o.order_id, o.order_date, o.quantity, o.status, " +
-                "i.name as item_name, s.name as supplier_name " +
-                "FROM orders o " +
-                "JOIN items i ON o.item_id = i.item_id " +
-                "JOIN suppliers s ON o.supplier_id = s.supplier_id " +
-                "WHERE o.status = ?");
-            stmt.setString(1, status);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (!rs.isBeforeFirst()) {
-                System.out.println("No orders found with status: " + status);
+            System.out.print("\nEnter status to filter (Pending/Shipped/Received/Cancelled): ");
+            String input = scanner.nextLine();
+            final OrderStatus status = OrderStatus.parse(input);
+            if (status == null) {
+                System.out.println("Invalid order status: " + input);
                 return;
             }
             
-            System.out.println("\nOrders with Status: " + status);
-            System.out.printf("%-10s %-15s %-20s %-20s %-10s%n", 
-                "ID", "Date", "Supplier", "Item", "Qty");
-            
-            while (rs.next()) {
-                System.out.printf("%-10d %-15s %-20s %-20s %-10d%n",
-                    rs.getInt("order_id"),
-                    rs.getDate("order_date"),
-                    rs.getString("supplier_name"),
-                    rs.getString("item_name"),
-                    rs.getInt("quantity"));
-            }
+            browse(afterId -> metrics.time("listOrdersByStatus",
+                    () -> catalog.withNames(store.orders().list(afterId, PAGE_SIZE, status, 0))),
+                order -> System.out.printf("%-10d %-15s %-20s %-20s %-10d%n",
+                    order.orderId, order.orderDate, order.supplierName, order.itemName, order.quantity),
+                "No orders found with status: " + status,
+                () -> {
+                    System.out.println("\nOrders with Status: " + status);
+                    System.out.printf("%-10s %-15s %-20s %-20s %-10s%n", 
+                        "ID", "Date", "Supplier", "Item", "Qty");
+                });
         } catch (SQLException e) {
             System.err.println("Error retrieving orders: " + e.getMessage());
         }
     }
 
-    private void viewAlerts() {
+    /** Orders placed in a date range, newest first; archived orders are included when the range reaches them. */
+    private void viewOrdersByDate() {
+        final java.sql.Date[] range = readDateRange();
+        if (range == null) {
+            return;
+        }
+        try {
+            browse(beforeId -> metrics.time("listOrdersByDate",
+                    () -> catalog.withNames(store.orders().placedBetween(range[0], range[1], beforeId, PAGE_SIZE))),
+                order -> System.out.printf("%-10d %-15s %-20s %-20s %-10d %-10s%n",
+                    order.orderId, order.orderDate, order.supplierName, order.itemName, order.quantity, order.status),
+                "No orders placed between " + range[0] + " and " + range[1],
+                () -> {
+                    System.out.println("\nOrders placed " + range[0] + " to " + range[1]);
+                    System.out.printf("%-10s %-15s %-20s %-20s %-10s %-10s%n",
+                        "ID", "Date", "Supplier", "Item", "Qty", "Status");
+                });
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders: " + e.getMessage());
+        }
+    }
+
+    /** Reads an inclusive yyyy-mm-dd range, or returns null after saying what was wrong. */
+    private java.sql.Date[] readDateRange() {
+        try {
+            System.out.print("\nEnter start date (yyyy-mm-dd): ");
+            java.sql.Date from = java.sql.Date.valueOf(scanner.nextLine().trim());
+            System.out.print("Enter end date (yyyy-mm-dd): ");
+            java.sql.Date to = java.sql.Date.valueOf(scanner.nextLine().trim());
+            if (to.before(from)) {
+                System.out.println("End date is before start date");
+                return null;
+            }
+            return new java.sql.Date[] {from, to};
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid date, expected yyyy-mm-dd");
+            return null;
+        }
+    }
+
+    /** Order totals per status and open orders per supplier, from the maintained counters. */
+    private void viewOrderDashboard() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(
-                "SELECT a.alert_id, a.message, a.alert_date, a.status, " +
-                "i.name as item_name FROM alerts a " +
-                "JOIN items i ON a.item_id = i.item_id " +
-                "ORDER BY a.alert_date DESC");
+            Map<Integer, long[]> counts = metrics.time("orderStatusCounts", () -> store.orders().statusCounts());
+            OrderStatus[] statuses = OrderStatus.values();
+            long[] totals = new long[statuses.length];
+            List<Map.Entry<Integer, long[]>> open = new ArrayList<>();
+            for (Map.Entry<Integer, long[]> supplier : counts.entrySet()) {
+                for (int i = 0; i < statuses.length; i++) {
+                    totals[i] += supplier.getValue()[i];
+                }
+                if (openOrders(supplier.getValue()) > 0) {
+                    open.add(supplier);
+                }
+            }
             
-            System.out.println("\nAlerts:");
-            System.out.printf("%-10s %-15s %-50s %-20s %-10s%n", 
-                "ID", "Date", "Message", "Item", "Status");
+            System.out.println("\nOrder Dashboard");
+            for (OrderStatus status : statuses) {
+                System.out.printf("%-25s %d%n", status, totals[status.ordinal()]);
+            }
             
-            while (rs.next()) {
-                System.out.printf("%-10d %-15s %-50s %-20s %-10s%n",
-                    rs.getInt("alert_id"),
-                    rs.getDate("alert_date"),
-                    rs.getString("message"),
-                    rs.getString("item_name"),
-                    rs.getString("status"));
+            open.sort((a, b) -> Long.compare(openOrders(b.getValue()), openOrders(a.getValue())));
+            System.out.println("\nOpen orders by supplier:");
+            System.out.printf("%-10s %-20s %-10s %-10s %-10s%n", "ID", "Supplier", "Pending", "Shipped", "Open");
+            for (Map.Entry<Integer, long[]> supplier : open.subList(0, Math.min(PAGE_SIZE, open.size()))) {
+                int supplierId = supplier.getKey();
+                SupplierRow row = supplierId == 0 ? null : catalog.supplier(supplierId);
+                long[] byStatus = supplier.getValue();
+                System.out.printf("%-10s %-20s %-10d %-10d %-10d%n",
+                    supplierId == 0 ? "-" : String.valueOf(supplierId),
+                    supplierId == 0 ? "(no supplier)" : row == null ? "" : row.name,
+                    byStatus[OrderStatus.PENDING.ordinal()], byStatus[OrderStatus.SHIPPED.ordinal()],
+                    openOrders(byStatus));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving order dashboard: " + e.getMessage());
+        }
+    }
+
+    private static long openOrders(long[] byStatus) {
+        long open = 0;
+        for (OrderStatus status : OrderStatus.values()) {
+            if (status.isOpen()) {
+                open += byStatus[status.ordinal()];
             }
+        }
+        return open;
+    }
+
+    private void viewAlerts() {
+        try {
+            browse(afterId -> metrics.time("listAlerts",
+                    () -> catalog.withAlertNames(store.alerts().list(afterId, PAGE_SIZE))),
+                alert -> System.out.printf("%-10d %-15s %-50s %-20s %-10s%n",
+                    alert.alertId, alert.alertDate, alert.message, alert.itemName, alert.status),
+                "\nNo alerts",
+                () -> {
+                    System.out.println("\nAlerts:");
+                    System.out.printf("%-10s %-15s %-50s %-20s %-10s%n", 
+                        "ID", "Date", "Message", "Item", "Status");
+                });
             
             // Option to mark alerts as resolved
             System.out.print("\nEnter alert ID to mark as resolved (0 to skip): ");
@@ -694,15 +1668,33 @@ public class InventoryManagementSystem {
         }
     }
 
+    private void viewAlertsByDate() {
+        final java.sql.Date[] range = readDateRange();
+        if (range == null) {
+            return;
+        }
+        try {
+            browse(beforeId -> metrics.time("listAlertsByDate",
+                    () -> catalog.withAlertNames(store.alerts().raisedBetween(range[0], range[1], beforeId, PAGE_SIZE))),
+                alert -> System.out.printf("%-10d %-15s %-50s %-20s %-10s%n",
+                    alert.alertId, alert.alertDate, alert.message, alert.itemName, alert.status),
+                "\nNo alerts raised between " + range[0] + " and " + range[1],
+                () -> {
+                    System.out.println("\nAlerts raised " + range[0] + " to " + range[1]);
+                    System.out.printf("%-10s %-15s %-50s %-20s %-10s%n",
+                        "ID", "Date", "Message", "Item", "Status");
+                });
+        } catch (SQLException e) {
+            System.err.println("Error retrieving alerts: " + e.getMessage());
+        }
+    }
+
     private void markAlertAsResolved(int alertId) {
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                "UPDATE alerts SET status = 'Resolved' WHERE alert_id = ?");
-            stmt.setInt(1, alertId);
-            
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
+            int itemId = metrics.time("resolveAlert", () -> store.alerts().resolve(alertId));
+            if (itemId >= 0) {
                 System.out.println("Alert marked as resolved");
+                lowStock.alertResolved(itemId);
             } else {
                 System.out.println("No alert found with ID: " + alertId);
             }
@@ -711,37 +1703,7495 @@ public class InventoryManagementSystem {
         }
     }
 
+    /** Full reconcile: rescans every item and rebuilds the set of items with pending alerts. */
     private void checkForLowStock() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(
-                "SELECT item_id, name, quantity, threshold FROM items " +
-                "WHERE quantity <= threshold AND item_id NOT IN " +
-                "(SELECT item_id FROM alerts WHERE status = 'Pending')");
-            
-            while (rs.next()) {
-                int itemId = rs.getInt("item_id");
-                String itemName = rs.getString("name");
-                int quantity = rs.getInt("quantity");
-                int threshold = rs.getInt("threshold");
-                
-                String message = String.format(
-                    "Low stock alert: %s (Current: %d, Threshold: %d)", 
-                    itemName, quantity, threshold);
-                
-                // Create alert
-                PreparedStatement alertStmt = connection.prepareStatement(
-                    "INSERT INTO alerts (item_id, message, alert_date, status) VALUES (?, ?, ?, ?)");
-                alertStmt.setInt(1, itemId);
-                alertStmt.setString(2, message);
-                alertStmt.setDate(3, new java.sql.Date(new Date().getTime()));
-                alertStmt.setString(4, "Pending");
-                alertStmt.executeUpdate();
-                
+            for (String message : metrics.time("reconcileLowStock", lowStock::reconcile)) {
                 System.out.println("Alert generated: " + message);
             }
         } catch (SQLException e) {
             System.err.println("Error checking for low stock: " + e.getMessage());
         }
     }
+
+    /**
+     * After a write that changed the items' quantity, threshold or price: reloads their
+     * consumption counters, marks them for the next valuation refresh and queues a low stock
+     * re-check. The alert writer raises any alerts in the
+     * background; menus print them.
+     */
+    private void stockChanged(Collection<Integer> itemIds) {
+        analytics.itemsChanged(itemIds);
+        try {
+            stockCounters.refresh(itemIds);
+        } catch (SQLException e) {
+            System.err.println("Error refreshing stock counters: " + e.getMessage());
+        }
+        alertPipeline.publish(itemIds);
+    }
+
+    private void printRaisedAlerts() {
+        for (String message : alertPipeline.takeRaised()) {
+            System.out.println("Alert generated: " + message);
+        }
+    }
+}
+
+/** Where a repository borrows connections for reads: the pool itself, or a {@link ReplicaRouter}. */
+interface ConnectionSource {
+    PooledConnection borrow() throws SQLException;
+}
+
+/**
+ * Bounded pool of JDBC connections. At most {@code maxSize} connections are handed out at
+ * once; callers beyond that wait up to {@code borrowTimeoutMillis} for one to be returned.
+ * Borrowed connections go back to the pool when closed, so always use try-with-resources.
+ */
+class ConnectionPool implements ConnectionSource, AutoCloseable {
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30_000L;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+    /** Times every statement execute when set; null leaves statements unwrapped. */
+    final OperationMetrics metrics;
+
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    final AtomicLong statementCacheHits = new AtomicLong();
+    final AtomicLong statementCacheMisses = new AtomicLong();
+    /**
+     * When any thread of this process last committed here, so replica reads can wait until they
+     * include it. Per process, not per thread: the stock flusher and the alert writer commit for
+     * the menu thread, which must then see those writes too.
+     */
+    private final AtomicLong lastWrite = new AtomicLong();
+    /** Opens the first connection in place of the driver, until it succeeds; see {@link #openFirstWith}. */
+    private volatile Opener firstOpener;
+    private volatile boolean closed;
+
+    /** Opens a physical connection. */
+    interface Opener {
+        Connection open(String url, String user, String password) throws SQLException;
+    }
+
+    ConnectionPool(String url, String user, String password, int maxSize,
+                   long borrowTimeoutMillis, int statementCacheSize, OperationMetrics metrics) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.metrics = metrics;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Override
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        } finally {
+            waiting.decrementAndGet();
+        }
+        
+        long waited = System.nanoTime() - start;
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Timed out after " + borrowTimeoutMillis +
+                " ms waiting for a database connection (pool size " + maxSize + ")");
+        }
+        recordWait(waited);
+        
+        try {
+            PooledConnection conn = takeIdle();
+            if (conn == null) {
+                conn = new PooledConnection(this, connect(), statementCacheSize);
+            }
+            active.incrementAndGet();
+            borrows.incrementAndGet();
+            return conn;
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Has {@code opener} open the pool's first connection, e.g. to load the driver and check
+     * the database only when something first needs it. Later connections use the driver.
+     */
+    void openFirstWith(Opener opener) {
+        firstOpener = opener;
+    }
+
+    private Connection connect() throws SQLException {
+        if (firstOpener != null) {
+            synchronized (this) {
+                Opener opener = firstOpener;
+                if (opener != null) {
+                    Connection conn = opener.open(url, user, password);
+                    firstOpener = null;
+                    return conn;
+                }
+            }
+        }
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private PooledConnection takeIdle() {
+        while (true) {
+            PooledConnection conn;
+            synchronized (idle) {
+                conn = idle.pollFirst();
+            }
+            if (conn == null) {
+                return null;
+            }
+            if (conn.isUsable(VALIDATE_AFTER_IDLE_MILLIS)) {
+                return conn;
+            }
+            conn.closePhysically();
+        }
+    }
+
+    private void recordWait(long waited) {
+        totalWaitNanos.addAndGet(waited);
+        long max = maxWaitNanos.get();
+        while (waited > max && !maxWaitNanos.compareAndSet(max, waited)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    void release(PooledConnection conn) {
+        active.decrementAndGet();
+        try {
+            if (closed || !conn.reset()) {
+                conn.closePhysically();
+            } else {
+                synchronized (idle) {
+                    idle.offerFirst(conn);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** A physical connection outside the pool and its limit; the caller closes it. */
+    Connection openUnpooled() throws SQLException {
+        return connect();
+    }
+
+    /** Records that a thread of this process has just committed a write. */
+    void noteWrite() {
+        lastWrite.accumulateAndGet(System.currentTimeMillis(), Math::max);
+    }
+
+    /** When this process last committed a write, or 0 if it never has. */
+    long lastWriteMillis() {
+        return lastWrite.get();
+    }
+
+    PoolStats stats() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new PoolStats(maxSize, active.get(), idleCount, waiting.get(), borrows.get(),
+            timeouts.get(), totalWaitNanos.get(), maxWaitNanos.get(),
+            statementCacheHits.get(), statementCacheMisses.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            for (PooledConnection conn : idle) {
+                conn.closePhysically();
+            }
+            idle.clear();
+        }
+    }
+}
+
+/**
+ * Sends read-only queries to replicas and everything else to the primary. Every
+ * {@code heartbeatMillis} the primary writes its clock into {@code replication_heartbeat} and
+ * each replica is asked for the value it has applied: that value is how far the replica has
+ * caught up, and how far it trails the clock is its lag. Reads rotate over the replicas no
+ * more than {@code maxLagMillis} behind. With read-your-writes, once the process has committed
+ * on the primary, from any thread, reads go only to a replica caught up past that commit, and
+ * to the primary until one is. A replica that fails is skipped until the next poll reaches it again.
+ */
+class ReplicaRouter implements ConnectionSource, AutoCloseable {
+    private static final String BEAT_SQL =
+        "UPDATE replication_heartbeat SET beat_millis = ? WHERE heartbeat_id = 1";
+    private static final String APPLIED_SQL =
+        "SELECT beat_millis FROM replication_heartbeat WHERE heartbeat_id = 1";
+
+    /** One replica and what the last poll saw of it. */
+    static final class Replica {
+        final String url;
+        final ConnectionPool pool;
+        final LongAdder reads = new LongAdder();
+        /** The latest primary heartbeat this replica has applied; 0 until a poll succeeds. */
+        volatile long appliedMillis;
+        volatile long lagMillis = Long.MAX_VALUE;
+        volatile String error;
+        
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+    }
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final boolean readYourWrites;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private final ScheduledExecutorService heartbeat;
+    private volatile String heartbeatError;
+
+    ReplicaRouter(ConnectionPool primary, List<Replica> replicas, long heartbeatMillis, long maxLagMillis,
+                  boolean readYourWrites) {
+        if (heartbeatMillis < 1) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive");
+        }
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagMillis = maxLagMillis;
+        this.readYourWrites = readYourWrites;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::poll, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** A replica within the lag bound that has this process's last write, else the primary. */
+    @Override
+    public PooledConnection borrow() throws SQLException {
+        long wroteAt = readYourWrites ? primary.lastWriteMillis() : 0;
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.lagMillis > maxLagMillis || replica.appliedMillis < wroteAt) {
+                continue;
+            }
+            try {
+                PooledConnection conn = replica.pool.borrow();
+                replica.reads.increment();
+                return conn;
+            } catch (SQLException e) {
+                replica.lagMillis = Long.MAX_VALUE;
+                replica.error = e.getMessage();
+            }
+        }
+        primaryReads.increment();
+        return primary.borrow();
+    }
+
+    /** Writes a heartbeat on the primary, then reads back how far each replica has applied. */
+    private void poll() {
+        try (PooledConnection conn = primary.borrow()) {
+            PreparedStatement beat = conn.prepare(BEAT_SQL);
+            beat.setLong(1, System.currentTimeMillis());
+            beat.executeUpdate();
+            heartbeatError = null;
+        } catch (SQLException e) {
+            heartbeatError = e.getMessage();
+        }
+        for (Replica replica : replicas) {
+            try (PooledConnection conn = replica.pool.borrow();
+                 ResultSet rs = conn.prepare(APPLIED_SQL).executeQuery()) {
+                long applied = rs.next() ? rs.getLong(1) : 0;
+                replica.appliedMillis = applied;
+                replica.lagMillis = applied == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - applied);
+                replica.error = null;
+            } catch (SQLException e) {
+                replica.lagMillis = Long.MAX_VALUE;
+                replica.error = e.getMessage();
+            }
+        }
+    }
+
+    List<Replica> replicas() {
+        return replicas;
+    }
+
+    long maxLagMillis() {
+        return maxLagMillis;
+    }
+
+    boolean readYourWrites() {
+        return readYourWrites;
+    }
+
+    /** Reads that went to the primary: no replica was caught up, in bounds and reachable. */
+    long primaryReads() {
+        return primaryReads.sum();
+    }
+
+    /** Why the last heartbeat write failed, or null. */
+    String heartbeatError() {
+        return heartbeatError;
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+}
+
+/**
+ * A connection on loan from a {@link ConnectionPool}. Statements for fixed SQL strings are
+ * prepared once per physical connection and reused; {@link #close()} hands the connection
+ * back to the pool instead of closing it.
+ */
+class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statementCache;
+    private long lastUsed = System.currentTimeMillis();
+
+    PooledConnection(ConnectionPool pool, Connection connection, final int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** Returns a cached statement for {@code sql}. Do not close it; close its result sets. */
+    PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+        PreparedStatement stmt = statementCache.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            pool.statementCacheHits.incrementAndGet();
+            return stmt;
+        }
+        pool.statementCacheMisses.incrementAndGet();
+        stmt = instrument(connection.prepareStatement(sql, autoGeneratedKeys), sql);
+        statementCache.put(key, stmt);
+        return stmt;
+    }
+
+    /** Prepares a one-off statement for dynamically built SQL; the caller must close it. */
+    PreparedStatement prepareUncached(String sql) throws SQLException {
+        return instrument(connection.prepareStatement(sql), sql);
+    }
+
+    Statement createStatement() throws SQLException {
+        Statement stmt = connection.createStatement();
+        return pool.metrics == null ? stmt : pool.metrics.instrument(stmt, Statement.class, null);
+    }
+
+    private PreparedStatement instrument(PreparedStatement stmt, String sql) {
+        return pool.metrics == null ? stmt : pool.metrics.instrument(stmt, PreparedStatement.class, sql);
+    }
+
+    /** The underlying connection, for transaction control. Never close it directly. */
+    Connection raw() {
+        return connection;
+    }
+
+    boolean isUsable(long validateAfterIdleMillis) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - lastUsed > validateAfterIdleMillis) {
+                return connection.isValid(2);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Rolls back anything left open and restores auto-commit; false if the connection is broken. */
+    boolean reset() {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            lastUsed = System.currentTimeMillis();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysically() {
+        for (Iterator<PreparedStatement> it = statementCache.values().iterator(); it.hasNext(); ) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException ignored) {
+            // the statement is being discarded anyway
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
+
+/** Point-in-time view of {@link ConnectionPool} usage, for sizing the pool. */
+class PoolStats {
+    final int maxSize;
+    final int active;
+    final int idle;
+    final int waiting;
+    final long borrows;
+    final long timeouts;
+    final long totalWaitNanos;
+    final long maxWaitNanos;
+    final long statementCacheHits;
+    final long statementCacheMisses;
+
+    PoolStats(int maxSize, int active, int idle, int waiting, long borrows, long timeouts,
+              long totalWaitNanos, long maxWaitNanos, long statementCacheHits, long statementCacheMisses) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.borrows = borrows;
+        this.timeouts = timeouts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    double averageWaitMillis() {
+        return borrows == 0 ? 0.0 : totalWaitNanos / (double) borrows / 1_000_000.0;
+    }
+}
+
+/**
+ * Lock-free latency histogram. Buckets are log-linear (eight per power of two), so any
+ * percentile is reported within 12.5% of the true value while recording costs one array
+ * increment and the whole histogram stays a fixed 4 KB regardless of how many calls it sees.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double meanMicros() {
+        long calls = count.sum();
+        return calls == 0 ? 0.0 : totalNanos.sum() / (double) calls / 1000.0;
+    }
+
+    double maxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    /** The latency below which {@code percentile}% of calls completed, in microseconds. */
+    double percentileMicros(double percentile) {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Middle of the bucket, but never above the largest value actually recorded
+                long mid = (lowerBound(i) + lowerBound(i + 1) - 1) / 2;
+                return Math.min(mid, maxNanos.get()) / 1000.0;
+            }
+        }
+        return maxMicros();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+}
+
+/** Calls, SQL errors and latency of one named operation. */
+class OperationStats {
+    final String name;
+    final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+}
+
+/**
+ * Per-operation call counts, SQL error counts and latency histograms. Application operations
+ * are timed with {@link #time}; every JDBC execute is timed as well, keyed by its SQL, when
+ * the pool wraps its statements with {@link #instrument}. Stats can be exported as JMX MBeans
+ * under {@code inventory:type=Operation} and summarized to stderr on a fixed interval.
+ */
+class OperationMetrics implements AutoCloseable {
+    static final String JMX_DOMAIN = "inventory";
+
+    interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private volatile MBeanServer mbeanServer;
+    private ScheduledExecutorService summaryLog;
+
+    /** Runs the work and records its latency under {@code operation}; SQL failures count as errors. */
+    <T> T time(String operation, SqlWork<T> work) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = work.run();
+            failed = false;
+            return result;
+        } finally {
+            record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    void record(String operation, long nanos, boolean failed) {
+        OperationStats stats = operations.get(operation);
+        if (stats == null) {
+            stats = operations.computeIfAbsent(operation, OperationStats::new);
+            register(stats);
+        }
+        stats.record(nanos, failed);
+    }
+
+    /** All operations seen so far, sorted by name. */
+    List<OperationStats> snapshot() {
+        return new ArrayList<>(new TreeMap<>(operations).values());
+    }
+
+    /** Registers an MBean for every operation, now and as new ones are first recorded. */
+    void exportToJmx() {
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStats stats : operations.values()) {
+            register(stats);
+        }
+    }
+
+    private void register(OperationStats stats) {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Operation,name=" + ObjectName.quote(stats.name));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new OperationStatsMBean(stats), name);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // another thread registered it first
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean for " + stats.name + ": " + e.getMessage());
+        }
+    }
+
+    /** Prints a summary of the operations called since the previous one every {@code seconds}. */
+    void startSummaryLog(final int seconds) {
+        final Map<String, Long> lastCounts = new HashMap<>();
+        summaryLog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        summaryLog.scheduleAtFixedRate(() -> {
+            StringBuilder summary = new StringBuilder();
+            for (OperationStats stats : snapshot()) {
+                long count = stats.latency.count();
+                Long last = lastCounts.put(stats.name, count);
+                long calls = count - (last == null ? 0 : last);
+                if (calls > 0) {
+                    summary.append(String.format("[metrics] %-40s +%-8d %s%n",
+                        abbreviate(stats.name, 40), calls, describe(stats)));
+                }
+            }
+            if (summary.length() > 0) {
+                System.err.print(summary);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    static String describe(OperationStats stats) {
+        LatencyHistogram latency = stats.latency;
+        return String.format("calls %d, errors %d, p50 %.0f us, p99 %.0f us, max %.0f us",
+            latency.count(), stats.errors(), latency.percentileMicros(50),
+            latency.percentileMicros(99), latency.maxMicros());
+    }
+
+    static String abbreviate(String name, int width) {
+        return name.length() <= width ? name : name.substring(0, width - 3) + "...";
+    }
+
+    /**
+     * Wraps a statement so each execute call is timed under {@code jdbc <sql>}. IN lists are
+     * collapsed to {@code (?...)} so chunked queries of different sizes share one entry.
+     */
+    <S extends Statement> S instrument(final S stmt, Class<S> type, String sql) {
+        final String operation = sql == null ? null : jdbcOperation(sql);
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(stmt, method, args);
+            }
+            String name = operation != null ? operation
+                : args != null && args.length > 0 && args[0] instanceof String ? jdbcOperation((String) args[0])
+                : "jdbc (unknown)";
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invoke(stmt, method, args);
+                failed = false;
+                return result;
+            } finally {
+                record(name, System.nanoTime() - start, failed);
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    static String jdbcOperation(String sql) {
+        return "jdbc " + sql.trim().replaceAll("\\s+", " ").replaceAll("\\(\\?(, \\?)+\\)", "(?...)");
+    }
+
+    @Override
+    public void close() {
+        if (summaryLog != null) {
+            summaryLog.shutdownNow();
+        }
+    }
+}
+
+/**
+ * Read-only JMX view of one {@link OperationStats}. A dynamic MBean, because standard MBean
+ * interfaces must be public and only the launcher class in this file can be.
+ */
+class OperationStatsMBean implements DynamicMBean {
+    private static final String[] ATTRIBUTES = {
+        "Count", "Errors", "MeanMicros", "P50Micros", "P90Micros", "P99Micros", "P999Micros", "MaxMicros"
+    };
+
+    private final OperationStats stats;
+
+    OperationStatsMBean(OperationStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LatencyHistogram latency = stats.latency;
+        switch (attribute) {
+            case "Count":
+                return latency.count();
+            case "Errors":
+                return stats.errors();
+            case "MeanMicros":
+                return latency.meanMicros();
+            case "P50Micros":
+                return latency.percentileMicros(50);
+            case "P90Micros":
+                return latency.percentileMicros(90);
+            case "P99Micros":
+                return latency.percentileMicros(99);
+            case "P999Micros":
+                return latency.percentileMicros(99.9);
+            case "MaxMicros":
+                return latency.maxMicros();
+            default:
+                throw new AttributeNotFoundException(attribute);
+        }
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // unknown attributes are left out, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ATTRIBUTES.length];
+        for (int i = 0; i < ATTRIBUTES.length; i++) {
+            boolean counter = i < 2;
+            attributes[i] = new MBeanAttributeInfo(ATTRIBUTES[i], counter ? "long" : "double",
+                counter ? ATTRIBUTES[i] : ATTRIBUTES[i] + " latency", true, false, false);
+        }
+        return new MBeanInfo(OperationStatsMBean.class.getName(), "Calls, SQL errors and latency of " + stats.name,
+            attributes, null, null, null);
+    }
+}
+
+/**
+ * The database engines the store can run on and the few places their SQL differs. H2 runs
+ * embedded in the application's own process, so an edge store needs no database server and
+ * no network round trips; MySQL remains the default for a central installation.
+ */
+enum SqlDialect {
+    MYSQL("MySQL", "com.mysql.jdbc.Driver",
+        "jdbc:mysql://localhost:3306/inventory_db?rewriteBatchedStatements=true", "username", "password"),
+    H2("H2", "org.h2.Driver", "jdbc:h2:./inventory_db;MODE=MySQL", "sa", "");
+
+    final String displayName;
+    final String driverClass;
+    final String defaultUrl;
+    final String defaultUser;
+    final String defaultPassword;
+
+    SqlDialect(String displayName, String driverClass, String defaultUrl, String defaultUser,
+               String defaultPassword) {
+        this.displayName = displayName;
+        this.driverClass = driverClass;
+        this.defaultUrl = defaultUrl;
+        this.defaultUser = defaultUser;
+        this.defaultPassword = defaultPassword;
+    }
+
+    static SqlDialect named(String name) {
+        for (SqlDialect dialect : values()) {
+            if (dialect.name().equalsIgnoreCase(name)) {
+                return dialect;
+            }
+        }
+        throw new IllegalArgumentException("Unknown database backend: " + name +
+            " (expected one of " + Arrays.toString(values()).toLowerCase(Locale.ROOT) + ")");
+    }
+
+    static SqlDialect forUrl(String url) {
+        if (url.startsWith("jdbc:h2:")) {
+            return H2;
+        }
+        if (url.startsWith("jdbc:mysql:")) {
+            return MYSQL;
+        }
+        throw new IllegalArgumentException("Unsupported JDBC URL: " + url);
+    }
+
+    /** Makes the session's row lock waits give up after about a second. */
+    String shortLockWaitSql() {
+        return this == H2 ? "SET LOCK_TIMEOUT 1000" : "SET SESSION innodb_lock_wait_timeout = 1";
+    }
+
+    /**
+     * H2 computes generated columns but rejects MySQL's STORED keyword, its index names are
+     * schema-wide, so DROP INDEX takes no table, and outside MySQL mode it renames a column
+     * with ALTER COLUMN rather than CHANGE COLUMN.
+     */
+    String adaptDdl(String sql) {
+        if (this != H2) {
+            return sql;
+        }
+        return sql.replace(") STORED", ")").replaceFirst("^(DROP INDEX \\w+) ON \\w+$", "$1")
+            .replaceFirst("^(ALTER TABLE \\w+) CHANGE COLUMN (\\w+) (\\w+) .*$", "$1 ALTER COLUMN $2 RENAME TO $3");
+    }
+}
+
+/**
+ * Where and how to connect. The backend is {@code inventory.db.backend} if set, otherwise it
+ * is inferred from {@code inventory.db.url}; URL and credentials default per backend.
+ */
+class DatabaseConfig {
+    final SqlDialect dialect;
+    final String url;
+    final String user;
+    final String password;
+    final int poolSize;
+    final long borrowTimeoutMillis;
+    final int statementCacheSize;
+    /** Read-only replicas of this database, for listing and report queries; empty for none. */
+    final List<String> replicaUrls;
+
+    DatabaseConfig(SqlDialect dialect, String url, String user, String password, int poolSize,
+                   long borrowTimeoutMillis, int statementCacheSize) {
+        this(dialect, url, user, password, poolSize, borrowTimeoutMillis, statementCacheSize,
+            Collections.<String>emptyList());
+    }
+
+    DatabaseConfig(SqlDialect dialect, String url, String user, String password, int poolSize,
+                   long borrowTimeoutMillis, int statementCacheSize, List<String> replicaUrls) {
+        this.dialect = dialect;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.poolSize = poolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.replicaUrls = replicaUrls;
+    }
+
+    static DatabaseConfig fromSystemProperties() {
+        String backend = System.getProperty("inventory.db.backend");
+        String url = System.getProperty("inventory.db.url");
+        SqlDialect dialect = backend != null ? SqlDialect.named(backend)
+            : url != null ? SqlDialect.forUrl(url)
+            : SqlDialect.MYSQL;
+        return withDialect(dialect, url != null ? url : dialect.defaultUrl, System.getProperty("inventory.db.replicas"));
+    }
+
+    /**
+     * The database at {@code url}, e.g. a warehouse shard, with the shared pool and credential
+     * settings and the comma-separated {@code replicas}, which may be null.
+     */
+    static DatabaseConfig forUrl(String url, String replicas) {
+        return withDialect(SqlDialect.forUrl(url), url, replicas);
+    }
+
+    private static DatabaseConfig withDialect(SqlDialect dialect, String url, String replicas) {
+        List<String> replicaUrls = new ArrayList<>();
+        for (String replica : replicas == null ? new String[0] : replicas.split(",")) {
+            if (!replica.trim().isEmpty()) {
+                replicaUrls.add(replica.trim());
+            }
+        }
+        return new DatabaseConfig(dialect, url,
+            System.getProperty("inventory.db.user", dialect.defaultUser),
+            System.getProperty("inventory.db.password", dialect.defaultPassword),
+            Integer.getInteger("inventory.pool.size", 10),
+            Long.getLong("inventory.pool.timeoutMillis", 5000L),
+            Integer.getInteger("inventory.pool.statementCache", 50),
+            replicaUrls);
+    }
+}
+
+/**
+ * The storage backend: a connection pool plus the item, supplier, order and alert
+ * repositories, the stock ledger and the change log on top of it. Nothing above this class issues SQL of its own except bulk
+ * loaders (import, benchmark seeding), which go straight to {@link #pool()} for batching.
+ */
+class InventoryStore implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final SqlDialect dialect;
+    private final ItemRepository items;
+    private final SupplierRepository suppliers;
+    private final OrderRepository orders;
+    private final AlertRepository alerts;
+    private final StockLedger ledger;
+    private final ChangeLog changes;
+    private final ReplicaRouter replicas;
+
+    private InventoryStore(ConnectionPool pool, SqlDialect dialect, ReplicaRouter replicas) {
+        this.pool = pool;
+        this.dialect = dialect;
+        this.replicas = replicas;
+        ConnectionSource reads = replicas != null ? replicas : pool;
+        this.items = new JdbcItemRepository(pool, reads);
+        this.suppliers = new JdbcSupplierRepository(pool, reads);
+        this.orders = new JdbcOrderRepository(pool, reads);
+        this.alerts = new JdbcAlertRepository(pool, reads);
+        this.ledger = new JdbcStockLedger(pool);
+        this.changes = new JdbcChangeLog(pool);
+    }
+
+    /**
+     * Loads the driver and opens the pool; a bad URL or credentials fail here, not on first use.
+     * Replicas are not checked: one that is down only means its reads go to the primary.
+     * With {@code metrics}, every JDBC execute is timed; pass null to leave statements unwrapped.
+     */
+    static InventoryStore open(DatabaseConfig config, OperationMetrics metrics)
+            throws SQLException, ClassNotFoundException {
+        return open(config, metrics, false);
+    }
+
+    /**
+     * As {@link #open(DatabaseConfig, OperationMetrics)}, or with {@code lazy} nothing touches the
+     * driver or the database until the first connection is needed. That connection then loads
+     * the driver and fails unless the schema is already at {@link SchemaMigrator#latestVersion},
+     * since a lazy store is never migrated.
+     */
+    static InventoryStore open(final DatabaseConfig config, OperationMetrics metrics, boolean lazy)
+            throws SQLException, ClassNotFoundException {
+        if (!lazy) {
+            Class.forName(config.dialect.driverClass);
+        }
+        ConnectionPool pool = new ConnectionPool(config.url, config.user, config.password,
+            config.poolSize, config.borrowTimeoutMillis, config.statementCacheSize, metrics);
+        if (lazy) {
+            pool.openFirstWith((url, user, password) -> {
+                try {
+                    Class.forName(config.dialect.driverClass);
+                } catch (ClassNotFoundException e) {
+                    throw new SQLException("JDBC driver not found: " + e.getMessage(), e);
+                }
+                Connection conn = DriverManager.getConnection(url, user, password);
+                try {
+                    SchemaMigrator.requireLatest(conn);
+                } catch (SQLException e) {
+                    conn.close();
+                    throw e;
+                }
+                return conn;
+            });
+        } else {
+            try {
+                pool.borrow().close();
+            } catch (SQLException e) {
+                pool.close();
+                throw e;
+            }
+        }
+        if (config.replicaUrls.isEmpty()) {
+            return new InventoryStore(pool, config.dialect, null);
+        }
+        List<ReplicaRouter.Replica> replicas = new ArrayList<>();
+        for (String replicaUrl : config.replicaUrls) {
+            replicas.add(new ReplicaRouter.Replica(replicaUrl, new ConnectionPool(replicaUrl, config.user,
+                config.password, config.poolSize, config.borrowTimeoutMillis, config.statementCacheSize, metrics)));
+        }
+        return new InventoryStore(pool, config.dialect, new ReplicaRouter(pool, replicas,
+            Long.getLong("inventory.db.heartbeatMillis", 500L),
+            Long.getLong("inventory.db.replicaMaxLagMillis", 5000L),
+            Boolean.parseBoolean(System.getProperty("inventory.db.readYourWrites", "true"))));
+    }
+
+    /** Brings the schema up to date and returns its version. */
+    int migrate() throws SQLException {
+        return new SchemaMigrator(pool, dialect).migrate();
+    }
+
+    SqlDialect dialect() {
+        return dialect;
+    }
+
+    ConnectionPool pool() {
+        return pool;
+    }
+
+    ItemRepository items() {
+        return items;
+    }
+
+    SupplierRepository suppliers() {
+        return suppliers;
+    }
+
+    OrderRepository orders() {
+        return orders;
+    }
+
+    AlertRepository alerts() {
+        return alerts;
+    }
+
+    StockLedger ledger() {
+        return ledger;
+    }
+
+    ChangeLog changes() {
+        return changes;
+    }
+
+    /** The replica routing for listing and report reads, or null without replicas. */
+    ReplicaRouter replicas() {
+        return replicas;
+    }
+
+    @Override
+    public void close() {
+        if (replicas != null) {
+            replicas.close();
+        }
+        pool.close();
+    }
+}
+
+/**
+ * Maps each warehouse to its own database. Every shard has the full schema and holds only
+ * that warehouse's items, stock, orders and alerts, so a write touches a single shard and an
+ * item is identified by its warehouse plus its ID. Stores are opened on first use. Queries
+ * across warehouses run on every shard in parallel through {@link #fanOut}; the caller merges
+ * the per-warehouse results.
+ */
+class WarehouseRouter implements AutoCloseable {
+    static final String DEFAULT_WAREHOUSE = "main";
+
+    /** A query against one warehouse's store. */
+    interface ShardWork<T> {
+        T run(String warehouse, InventoryStore store) throws SQLException;
+    }
+
+    private final Map<String, DatabaseConfig> configs;
+    private final String home;
+    private final OperationMetrics metrics;
+    /** Open stores lazily and check their schema version instead of migrating; see {@link InventoryStore#open}. */
+    private final boolean lazy;
+    private final Map<String, InventoryStore> stores = new HashMap<>();
+    private final Set<String> migrated = new HashSet<>();
+    private ExecutorService workers;
+
+    WarehouseRouter(Map<String, DatabaseConfig> configs, String home, OperationMetrics metrics, boolean lazy) {
+        if (!configs.containsKey(home)) {
+            throw new IllegalArgumentException("Unknown warehouse: " + home + " (expected one of " + configs.keySet() + ")");
+        }
+        this.configs = new LinkedHashMap<>(configs);
+        this.home = home;
+        this.metrics = metrics;
+        this.lazy = lazy;
+    }
+
+    /**
+     * Reads the shards from {@code inventory.warehouses} as {@code name=jdbcUrl,...} and the
+     * warehouse this process serves from {@code inventory.warehouse}, by default the first.
+     * Without the list there is one warehouse, {@value #DEFAULT_WAREHOUSE}, on the configured
+     * database. The {@code metrics} time every JDBC execute, or pass null. With
+     * {@code inventory.fastStart}, stores connect on first use and are never migrated.
+     */
+    static WarehouseRouter fromSystemProperties(OperationMetrics metrics) {
+        String list = System.getProperty("inventory.warehouses", "").trim();
+        Map<String, DatabaseConfig> configs = new LinkedHashMap<>();
+        if (list.isEmpty()) {
+            configs.put(DEFAULT_WAREHOUSE, DatabaseConfig.fromSystemProperties());
+        }
+        for (String entry : list.isEmpty() ? new String[0] : list.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=jdbcUrl in inventory.warehouses: " + entry.trim());
+            }
+            String name = entry.substring(0, separator).trim();
+            DatabaseConfig config = DatabaseConfig.forUrl(entry.substring(separator + 1).trim(),
+                System.getProperty("inventory.warehouses." + name + ".replicas"));
+            if (configs.put(name, config) != null) {
+                throw new IllegalArgumentException("Warehouse listed twice: " + name);
+            }
+        }
+        return new WarehouseRouter(configs,
+            System.getProperty("inventory.warehouse", configs.keySet().iterator().next()), metrics,
+            Boolean.getBoolean("inventory.fastStart"));
+    }
+
+    /** The warehouse this process serves; the menus read and write its shard. */
+    String home() {
+        return home;
+    }
+
+    List<String> warehouses() {
+        return new ArrayList<>(configs.keySet());
+    }
+
+    DatabaseConfig config(String warehouse) {
+        DatabaseConfig config = configs.get(warehouse);
+        if (config == null) {
+            throw new IllegalArgumentException("Unknown warehouse: " + warehouse + " (expected one of " + configs.keySet() + ")");
+        }
+        return config;
+    }
+
+    /** The warehouse's store, opening its pool on first use. */
+    synchronized InventoryStore store(String warehouse) throws SQLException {
+        InventoryStore store = stores.get(warehouse);
+        if (store == null) {
+            try {
+                store = InventoryStore.open(config(warehouse), metrics, lazy);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("JDBC driver not found: " + e.getMessage(), e);
+            }
+            stores.put(warehouse, store);
+        }
+        return store;
+    }
+
+    /** As {@link #store}, with the shard's schema brought up to date the first time. */
+    private synchronized InventoryStore migrated(String warehouse) throws SQLException {
+        InventoryStore store = store(warehouse);
+        if (!lazy && migrated.add(warehouse)) {
+            try {
+                store.migrate();
+            } catch (SQLException e) {
+                migrated.remove(warehouse);
+                throw e;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Runs {@code work} on every warehouse at once and returns the results in warehouse order.
+     * If any shard fails, the whole query fails with the first error, naming its warehouse,
+     * and the others' errors suppressed.
+     */
+    <T> Map<String, T> fanOut(final ShardWork<T> work) throws SQLException {
+        Map<String, T> results = new LinkedHashMap<>();
+        if (configs.size() == 1) {
+            results.put(home, work.run(home, migrated(home)));
+            return results;
+        }
+        Map<String, Future<T>> pending = new LinkedHashMap<>();
+        for (final String warehouse : configs.keySet()) {
+            pending.put(warehouse, workers().submit(() -> work.run(warehouse, migrated(warehouse))));
+        }
+        SQLException failure = null;
+        for (Map.Entry<String, Future<T>> shard : pending.entrySet()) {
+            try {
+                results.put(shard.getKey(), shard.getValue().get());
+            } catch (ExecutionException e) {
+                SQLException error = new SQLException("Warehouse " + shard.getKey() + ": " + e.getCause().getMessage(),
+                    e.getCause());
+                if (failure == null) {
+                    failure = error;
+                } else {
+                    failure.addSuppressed(error);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for warehouse " + shard.getKey(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /** One thread per warehouse, so a slow shard never delays the others' queries. */
+    private synchronized ExecutorService workers() {
+        if (workers == null) {
+            AtomicInteger threads = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(configs.size(), runnable -> {
+                Thread thread = new Thread(runnable, "warehouse-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        for (InventoryStore store : stores.values()) {
+            store.close();
+        }
+        stores.clear();
+    }
+}
+
+/**
+ * Streams items from a CSV or JSON file into the {@code items} table. Rows are sent with
+ * {@code addBatch}/{@code executeBatch} and committed every {@code transactionSize} rows.
+ * Malformed rows are rejected and reported without stopping the import.
+ */
+class BulkItemImporter {
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
+
+    private final ConnectionPool pool;
+    private final String insertSql;
+    private final int batchSize;
+    private final int transactionSize;
+
+    BulkItemImporter(ConnectionPool pool, String insertSql, int batchSize, int transactionSize) {
+        if (batchSize < 1 || transactionSize < 1) {
+            throw new IllegalArgumentException("Batch and transaction sizes must be positive");
+        }
+        this.pool = pool;
+        this.insertSql = insertSql;
+        this.batchSize = batchSize;
+        this.transactionSize = Math.max(transactionSize, batchSize);
+    }
+
+    ImportReport importFile(Path file) throws IOException, SQLException {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             ItemRowReader rows = fileName.endsWith(".csv")
+                 ? new CsvItemRowReader(reader) : new JsonItemRowReader(reader)) {
+            return importRows(rows);
+        }
+    }
+
+    ImportReport importRows(ItemRowReader rows) throws IOException, SQLException {
+        ImportReport report = new ImportReport();
+        long start = System.nanoTime();
+        List<ImportedItem> pending = new ArrayList<>(transactionSize);
+        
+        // A failure leaves the open transaction to be rolled back when the connection returns
+        try (PooledConnection conn = pool.borrow()) {
+            Connection raw = conn.raw();
+            raw.setAutoCommit(false);
+            PreparedStatement stmt = conn.prepare(insertSql);
+            long lastId = maxItemId(conn);
+            int batched = 0;
+            
+            while (true) {
+                ImportedItem item;
+                try {
+                    Map<String, String> fields = rows.next();
+                    if (fields == null) {
+                        break;
+                    }
+                    report.rowsRead = rows.rowNumber();
+                    item = ImportedItem.parse(rows.rowNumber(), fields);
+                } catch (MalformedRowException e) {
+                    report.rowsRead = rows.rowNumber();
+                    report.reject("Row " + rows.rowNumber() + ": " + e.getMessage());
+                    continue;
+                }
+                
+                item.bind(stmt);
+                stmt.addBatch();
+                pending.add(item);
+                if (++batched == batchSize) {
+                    batched = 0;
+                    if (!executeBatch(stmt, raw)) {
+                        retryIndividually(conn, stmt, lastId, pending, report);
+                        lastId = maxItemId(conn);
+                        continue;
+                    }
+                }
+                if (pending.size() >= transactionSize) {
+                    commit(conn, stmt, lastId, pending, report);
+                    lastId = maxItemId(conn);
+                    batched = 0;
+                    System.out.printf("Committed %d rows (%.0f rows/s)%n", report.imported,
+                        report.imported / ((System.nanoTime() - start) / 1e9));
+                }
+            }
+            commit(conn, stmt, lastId, pending, report);
+        }
+        pool.noteWrite();
+        
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private static long maxItemId(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(item_id), 0) FROM items")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Commits the open transaction with an opening movement in the stock ledger and an entry in
+     * the change log for every item it inserted after {@code lastId}, both set-based. An imported
+     * item is never visible without its opening, so consumption cannot reach it first.
+     */
+    private static void commitWithOpenings(PooledConnection conn, long lastId) throws SQLException {
+        JdbcStockLedger.recordOpenings(conn, lastId);
+        PreparedStatement changes = conn.prepare(JdbcChangeLog.RECORD_ITEMS_AFTER_SQL);
+        changes.setLong(1, lastId);
+        changes.executeUpdate();
+        conn.raw().commit();
+    }
+
+    /** Flushes the open batch; on failure rolls the transaction back and returns false. */
+    private boolean executeBatch(PreparedStatement stmt, Connection raw) throws SQLException {
+        try {
+            stmt.executeBatch();
+            return true;
+        } catch (BatchUpdateException e) {
+            stmt.clearBatch();
+            raw.rollback();
+            return false;
+        }
+    }
+
+    private void commit(PooledConnection conn, PreparedStatement stmt, long lastId, List<ImportedItem> pending,
+                        ImportReport report) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (executeBatch(stmt, conn.raw())) {
+            commitWithOpenings(conn, lastId);
+            report.imported += pending.size();
+            pending.clear();
+        } else {
+            retryIndividually(conn, stmt, lastId, pending, report);
+        }
+    }
+
+    /**
+     * After a rejected batch the whole transaction has been rolled back, so replay its rows one
+     * at a time, rejecting only those the database refuses.
+     */
+    private void retryIndividually(PooledConnection conn, PreparedStatement stmt, long lastId,
+                                   List<ImportedItem> pending, ImportReport report) throws SQLException {
+        for (ImportedItem item : pending) {
+            try {
+                item.bind(stmt);
+                stmt.executeUpdate();
+                commitWithOpenings(conn, lastId);
+                report.imported++;
+            } catch (SQLException e) {
+                conn.raw().rollback();
+                report.reject("Row " + item.rowNumber + ": " + e.getMessage());
+            }
+        }
+        pending.clear();
+    }
+
+    /** One validated row ready to be bound to the insert statement. */
+    static class ImportedItem {
+        final int rowNumber;
+        final String name;
+        final String description;
+        final int quantity;
+        final BigDecimal price;
+        final int threshold;
+        
+        private ImportedItem(int rowNumber, String name, String description, int quantity,
+                             BigDecimal price, int threshold) {
+            this.rowNumber = rowNumber;
+            this.name = name;
+            this.description = description;
+            this.quantity = quantity;
+            this.price = price;
+            this.threshold = threshold;
+        }
+        
+        static ImportedItem parse(int rowNumber, Map<String, String> fields) throws MalformedRowException {
+            String name = fields.get("name");
+            if (name == null || name.trim().isEmpty()) {
+                throw new MalformedRowException("name is required");
+            }
+            if (name.length() > 100) {
+                throw new MalformedRowException("name is longer than 100 characters");
+            }
+            String description = fields.get("description");
+            if (description != null && description.length() > 255) {
+                throw new MalformedRowException("description is longer than 255 characters");
+            }
+            
+            BigDecimal price;
+            try {
+                price = new BigDecimal(required(fields, "price").trim());
+            } catch (NumberFormatException e) {
+                throw new MalformedRowException("price is not a number");
+            }
+            if (price.signum() < 0 || price.compareTo(MAX_PRICE) > 0) {
+                throw new MalformedRowException("price is out of range");
+            }
+            
+            return new ImportedItem(rowNumber, name.trim(), description,
+                nonNegativeInt(fields, "quantity"), price, nonNegativeInt(fields, "threshold"));
+        }
+        
+        private static String required(Map<String, String> fields, String key) throws MalformedRowException {
+            String value = fields.get(key);
+            if (value == null || value.trim().isEmpty()) {
+                throw new MalformedRowException(key + " is required");
+            }
+            return value;
+        }
+        
+        private static int nonNegativeInt(Map<String, String> fields, String key) throws MalformedRowException {
+            int value;
+            try {
+                value = Integer.parseInt(required(fields, key).trim());
+            } catch (NumberFormatException e) {
+                throw new MalformedRowException(key + " is not a whole number");
+            }
+            if (value < 0) {
+                throw new MalformedRowException(key + " must not be negative");
+            }
+            return value;
+        }
+        
+        void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setString(1, name);
+            stmt.setString(2, description);
+            stmt.setInt(3, quantity);
+            stmt.setBigDecimal(4, price);
+            stmt.setInt(5, threshold);
+        }
+    }
+}
+
+/** Outcome of a {@link BulkItemImporter} run. */
+class ImportReport {
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+
+    long rowsRead;
+    long imported;
+    long rejected;
+    long elapsedNanos;
+    final List<String> rejections = new ArrayList<>();
+
+    void reject(String reason) {
+        rejected++;
+        if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+            rejections.add(reason);
+        }
+    }
+
+    double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : imported / (elapsedNanos / 1e9);
+    }
+}
+
+/** Thrown for an input row that cannot be turned into an item; the import carries on. */
+class MalformedRowException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    MalformedRowException(String message) {
+        super(message);
+    }
+}
+
+/** Source of item rows for {@link BulkItemImporter}, one field map per row. */
+interface ItemRowReader extends AutoCloseable {
+    /** Returns the next row keyed by lower-case column name, or null at end of input. */
+    Map<String, String> next() throws IOException, MalformedRowException;
+
+    /** 1-based number of the row most recently returned or rejected. */
+    int rowNumber();
+
+    @Override
+    void close() throws IOException;
+}
+
+/**
+ * Reads CSV with a header line naming the columns. Fields may be double-quoted, with
+ * {@code ""} for a literal quote; a quoted field may not span lines.
+ */
+class CsvItemRowReader implements ItemRowReader {
+    private final BufferedReader reader;
+    private final String[] header;
+    private int rowNumber;
+
+    CsvItemRowReader(BufferedReader reader) throws IOException {
+        this.reader = reader;
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("CSV file is empty");
+        }
+        try {
+            List<String> columns = split(line);
+            header = new String[columns.size()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = columns.get(i).trim().toLowerCase(Locale.ROOT);
+            }
+        } catch (MalformedRowException e) {
+            throw new IOException("Bad CSV header: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException, MalformedRowException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+        rowNumber++;
+        
+        List<String> values = split(line);
+        if (values.size() != header.length) {
+            throw new MalformedRowException("expected " + header.length + " fields but found " + values.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            fields.put(header[i], values.get(i));
+        }
+        return fields;
+    }
+
+    static List<String> split(String line) throws MalformedRowException {
+        List<String> values = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new MalformedRowException("unterminated quoted field");
+        }
+        values.add(field.toString());
+        return values;
+    }
+
+    @Override
+    public int rowNumber() {
+        return rowNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
+
+/**
+ * Reads flat JSON objects one at a time, either as a top-level array or as JSON Lines.
+ * Values may be strings, numbers, booleans or null; a malformed object is skipped up to
+ * its closing brace so the following objects can still be read.
+ */
+class JsonItemRowReader implements ItemRowReader {
+    private final Reader reader;
+    private int peeked = -2;
+    private int rowNumber;
+
+    JsonItemRowReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException, MalformedRowException {
+        int c = skipSeparators();
+        if (c == -1) {
+            return null;
+        }
+        rowNumber++;
+        if (c != '{') {
+            skipValue(c);
+            throw new MalformedRowException("expected an object but found '" + (char) c + "'");
+        }
+        
+        Map<String, String> fields = new HashMap<>();
+        c = skipWhitespace();
+        if (c == '}') {
+            return fields;
+        }
+        while (true) {
+            if (c != '"') {
+                throw malformed(c, "expected a field name");
+            }
+            String key = readString().toLowerCase(Locale.ROOT);
+            c = skipWhitespace();
+            if (c != ':') {
+                throw malformed(c, "expected ':' after \"" + key + "\"");
+            }
+            fields.put(key, readValue());
+            c = skipWhitespace();
+            if (c == '}') {
+                return fields;
+            }
+            if (c != ',') {
+                throw malformed(c, "expected ',' or '}'");
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    private String readValue() throws IOException, MalformedRowException {
+        int c = skipWhitespace();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            throw malformed(c, "nested values are not supported");
+        }
+        StringBuilder literal = new StringBuilder();
+        while (c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+            literal.append((char) c);
+            c = read();
+        }
+        peeked = c;
+        String value = literal.toString();
+        if (value.isEmpty()) {
+            throw malformed(c, "missing value");
+        }
+        return value.equals("null") ? null : value;
+    }
+
+    private String readString() throws IOException, MalformedRowException {
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == -1 || c == '\n') {
+                throw new MalformedRowException("unterminated string");
+            }
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) read();
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw new MalformedRowException("bad unicode escape");
+                        }
+                        break;
+                    case -1:
+                        throw new MalformedRowException("unterminated string");
+                    default:
+                        value.append((char) escaped);
+                }
+            } else {
+                value.append((char) c);
+            }
+        }
+    }
+
+    private MalformedRowException malformed(int c, String message) throws IOException {
+        skipObject(c);
+        return new MalformedRowException(message);
+    }
+
+    /** Discards input up to and including the brace that closes the current object. */
+    private void skipObject(int c) throws IOException {
+        boolean inString = false;
+        int depth = 1;
+        while (c != -1) {
+            if (inString) {
+                if (c == '\\') {
+                    read();
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return;
+            }
+            c = read();
+        }
+    }
+
+    /** Discards a stray top-level value up to the next separator or object. */
+    private void skipValue(int c) throws IOException {
+        while (c != -1 && c != ',' && c != ']' && c != '\n') {
+            if (c == '{') {
+                peeked = c;
+                return;
+            }
+            c = read();
+        }
+    }
+
+    private int skipSeparators() throws IOException {
+        int c = skipWhitespace();
+        while (c == '[' || c == ']' || c == ',') {
+            c = skipWhitespace();
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (c != -1 && Character.isWhitespace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    @Override
+    public int rowNumber() {
+        return rowNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
+
+/**
+ * Streams a whole table to a CSV or JSON Lines file for other tools to read. Rows are read
+ * in primary key pages of {@code fetchSize} ({@code WHERE id > last ORDER BY id LIMIT n}),
+ * so no driver ever holds more than one page, and each value is encoded straight into a
+ * single reused byte buffer that is written to a {@link FileChannel}, through gzip when the
+ * file name ends in {@code .gz}. Nothing is kept per row, so memory use is the same for a
+ * thousand rows or ten million.
+ */
+class DataExporter {
+    static final List<String> TABLES =
+        Arrays.asList("items", "suppliers", "orders", "alerts", "orders_history", "alerts_history");
+    private static final String HISTORY = "_history";
+    private static final byte[] CHANGE_START = "{\"position\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHANGE_END = "}\n".getBytes(StandardCharsets.UTF_8);
+
+    enum Format { CSV, JSONL }
+
+    /** How a column's values are read and written. */
+    private enum Kind { INTEGER, DECIMAL, TEXT, ORDER_STATUS, ALERT_STATUS }
+
+    private final ConnectionPool pool;
+    private final ChangeLog changes;
+    private final int fetchSize;
+    private final int bufferSize;
+
+    DataExporter(ConnectionPool pool, ChangeLog changes, int fetchSize, int bufferSize) {
+        if (fetchSize < 1 || bufferSize < 64) {
+            throw new IllegalArgumentException("Fetch size must be positive and the buffer at least 64 bytes");
+        }
+        this.pool = pool;
+        this.changes = changes;
+        this.fetchSize = fetchSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /** The format for a file name ending in .csv or .jsonl, optionally followed by .gz. */
+    static Format formatOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return Format.JSONL;
+        }
+        throw new IllegalArgumentException("Export file name must end in .csv or .jsonl, optionally .gz: " + fileName);
+    }
+
+    /** The exported columns of {@code table}, key first, as {@code SELECT ... FROM table }. */
+    private static String select(String table) {
+        return "SELECT " + columns(table) + " FROM " + table + " ";
+    }
+
+    private static String columns(String table) {
+        switch (table) {
+            case "items":
+                // The current quantity, not just the part the ledger fold has reached
+                return "item_id, name, description, " + JdbcStockLedger.CURRENT_QUANTITY +
+                    " AS quantity, price, threshold";
+            case "suppliers":
+                return "supplier_id, name, contact, phone, email";
+            case "orders":
+                return "order_id, supplier_id, item_id, quantity, order_date, status_code";
+            case "alerts":
+                return "alert_id, item_id, message, alert_date, status_code";
+            case "orders_history":
+            case "alerts_history":
+                return columns(live(table)) + ", archived_at";
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table + " (expected one of " + TABLES + ")");
+        }
+    }
+
+    /** The live table a history table archives, or the table itself. */
+    private static String live(String table) {
+        return table.endsWith(HISTORY) ? table.substring(0, table.length() - HISTORY.length()) : table;
+    }
+
+    /** The primary key column: the live table name in the singular plus {@code _id}. */
+    private static String keyColumn(String table) {
+        String live = live(table);
+        return live.substring(0, live.length() - 1) + "_id";
+    }
+
+    /** One page of the table after a primary key; the key is always the first column. */
+    static String pageQuery(String table) {
+        String key = keyColumn(table);
+        return select(table) + "WHERE " + key + " > ? ORDER BY " + key + " LIMIT ?";
+    }
+
+    /**
+     * Writes every row of {@code table} to {@code file}, replacing it. Rows committed while
+     * the export runs may or may not be included; either way they are in the change feed
+     * after the report's watermark. A failed export deletes the partial file.
+     */
+    ExportReport export(String table, Path file) throws IOException, SQLException {
+        String sql = pageQuery(table);
+        String fileName = file.getFileName().toString();
+        Format format = formatOf(fileName);
+        boolean gzip = fileName.toLowerCase(Locale.ROOT).endsWith(".gz");
+        long start = System.nanoTime();
+        long watermark = changes.watermark();
+        long rows = 0;
+        
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        boolean complete = false;
+        try (PooledConnection conn = pool.borrow();
+             Encoder out = new Encoder(gzip
+                 ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize))
+                 : channel, bufferSize, format)) {
+            PreparedStatement stmt = conn.prepare(sql);
+            stmt.setFetchSize(fetchSize);
+            Kind[] kinds = null;
+            byte[][] prefixes = null;
+            byte[] rowEnd = (format == Format.CSV ? "\n" : "}\n").getBytes(StandardCharsets.UTF_8);
+            long afterKey = 0;
+            int fetched;
+            do {
+                stmt.setLong(1, afterKey);
+                stmt.setInt(2, fetchSize);
+                fetched = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (kinds == null) {
+                        String[] names = columnNames(rs.getMetaData());
+                        kinds = kinds(table, rs.getMetaData());
+                        prefixes = prefixes(names, format, false);
+                        if (format == Format.CSV) {
+                            for (int i = 0; i < names.length; i++) {
+                                out.bytes(prefixes[i]);
+                                out.text(names[i]);
+                            }
+                            out.bytes(rowEnd);
+                        }
+                    }
+                    while (rs.next()) {
+                        afterKey = rs.getLong(1);
+                        for (int i = 0; i < kinds.length; i++) {
+                            out.bytes(prefixes[i]);
+                            writeValue(out, rs, i + 1, kinds[i]);
+                        }
+                        out.bytes(rowEnd);
+                        fetched++;
+                    }
+                }
+                rows += fetched;
+            } while (fetched == fetchSize);
+            complete = true;
+        } finally {
+            channel.close();
+            if (!complete) {
+                Files.deleteIfExists(file);
+            }
+        }
+        return new ExportReport(table, file, rows, Files.size(file), System.nanoTime() - start, watermark);
+    }
+
+    /**
+     * Writes the current state of every row changed after {@code afterId} to a JSON Lines
+     * file, one line per row tagged with its table, latest feed position and {@code "op":"upsert"}.
+     * A row that no longer exists is written as {@code "op":"delete"} with just its key.
+     * Changes are read {@code fetchSize} at a time; within a batch each row is written once,
+     * grouped by table, so a consumer applies lines as upserts in file order. The report's
+     * watermark is the {@code afterId} for the next run.
+     */
+    ExportReport exportChanges(long afterId, Path file) throws IOException, SQLException {
+        String fileName = file.getFileName().toString();
+        if (formatOf(fileName) != Format.JSONL) {
+            throw new IllegalArgumentException("Change exports are JSON Lines only: " + fileName);
+        }
+        boolean gzip = fileName.toLowerCase(Locale.ROOT).endsWith(".gz");
+        long start = System.nanoTime();
+        long watermark = afterId;
+        long rows = 0;
+        
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        boolean complete = false;
+        try (Encoder out = new Encoder(gzip
+                 ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize))
+                 : channel, bufferSize, Format.JSONL)) {
+            ChangeLog.Batch batch;
+            do {
+                batch = changes.since(watermark, fetchSize);
+                Map<ChangeEntity, Map<Integer, Long>> latest = new TreeMap<>();
+                for (ChangeLog.Change change : batch.changes) {
+                    latest.computeIfAbsent(change.entity, entity -> new HashMap<>()).put(change.entityId, change.position);
+                }
+                try (PooledConnection conn = pool.borrow()) {
+                    for (Map.Entry<ChangeEntity, Map<Integer, Long>> changed : latest.entrySet()) {
+                        rows += writeChanged(conn, out, changed.getKey().table, changed.getValue());
+                    }
+                }
+                watermark = batch.watermark;
+            } while (batch.more);
+            complete = true;
+        } finally {
+            channel.close();
+            if (!complete) {
+                Files.deleteIfExists(file);
+            }
+        }
+        return new ExportReport("changes", file, rows, Files.size(file), System.nanoTime() - start, watermark);
+    }
+
+    /**
+     * Writes one line per changed row of {@code table}, reading the rows by ID in chunks.
+     * Archiving is not a change, so a row missing from the live table is looked up in its
+     * history table before it is reported as deleted.
+     */
+    private long writeChanged(PooledConnection conn, Encoder out, String table, Map<Integer, Long> positions)
+            throws IOException, SQLException {
+        byte[] delete = (",\"entity\":\"" + table + "\",\"op\":\"delete\",\"" + keyColumn(table) + "\":")
+            .getBytes(StandardCharsets.UTF_8);
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(positions.keySet()));
+        Set<Integer> found = new HashSet<>();
+        
+        writeUpserts(conn, out, table, select(table), ids, positions, found);
+        if (found.size() < ids.size() && (table.equals("orders") || table.equals("alerts"))) {
+            List<Integer> missing = new ArrayList<>();
+            for (int id : ids) {
+                if (!found.contains(id)) {
+                    missing.add(id);
+                }
+            }
+            writeUpserts(conn, out, table, "SELECT " + columns(table) + " FROM " + table + HISTORY, missing,
+                positions, found);
+        }
+        for (int id : ids) {
+            if (!found.contains(id)) {
+                out.bytes(CHANGE_START);
+                out.number(positions.get(id));
+                out.bytes(delete);
+                out.number(id);
+                out.bytes(CHANGE_END);
+            }
+        }
+        return ids.size();
+    }
+
+    /** Writes an upsert line for each of {@code ids} that {@code select} finds, adding it to {@code found}. */
+    private void writeUpserts(PooledConnection conn, Encoder out, String table, String select, List<Integer> ids,
+                              Map<Integer, Long> positions, Set<Integer> found) throws IOException, SQLException {
+        byte[] upsert = (",\"entity\":\"" + table + "\",\"op\":\"upsert\"").getBytes(StandardCharsets.UTF_8);
+        for (int from = 0; from < ids.size(); from += InLists.CHUNK) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + InLists.CHUNK, ids.size()));
+            try (PreparedStatement stmt = conn.prepareUncached(
+                    select + " WHERE " + keyColumn(table) + " IN " + InLists.placeholders(chunk.size()))) {
+                InLists.bind(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    Kind[] kinds = kinds(table, rs.getMetaData());
+                    byte[][] prefixes = prefixes(columnNames(rs.getMetaData()), Format.JSONL, true);
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        found.add(id);
+                        out.bytes(CHANGE_START);
+                        out.number(positions.get(id));
+                        out.bytes(upsert);
+                        for (int i = 0; i < kinds.length; i++) {
+                            out.bytes(prefixes[i]);
+                            writeValue(out, rs, i + 1, kinds[i]);
+                        }
+                        out.bytes(CHANGE_END);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Output column names: the SQL names, except that status codes are written as {@code status}. */
+    private static String[] columnNames(ResultSetMetaData meta) throws SQLException {
+        String[] names = new String[meta.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = meta.getColumnLabel(i + 1).toLowerCase(Locale.ROOT);
+            if (names[i].equals("status_code")) {
+                names[i] = "status";
+            }
+        }
+        return names;
+    }
+
+    private static Kind[] kinds(String table, ResultSetMetaData meta) throws SQLException {
+        Kind[] kinds = new Kind[meta.getColumnCount()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = kindOf(table, meta.getColumnLabel(i + 1).toLowerCase(Locale.ROOT), meta.getColumnType(i + 1));
+        }
+        return kinds;
+    }
+
+    /**
+     * The bytes before each value: a comma, or for JSON the key, encoded once per export.
+     * A {@code continued} JSON row already has fields before the first column.
+     */
+    private static byte[][] prefixes(String[] names, Format format, boolean continued) {
+        byte[][] prefixes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            String prefix = format == Format.CSV
+                ? (i == 0 ? "" : ",")
+                : (i == 0 && !continued ? "{" : ",") + "\"" + names[i] + "\":";
+            prefixes[i] = prefix.getBytes(StandardCharsets.UTF_8);
+        }
+        return prefixes;
+    }
+
+    private static Kind kindOf(String table, String column, int sqlType) {
+        if (column.equals("status_code")) {
+            return live(table).equals("alerts") ? Kind.ALERT_STATUS : Kind.ORDER_STATUS;
+        }
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return Kind.INTEGER;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return Kind.DECIMAL;
+            default:
+                return Kind.TEXT;
+        }
+    }
+
+    private static void writeValue(Encoder out, ResultSet rs, int column, Kind kind) throws IOException, SQLException {
+        switch (kind) {
+            case INTEGER: {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    out.nullValue();
+                } else {
+                    out.number(value);
+                }
+                break;
+            }
+            case DECIMAL: {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    out.nullValue();
+                } else {
+                    out.ascii(value.toPlainString());
+                }
+                break;
+            }
+            case ORDER_STATUS:
+                out.text(OrderStatus.fromCode(rs.getInt(column)).label);
+                break;
+            case ALERT_STATUS:
+                out.text(AlertStatus.fromCode(rs.getInt(column)).label);
+                break;
+            default: {
+                String value = rs.getString(column);
+                if (value == null) {
+                    out.nullValue();
+                } else {
+                    out.text(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * UTF-8 encoder over one reused buffer. Numbers are written digit by digit and text is
+     * quoted and escaped for the format as it is copied, so no per-value strings are built.
+     */
+    private static final class Encoder implements AutoCloseable {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final Format format;
+        
+        Encoder(WritableByteChannel channel, int bufferSize, Format format) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.format = format;
+        }
+        
+        void bytes(byte[] bytes) throws IOException {
+            room(bytes.length);
+            buffer.put(bytes);
+        }
+        
+        void ascii(String value) throws IOException {
+            room(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                buffer.put((byte) value.charAt(i));
+            }
+        }
+        
+        void nullValue() throws IOException {
+            if (format == Format.JSONL) {
+                ascii("null");
+            }
+        }
+        
+        void number(long value) throws IOException {
+            if (value == Long.MIN_VALUE) {
+                ascii(Long.toString(value));
+                return;
+            }
+            room(20);
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            int end = buffer.position() + digits;
+            for (int pos = end - 1; pos >= end - digits; pos--) {
+                buffer.put(pos, (byte) ('0' + value % 10));
+                value /= 10;
+            }
+            buffer.position(end);
+        }
+
+        /** A CSV field, quoted only if it needs to be, or a JSON string. */
+        void text(String value) throws IOException {
+            if (format == Format.CSV) {
+                boolean quote = false;
+                for (int i = 0; i < value.length() && !quote; i++) {
+                    char c = value.charAt(i);
+                    quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+                }
+                if (!quote) {
+                    chars(value, false);
+                    return;
+                }
+            }
+            room(1);
+            buffer.put((byte) '"');
+            chars(value, true);
+            room(1);
+            buffer.put((byte) '"');
+        }
+        
+        private void chars(String value, boolean quoted) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                room(6);
+                if (c < 0x80) {
+                    if (!quoted) {
+                        buffer.put((byte) c);
+                    } else if (format == Format.CSV) {
+                        if (c == '"') {
+                            buffer.put((byte) '"');
+                        }
+                        buffer.put((byte) c);
+                    } else if (c == '"' || c == '\\') {
+                        buffer.put((byte) '\\').put((byte) c);
+                    } else if (c < 0x20) {
+                        buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                            .put((byte) HEX[c >> 4]).put((byte) HEX[c & 0xF]);
+                    } else {
+                        buffer.put((byte) c);
+                    }
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int code = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | code >> 18)).put((byte) (0x80 | code >> 12 & 0x3F))
+                        .put((byte) (0x80 | code >> 6 & 0x3F)).put((byte) (0x80 | code & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buffer.put((byte) '?'); // Unpaired surrogate: not encodable
+                } else {
+                    buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+                }
+            }
+        }
+
+        /** Writes the buffer out if fewer than {@code bytes} are free. */
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+                if (buffer.remaining() < bytes) {
+                    throw new IOException("Value of " + bytes + " bytes does not fit the export buffer");
+                }
+            }
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
+
+class ExportReport {
+    final String table;
+    final Path file;
+    final long rows;
+    final long bytes;
+    final long elapsedNanos;
+    /** The change ID to sync from after this export. */
+    final long watermark;
+
+    ExportReport(String table, Path file, long rows, long bytes, long elapsedNanos, long watermark) {
+        this.table = table;
+        this.file = file;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.watermark = watermark;
+    }
+
+    double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rows / (elapsedNanos / 1e9);
+    }
+}
+
+/**
+ * Moves received and cancelled orders and resolved alerts older than {@code maxAgeDays} into
+ * their history tables. Each batch is its own short transaction and the archiver sleeps
+ * {@code pauseMillis} between batches, so a large backlog drains without holding locks or
+ * starving the writers that share the pool.
+ */
+class HistoryArchiver {
+    private final OrderRepository orders;
+    private final AlertRepository alerts;
+    private final int maxAgeDays;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    HistoryArchiver(OrderRepository orders, AlertRepository alerts, int maxAgeDays, int batchSize, long pauseMillis) {
+        this.orders = orders;
+        this.alerts = alerts;
+        this.maxAgeDays = maxAgeDays;
+        this.batchSize = Math.max(1, Math.min(batchSize, InLists.CHUNK));
+        this.pauseMillis = pauseMillis;
+    }
+
+    /** Rows dated before this are archived. */
+    java.sql.Date cutoff() {
+        return java.sql.Date.valueOf(LocalDate.now().minusDays(maxAgeDays));
+    }
+
+    ArchiveReport run() throws SQLException {
+        long start = System.nanoTime();
+        java.sql.Date cutoff = cutoff();
+        long orderCount = drain(cutoff, orders::archiveClosed);
+        long alertCount = drain(cutoff, alerts::archiveResolved);
+        return new ArchiveReport(cutoff, orderCount, alertCount, System.nanoTime() - start);
+    }
+
+    private interface BatchMove {
+        int move(java.sql.Date before, int limit) throws SQLException;
+    }
+
+    private long drain(java.sql.Date cutoff, BatchMove batch) throws SQLException {
+        long moved = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            int count = batch.move(cutoff, batchSize);
+            moved += count;
+            if (count < batchSize) {
+                break;
+            }
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return moved;
+    }
+}
+
+class ArchiveReport {
+    final java.sql.Date cutoff;
+    final long orders;
+    final long alerts;
+    final long elapsedNanos;
+
+    ArchiveReport(java.sql.Date cutoff, long orders, long alerts, long elapsedNanos) {
+        this.cutoff = cutoff;
+        this.orders = orders;
+        this.alerts = alerts;
+        this.elapsedNanos = elapsedNanos;
+    }
+}
+
+/**
+ * Raises low stock alerts for just the items a write touched. Items that already have a
+ * pending alert are tracked in memory, so no {@code NOT IN} subquery over {@code alerts} is
+ * needed; {@link #reconcile()} rebuilds that set and rescans the whole catalog on demand.
+ */
+class LowStockEvaluator {
+    private final ItemRepository items;
+    private final AlertRepository alerts;
+    private final Set<Integer> pendingAlertItems = ConcurrentHashMap.newKeySet();
+    /** Until the first load, {@link #evaluate} loads the pending alerts itself. */
+    private volatile boolean loaded;
+
+    LowStockEvaluator(ItemRepository items, AlertRepository alerts) {
+        this.items = items;
+        this.alerts = alerts;
+    }
+
+    void loadPendingAlerts() throws SQLException {
+        Set<Integer> pending = alerts.pendingItemIds();
+        pendingAlertItems.retainAll(pending);
+        pendingAlertItems.addAll(pending);
+        loaded = true;
+    }
+
+    boolean hasPendingAlert(int itemId) {
+        return pendingAlertItems.contains(itemId);
+    }
+
+    /** Checks the given items and raises an alert for each one newly at or below its threshold. */
+    List<String> evaluate(Collection<Integer> itemIds) throws SQLException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    loadPendingAlerts();
+                }
+            }
+        }
+        List<Integer> candidates = new ArrayList<>();
+        for (Integer itemId : itemIds) {
+            if (!pendingAlertItems.contains(itemId)) {
+                candidates.add(itemId);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return raiseAlerts(items.findAll(candidates).values());
+    }
+
+    /** Reloads pending alerts and scans every item, raising any alerts that were missed. */
+    List<String> reconcile() throws SQLException {
+        loadPendingAlerts();
+        return raiseAlerts(items.lowStock());
+    }
+
+    /** Drops the item from the pending set once its last pending alert is resolved. */
+    void alertResolved(int itemId) throws SQLException {
+        if (alerts.countPending(itemId) == 0) {
+            pendingAlertItems.remove(itemId);
+        }
+    }
+
+    private List<String> raiseAlerts(Collection<ItemRow> candidates) throws SQLException {
+        Map<Integer, String> raised = new LinkedHashMap<>();
+        for (ItemRow item : candidates) {
+            // Claiming the item first stops concurrent writers raising the same alert twice
+            if (item.quantity > item.threshold || !pendingAlertItems.add(item.itemId)) {
+                continue;
+            }
+            
+            raised.put(item.itemId, String.format(
+                "Low stock alert: %s (Current: %d, Threshold: %d)",
+                item.name, item.quantity, item.threshold));
+        }
+        try {
+            alerts.insertPending(raised);
+        } catch (SQLException e) {
+            pendingAlertItems.removeAll(raised.keySet());
+            throw e;
+        }
+        return new ArrayList<>(raised.values());
+    }
+}
+
+/**
+ * Low stock checks off the write path. Writers publish the IDs of the items they changed and
+ * return at once; a background thread drains the queue in batches, evaluates each distinct
+ * item once and inserts the resulting alerts as one batch. An item already waiting in the
+ * queue is not queued again. The queue is bounded: a publisher waits up to
+ * {@code offerTimeoutMillis} for room, and if there is still none the check is dropped and
+ * a full {@link LowStockEvaluator#reconcile()} is owed instead, so no alert is lost. The
+ * writer runs an owed reconcile after its next batch, when idle, and before it exits; a batch
+ * or reconcile that fails, for any reason, is counted and leaves a reconcile owed.
+ */
+class AlertPipeline implements AutoCloseable {
+    private static final long POLL_MILLIS = 200L;
+    /** How long an idle writer waits before retrying a reconcile that failed. */
+    private static final long RETRY_MILLIS = 5000L;
+
+    private final LowStockEvaluator evaluator;
+    private final OperationMetrics metrics;
+    private final BlockingQueue<Integer> queue;
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final AtomicBoolean reconcileNeeded = new AtomicBoolean();
+    private final Queue<String> raised = new ConcurrentLinkedQueue<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closing;
+
+    AlertPipeline(LowStockEvaluator evaluator, OperationMetrics metrics, int capacity, int batchSize,
+                  long offerTimeoutMillis) {
+        this.evaluator = evaluator;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writer = new Thread(this::drain, "alert-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues the items for a low stock check; blocks only while the queue is full. */
+    void publish(Collection<Integer> itemIds) {
+        for (Integer itemId : itemIds) {
+            if (!queued.add(itemId)) {
+                coalesced.increment();
+                continue;
+            }
+            boolean accepted = false;
+            try {
+                accepted = !closing && queue.offer(itemId, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (accepted) {
+                published.increment();
+            } else {
+                queued.remove(itemId);
+                overflows.increment();
+                reconcileNeeded.set(true);
+            }
+        }
+    }
+
+    /** Messages of the alerts raised since the last call, oldest first. */
+    List<String> takeRaised() {
+        List<String> messages = new ArrayList<>();
+        for (String message; (message = raised.poll()) != null; ) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    String describe() {
+        return String.format(
+            "queued %d, published %d, coalesced %d, overflowed %d, batches %d, alerts %d, failures %d",
+            queue.size(), published.sum(), coalesced.sum(), overflows.sum(), batches.sum(), alerts.sum(),
+            failures.sum());
+    }
+
+    private void drain() {
+        List<Integer> batch = new ArrayList<>(batchSize);
+        long retryAt = 0L;
+        while (true) {
+            Integer first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            batch.clear();
+            if (first != null) {
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                // Released before evaluating, so a write that lands meanwhile queues the item again
+                queued.removeAll(batch);
+            } else if (!reconcileNeeded.get() || (!closing && System.nanoTime() < retryAt)) {
+                // Idle: an owed reconcile runs now (a failed one after a pause) and always before exit
+                if (closing) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    raise(metrics.time("evaluateAlertBatch", () -> evaluator.evaluate(batch)));
+                    batches.increment();
+                }
+                if (reconcileNeeded.getAndSet(false)) {
+                    raise(metrics.time("reconcileLowStock", evaluator::reconcile));
+                }
+            } catch (SQLException | RuntimeException e) {
+                failures.increment();
+                reconcileNeeded.set(true);
+                retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+                System.err.println("Error checking for low stock: " + e.getMessage());
+                if (closing && batch.isEmpty()) {
+                    // The reconcile owed at exit failed; retrying would only hold up shutdown
+                    return;
+                }
+            }
+        }
+    }
+
+    private void raise(List<String> messages) {
+        alerts.add(messages.size());
+        raised.addAll(messages);
+    }
+
+    /** Stops accepting checks and waits for the queued ones and any owed reconcile to finish. */
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+/**
+ * Stock consumption (sales, picks) at in-memory speed. Each item touched gets a counter
+ * loaded with the item's current quantity; consuming or reserving stock checks and decrements
+ * it under one of a fixed set of striped locks, and rejects the request outright if it would
+ * take the available quantity below zero. Consumed quantities are summed per item and written
+ * behind, every {@code flushMillis}, as one consumption movement per item. A consumption that
+ * takes an item to or below its threshold is noticed on the spot: it triggers an immediate
+ * flush, after which the item is handed to the alert pipeline.
+ *
+ * <p>Only one process per database may consume: counters are loaded only while this process
+ * holds the {@link StockConsumerClaim}, and another process is refused until it exits. Writes
+ * in this process that change stock otherwise (receipts, Update Item, ledger repair) must
+ * call {@link #refresh} for the items they changed; every {@code refreshMillis} all counters
+ * are reloaded, which picks up such writes made by other processes. Reservations hold stock
+ * in memory only until they are committed (consumed) or released; they do not survive a
+ * restart.
+ */
+class StockCounters implements AutoCloseable {
+    enum Outcome { ACCEPTED, INSUFFICIENT, NOT_FOUND }
+
+    static final class Result {
+        final Outcome outcome;
+        /** Stock still available after the request (or before it, when rejected). */
+        final long available;
+        /** Reservation to commit or release, or 0. */
+        final long reservationId;
+        
+        Result(Outcome outcome, long available, long reservationId) {
+            this.outcome = outcome;
+            this.available = available;
+            this.reservationId = reservationId;
+        }
+    }
+
+    /** Guarded by the item's stripe lock. */
+    private static final class Counter {
+        long available;
+        int threshold;
+        long unflushed;
+        long reserved;
+        
+        Counter(long available, int threshold) {
+            this.available = available;
+            this.threshold = threshold;
+        }
+    }
+
+    private static final class Reservation {
+        final int itemId;
+        final int quantity;
+        
+        Reservation(int itemId, int quantity) {
+            this.itemId = itemId;
+            this.quantity = quantity;
+        }
+    }
+
+    private final ItemRepository items;
+    private final StockConsumerClaim claim;
+    private final AlertPipeline alertPipeline;
+    private final Consumer<Collection<Integer>> flushed;
+    private final OperationMetrics metrics;
+    private final Object[] stripes;
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong nextReservationId = new AtomicLong();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> crossed = ConcurrentHashMap.newKeySet();
+    /** Held while flushing or (re)loading counters, so neither sees the other half done. */
+    private final Object flushLock = new Object();
+    private final Semaphore wake = new Semaphore(0);
+    private final long flushMillis;
+    private final long refreshMillis;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread flusher;
+    private volatile boolean closing;
+
+    /** {@code flushed} is told which items' stock each successful flush changed. */
+    StockCounters(ItemRepository items, StockConsumerClaim claim, AlertPipeline alertPipeline,
+                  Consumer<Collection<Integer>> flushed, OperationMetrics metrics, int stripeCount,
+                  long flushMillis, long refreshMillis) {
+        this.items = items;
+        this.claim = claim;
+        this.alertPipeline = alertPipeline;
+        this.flushed = flushed;
+        this.metrics = metrics;
+        this.stripes = new Object[Integer.highestOneBit(Math.max(1, stripeCount))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        this.flushMillis = flushMillis;
+        this.refreshMillis = refreshMillis;
+        this.flusher = new Thread(this::flushLoop, "stock-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** Takes the quantity out of stock now; it reaches the database with the next flush. */
+    Result consume(int itemId, int quantity) throws SQLException {
+        return take(itemId, quantity, false);
+    }
+
+    /** Holds the quantity back from other consumers until it is committed or released. */
+    Result reserve(int itemId, int quantity) throws SQLException {
+        return take(itemId, quantity, true);
+    }
+
+    /** Consumes a reserved quantity; returns false if the reservation is unknown. */
+    boolean commit(long reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        Counter counter = counters.get(reservation.itemId);
+        synchronized (stripe(reservation.itemId)) {
+            counter.reserved -= reservation.quantity;
+            counter.unflushed += reservation.quantity;
+        }
+        dirty.add(reservation.itemId);
+        return true;
+    }
+
+    /** Returns a reserved quantity to stock; returns false if the reservation is unknown. */
+    boolean release(long reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        Counter counter = counters.get(reservation.itemId);
+        synchronized (stripe(reservation.itemId)) {
+            counter.reserved -= reservation.quantity;
+            counter.available += reservation.quantity;
+        }
+        return true;
+    }
+
+    /** Reloads the counters of items whose stock or threshold was changed in the database. */
+    void refresh(Collection<Integer> itemIds) throws SQLException {
+        synchronized (flushLock) {
+            List<Integer> loaded = new ArrayList<>();
+            for (Integer itemId : itemIds) {
+                if (counters.containsKey(itemId)) {
+                    loaded.add(itemId);
+                }
+            }
+            if (loaded.isEmpty()) {
+                return;
+            }
+            // Read under the flush lock: unflushed consumption is not in these quantities yet
+            Map<Integer, ItemRow> found = items.findAll(loaded);
+            for (Integer itemId : loaded) {
+                Counter counter = counters.get(itemId);
+                ItemRow item = found.get(itemId);
+                synchronized (stripe(itemId)) {
+                    counter.available = item == null ? 0 : item.quantity - counter.unflushed - counter.reserved;
+                    counter.threshold = item == null ? 0 : item.threshold;
+                }
+            }
+        }
+    }
+
+    String describe() {
+        return String.format(
+            "items %d, accepted %d, rejected %d, reservations %d, flushes %d, refreshes %d, failures %d",
+            counters.size(), accepted.sum(), rejected.sum(), reservations.size(), flushes.sum(), refreshes.sum(),
+            failures.sum());
+    }
+
+    private Result take(int itemId, int quantity, boolean reserve) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        Counter counter = counter(itemId);
+        if (counter == null) {
+            return new Result(Outcome.NOT_FOUND, 0, 0);
+        }
+        
+        long available;
+        boolean crossing;
+        synchronized (stripe(itemId)) {
+            if (counter.available < quantity) {
+                rejected.increment();
+                return new Result(Outcome.INSUFFICIENT, counter.available, 0);
+            }
+            crossing = counter.available > counter.threshold && counter.available - quantity <= counter.threshold;
+            counter.available -= quantity;
+            if (reserve) {
+                counter.reserved += quantity;
+            } else {
+                counter.unflushed += quantity;
+            }
+            available = counter.available;
+        }
+        accepted.increment();
+        
+        long reservationId = 0;
+        if (reserve) {
+            reservationId = nextReservationId.incrementAndGet();
+            reservations.put(reservationId, new Reservation(itemId, quantity));
+        } else {
+            dirty.add(itemId);
+        }
+        if (crossing) {
+            crossed.add(itemId);
+            wake.release();
+        }
+        return new Result(Outcome.ACCEPTED, available, reservationId);
+    }
+
+    private Counter counter(int itemId) throws SQLException {
+        Counter counter = counters.get(itemId);
+        if (counter != null) {
+            return counter;
+        }
+        synchronized (flushLock) {
+            counter = counters.get(itemId);
+            if (counter == null) {
+                if (!claim.tryClaim()) {
+                    throw new SQLException("Another process is consuming stock from this database; " +
+                        "only one may at a time");
+                }
+                ItemRow item = items.find(itemId);
+                if (item == null) {
+                    return null;
+                }
+                counter = new Counter(item.quantity, item.threshold);
+                counters.put(itemId, counter);
+            }
+            return counter;
+        }
+    }
+
+    private Object stripe(int itemId) {
+        return stripes[itemId & (stripes.length - 1)];
+    }
+
+    private void flushLoop() {
+        long refreshAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        while (!closing) {
+            try {
+                wake.tryAcquire(flushMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            wake.drainPermits();
+            flush();
+            if (System.nanoTime() - refreshAt >= 0 && !closing) {
+                refreshAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+                try {
+                    metrics.time("refreshStockCounters", () -> {
+                        refresh(new ArrayList<>(counters.keySet()));
+                        return null;
+                    });
+                    refreshes.increment();
+                } catch (SQLException e) {
+                    failures.increment();
+                    System.err.println("Error refreshing stock counters: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Writes the summed consumption of every dirty item, then publishes threshold crossings. */
+    private void flush() {
+        synchronized (flushLock) {
+            // Crossings are taken first: their consumption is then certain to be in this flush
+            List<Integer> crossings = new ArrayList<>(crossed);
+            crossed.removeAll(crossings);
+            Map<Integer, Integer> deltas = new HashMap<>();
+            for (Integer itemId : new ArrayList<>(dirty)) {
+                dirty.remove(itemId);
+                Counter counter = counters.get(itemId);
+                synchronized (stripe(itemId)) {
+                    if (counter.unflushed != 0) {
+                        deltas.put(itemId, (int) counter.unflushed);
+                        counter.unflushed = 0;
+                    }
+                }
+            }
+            if (deltas.isEmpty() && crossings.isEmpty()) {
+                return;
+            }
+            
+            try {
+                metrics.time("flushConsumption", () -> {
+                    items.consume(deltas);
+                    return null;
+                });
+                flushes.increment();
+            } catch (SQLException e) {
+                failures.increment();
+                System.err.println("Error flushing stock consumption: " + e.getMessage());
+                for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                    Counter counter = counters.get(delta.getKey());
+                    synchronized (stripe(delta.getKey())) {
+                        counter.unflushed += delta.getValue();
+                    }
+                    dirty.add(delta.getKey());
+                }
+                crossed.addAll(crossings);
+                return;
+            }
+            flushed.accept(deltas.keySet());
+            alertPipeline.publish(crossings);
+        }
+    }
+
+    /** Stops the flusher, writes what was consumed since the last flush and gives up the claim. */
+    @Override
+    public void close() {
+        closing = true;
+        wake.release();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        claim.close();
+    }
+}
+
+/**
+ * One process's claim on consuming a database's stock. {@link StockCounters} take stock out
+ * of memory, so two processes consuming from one database could each sell the same units. The
+ * claim is a lock on the single {@code stock_consumer} row, held in a transaction left open on
+ * a connection of its own for as long as the process consumes; a process that dies loses its
+ * connection and with it the claim.
+ */
+class StockConsumerClaim implements AutoCloseable {
+    private static final String CLAIM_SQL =
+        "SELECT consumer_id FROM stock_consumer WHERE consumer_id = 1 FOR UPDATE";
+
+    private final ConnectionPool pool;
+    private final SqlDialect dialect;
+    private Connection held;
+
+    StockConsumerClaim(ConnectionPool pool, SqlDialect dialect) {
+        this.pool = pool;
+        this.dialect = dialect;
+    }
+
+    /** Claims the database unless already held; returns false if another process holds it. */
+    synchronized boolean tryClaim() throws SQLException {
+        if (held != null) {
+            return true;
+        }
+        Connection conn = pool.openUnpooled();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.shortLockWaitSql());
+            conn.setAutoCommit(false);
+            try (ResultSet rs = stmt.executeQuery(CLAIM_SQL)) {
+                if (!rs.next()) {
+                    throw new SQLException("The stock_consumer row is missing");
+                }
+            }
+            held = conn;
+            return true;
+        } catch (SQLException e) {
+            conn.close();
+            if (Transactions.isLockTimeout(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (held == null) {
+            return;
+        }
+        try {
+            held.close();
+        } catch (SQLException e) {
+            System.err.println("Error releasing the stock consumer claim: " + e.getMessage());
+        }
+        held = null;
+    }
+}
+
+/** Items by {@code item_id}. */
+interface ItemRepository {
+    /** Receives the stock columns of one item; see {@link #scanStock}. */
+    interface StockRowHandler {
+        void row(int itemId, int quantity, int threshold, long priceCents, int supplierId);
+    }
+
+    /** Inserts an item and returns its generated ID. */
+    int insert(String name, String description, int quantity, BigDecimal price, int threshold) throws SQLException;
+
+    /** Updates the fields that are not null; returns false if there is no such item. */
+    boolean update(int itemId, String name, String description, Integer quantity, BigDecimal price,
+                   Integer threshold) throws SQLException;
+
+    /** Returns the item, or null if there is no such item. */
+    ItemRow find(int itemId) throws SQLException;
+
+    /** Returns the items that exist among the given IDs, keyed by ID. */
+    Map<Integer, ItemRow> findAll(Collection<Integer> itemIds) throws SQLException;
+
+    /** Every item at or below its threshold. */
+    List<ItemRow> lowStock() throws SQLException;
+
+    /** Up to {@code limit} items at or below their threshold, furthest below first. */
+    List<ItemRow> lowestHeadroom(int limit) throws SQLException;
+
+    /** Item count, units and value at current prices, and how many items are at or below threshold. */
+    StockTotals totals() throws SQLException;
+
+    /** Subtracts the quantities from stock in one transaction, each as a consumption movement. */
+    void consume(Map<Integer, Integer> quantities) throws SQLException;
+
+    /**
+     * Streams the stock columns of the given items, or of every item in ID order when
+     * {@code itemIds} is null. The supplier is that of the item's latest order, 0 if none.
+     */
+    void scanStock(Collection<Integer> itemIds, StockRowHandler handler) throws SQLException;
+
+    /** Items after {@code afterId}, optionally limited to a name prefix and/or low stock. */
+    Page<ItemRow> list(int afterId, int limit, String namePrefix, boolean lowStockOnly) throws SQLException;
+}
+
+/** Suppliers by {@code supplier_id}. */
+interface SupplierRepository {
+    /** Inserts a supplier and returns its generated ID. */
+    int insert(String name, String contact, String phone, String email) throws SQLException;
+
+    /** Updates the fields that are not null; returns false if there is no such supplier. */
+    boolean update(int supplierId, String name, String contact, String phone, String email) throws SQLException;
+
+    /** Returns the supplier, or null if there is no such supplier. */
+    SupplierRow find(int supplierId) throws SQLException;
+
+    /** Returns the suppliers that exist among the given IDs, keyed by ID. */
+    Map<Integer, SupplierRow> findAll(Collection<Integer> supplierIds) throws SQLException;
+
+    /** Suppliers after {@code afterId}, optionally limited to a name prefix. */
+    Page<SupplierRow> list(int afterId, int limit, String namePrefix) throws SQLException;
+}
+
+/**
+ * Order creation and status changes. Receiving an order adds its quantity to stock exactly
+ * once, however many callers receive the same order concurrently. Every change keeps the
+ * per-supplier, per-status order counts in step, in the same transaction.
+ */
+interface OrderRepository {
+    enum Outcome { CREATED, UPDATED, RECEIVED, ALREADY_RECEIVED, INVALID_TRANSITION, NOT_FOUND }
+
+    class Result {
+        final Outcome outcome;
+        final int orderId;
+        final int itemId;
+        final int quantity;
+        /** The order's status afterwards; for a rejected change, the status it kept. Null if not found. */
+        final OrderStatus status;
+        
+        Result(Outcome outcome, int orderId, int itemId, int quantity, OrderStatus status) {
+            this.outcome = outcome;
+            this.orderId = orderId;
+            this.itemId = itemId;
+            this.quantity = quantity;
+            this.status = status;
+        }
+    }
+
+    class ShipmentResult {
+        final List<Integer> receivedOrderIds;
+        final List<Integer> skippedOrderIds;
+        /** Quantity added per item_id. */
+        final Map<Integer, Integer> stockDeltas;
+        
+        ShipmentResult(List<Integer> receivedOrderIds, List<Integer> skippedOrderIds,
+                       Map<Integer, Integer> stockDeltas) {
+            this.receivedOrderIds = receivedOrderIds;
+            this.skippedOrderIds = skippedOrderIds;
+            this.stockDeltas = stockDeltas;
+        }
+    }
+
+    /**
+     * Inserts an order; if it arrives already received, its stock is added in the same
+     * transaction. An order cannot be created Cancelled.
+     */
+    Result create(int supplierId, int itemId, int quantity, OrderStatus status) throws SQLException;
+
+    /** Marks an open order received and adds its quantity to stock; idempotent. */
+    Result receive(int orderId) throws SQLException;
+
+    /**
+     * Moves the order to {@code status} if {@link OrderStatus#canMoveTo} allows it, otherwise
+     * returns {@link Outcome#INVALID_TRANSITION} (or {@link Outcome#ALREADY_RECEIVED}) and
+     * leaves it alone. Moving to Received is the same as {@link #receive}.
+     */
+    Result changeStatus(int orderId, OrderStatus status) throws SQLException;
+
+    /** Receives many orders in one transaction, skipping any that are missing, received or cancelled. */
+    ShipmentResult receiveShipment(Collection<Integer> orderIds) throws SQLException;
+
+    /** One purchase order placed (or, in a dry run, proposed) by {@link #reorder}. */
+    class ReorderLine {
+        final int itemId;
+        final int supplierId;
+        final int quantity;
+        
+        ReorderLine(int itemId, int supplierId, int quantity) {
+            this.itemId = itemId;
+            this.supplierId = supplierId;
+            this.quantity = quantity;
+        }
+    }
+
+    class ReorderPlan {
+        /** Orders per supplier, in supplier ID order. */
+        final Map<Integer, List<ReorderLine>> bySupplier;
+        /** Low stock items whose open orders already bring them up to target. */
+        final int alreadyOnOrder;
+        /** Low stock items never ordered before, when there is no default supplier. */
+        final List<Integer> withoutSupplier;
+        
+        ReorderPlan(Map<Integer, List<ReorderLine>> bySupplier, int alreadyOnOrder, List<Integer> withoutSupplier) {
+            this.bySupplier = bySupplier;
+            this.alreadyOnOrder = alreadyOnOrder;
+            this.withoutSupplier = withoutSupplier;
+        }
+        
+        int orderCount() {
+            int count = 0;
+            for (List<ReorderLine> lines : bySupplier.values()) {
+                count += lines.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Orders every item at or below its threshold back up to its target level,
+     * {@code ceil(threshold * targetFactor)} but at least threshold + 1, less what is already
+     * on order. Each item is ordered from the supplier of its latest order, or from
+     * {@code defaultSupplierId} (0 for none) if it was never ordered. Unless {@code dryRun},
+     * every order is inserted as Pending in one transaction.
+     */
+    ReorderPlan reorder(double targetFactor, int defaultSupplierId, boolean dryRun) throws SQLException;
+
+    /**
+     * Orders after {@code afterId}, optionally limited to one status and/or one supplier (0 for
+     * any). Rows carry IDs only; {@link CatalogCache#withNames} fills in the names.
+     */
+    Page<OrderRow> list(int afterId, int limit, OrderStatus status, int supplierId) throws SQLException;
+
+    /**
+     * Orders dated {@code from} to {@code to} inclusive, newest first, before {@code beforeId}
+     * (0 for the newest), whether live or archived. The history is only read when the range
+     * reaches back to the newest archived order.
+     */
+    Page<OrderRow> placedBetween(java.sql.Date from, java.sql.Date to, int beforeId, int limit) throws SQLException;
+
+    /**
+     * Moves up to {@code limit} received or cancelled orders dated before {@code before} to
+     * {@code orders_history} in one short transaction, oldest first; returns how many moved.
+     */
+    int archiveClosed(java.sql.Date before, int limit) throws SQLException;
+
+    /**
+     * Order counts per supplier, indexed by {@link OrderStatus#ordinal()}, read from the
+     * maintained counter table rather than by counting orders. Supplier 0 holds orders
+     * without a supplier.
+     */
+    Map<Integer, long[]> statusCounts() throws SQLException;
+}
+
+/** Low stock alerts. */
+interface AlertRepository {
+    /** IDs of the items that have at least one pending alert. */
+    Set<Integer> pendingItemIds() throws SQLException;
+
+    int countPending(int itemId) throws SQLException;
+
+    /** Inserts one pending alert dated today per item, as a single batch in one transaction. */
+    void insertPending(Map<Integer, String> messagesByItem) throws SQLException;
+
+    /** Marks the alert resolved and returns its item ID, or -1 if there is no such alert. */
+    int resolve(int alertId) throws SQLException;
+
+    /**
+     * Alerts newest first, before {@code beforeId} (0 for the newest). Rows carry item IDs
+     * only; {@link CatalogCache#withAlertNames} fills in the names.
+     */
+    Page<AlertRow> list(int beforeId, int limit) throws SQLException;
+
+    /** As {@link OrderRepository#placedBetween}, for alerts raised in the range. */
+    Page<AlertRow> raisedBetween(java.sql.Date from, java.sql.Date to, int beforeId, int limit) throws SQLException;
+
+    /** As {@link OrderRepository#archiveClosed}, for resolved alerts, into {@code alerts_history}. */
+    int archiveResolved(java.sql.Date before, int limit) throws SQLException;
+}
+
+/**
+ * Moves rows in a final status from a live table to its history table. Candidates are picked
+ * without locks; each batch is then locked by primary key, copied and deleted in one short
+ * transaction, so an archive run never locks more than one batch of rows that nothing else
+ * writes anyway. Final rows never change, so the copy is exact.
+ */
+final class Archives {
+    private Archives() {
+    }
+
+    /**
+     * Archives up to {@code limit} (at most {@link InLists#CHUNK}) rows that {@code selectSql}
+     * finds before the date; returns how many moved.
+     */
+    static int move(ConnectionPool pool, String selectSql, java.sql.Date before, int limit, final String table,
+                    final String history, final String key, final String columns) throws SQLException {
+        final List<Integer> candidates = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement select = conn.prepare(selectSql);
+            select.setDate(1, before);
+            select.setInt(2, Math.min(limit, InLists.CHUNK));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(rs.getInt(1));
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        
+        return Transactions.run(pool, conn -> {
+            // Another archiver may have moved some of them since; only the rows still here are locked
+            List<Integer> locked = new ArrayList<>();
+            try (PreparedStatement lock = conn.prepareUncached("SELECT " + key + " FROM " + table + " WHERE " +
+                    key + " IN " + InLists.placeholders(candidates.size()) + " FOR UPDATE")) {
+                InLists.bind(lock, candidates);
+                try (ResultSet rs = lock.executeQuery()) {
+                    while (rs.next()) {
+                        locked.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (locked.isEmpty()) {
+                return 0;
+            }
+            String inList = InLists.placeholders(locked.size());
+            try (PreparedStatement copy = conn.prepareUncached("INSERT INTO " + history + " (" + columns +
+                    ", archived_at) SELECT " + columns + ", ? FROM " + table + " WHERE " + key + " IN " + inList)) {
+                copy.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                for (int i = 0; i < locked.size(); i++) {
+                    copy.setInt(i + 2, locked.get(i));
+                }
+                copy.executeUpdate();
+            }
+            try (PreparedStatement delete = conn.prepareUncached(
+                    "DELETE FROM " + table + " WHERE " + key + " IN " + inList)) {
+                InLists.bind(delete, locked);
+                delete.executeUpdate();
+            }
+            return locked.size();
+        });
+    }
+
+    /** The newest date in a history table, or null while it is empty. */
+    static java.sql.Date newest(PooledConnection conn, String sql) throws SQLException {
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            return rs.next() ? rs.getDate(1) : null;
+        }
+    }
+
+    /** Drops the rows past {@code size} from a merged, sorted page. */
+    static <T> void trim(List<T> rows, int size) {
+        while (rows.size() > size) {
+            rows.remove(rows.size() - 1);
+        }
+    }
+}
+
+/** Chunked {@code IN (?, ?, ...)} lists, so a large ID set never produces one huge statement. */
+final class InLists {
+    static final int CHUNK = 500;
+
+    interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    private InLists() {
+    }
+
+    static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    static void bind(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            stmt.setInt(i + 1, ids.get(i));
+        }
+    }
+
+    /** Runs {@code prefix (?, ?, ...)} over the IDs in chunks, handing each row to the handler. */
+    static void query(ConnectionPool pool, String prefix, List<Integer> ids, RowHandler handler) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (PooledConnection conn = pool.borrow()) {
+            query(conn, prefix, ids, handler);
+        }
+    }
+
+    /** As above, on a connection the caller already holds, e.g. inside a transaction. */
+    static void query(PooledConnection conn, String prefix, List<Integer> ids, RowHandler handler)
+            throws SQLException {
+        for (int from = 0; from < ids.size(); from += CHUNK) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + CHUNK, ids.size()));
+            try (PreparedStatement stmt = conn.prepareUncached(prefix + placeholders(chunk.size()))) {
+                bind(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(rs);
+                    }
+                }
+            }
+        }
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
+
+/**
+ * Items over JDBC. Listings use keyset pagination ({@code WHERE item_id > cursor ORDER BY
+ * item_id LIMIT n}), so a page costs the same however large the table grows. Stock changes
+ * are only appended to the ledger; quantities are read as {@link JdbcStockLedger#CURRENT_QUANTITY}.
+ */
+class JdbcItemRepository implements ItemRepository {
+    static final String INSERT_SQL =
+        "INSERT INTO items (name, description, quantity, price, threshold) VALUES (?, ?, ?, ?, ?)";
+    private static final String COLUMNS = "SELECT item_id, name, description, " +
+        JdbcStockLedger.CURRENT_QUANTITY + " AS quantity, price, threshold FROM items ";
+    private static final String SELECT_SQL = COLUMNS + "WHERE item_id = ?";
+    private static final String SELECT_LOW_STOCK_SQL = COLUMNS + "WHERE " + JdbcStockLedger.LOW_STOCK;
+    private static final String SELECT_LOWEST_HEADROOM_SQL = COLUMNS + "WHERE " + JdbcStockLedger.LOW_STOCK +
+        " ORDER BY " + JdbcStockLedger.CURRENT_QUANTITY + " - threshold, item_id LIMIT ?";
+    private static final String TOTALS_SQL =
+        "SELECT COUNT(*), COALESCE(SUM(q), 0), COALESCE(SUM(q * price), 0), " +
+        "COALESCE(SUM(CASE WHEN q <= threshold THEN 1 ELSE 0 END), 0) FROM " +
+        "(SELECT " + JdbcStockLedger.CURRENT_QUANTITY + " AS q, price, threshold FROM items) s";
+    private static final String STOCK_COLUMNS =
+        "SELECT item_id, " + JdbcStockLedger.CURRENT_QUANTITY + ", threshold, price, " +
+        "(SELECT o.supplier_id FROM orders o WHERE o.item_id = items.item_id ORDER BY o.order_id DESC LIMIT 1) " +
+        "FROM items ";
+
+    private final ConnectionPool pool;
+    /** Listings and reports; the pool itself, or replicas when configured. */
+    private final ConnectionSource reads;
+
+    JdbcItemRepository(ConnectionPool pool, ConnectionSource reads) {
+        this.pool = pool;
+        this.reads = reads;
+    }
+
+    /**
+     * Inserts the item with nothing folded and records its initial quantity as an opening
+     * movement, which the fold adds to {@code items.quantity} once it settles.
+     */
+    @Override
+    public int insert(final String name, final String description, final int quantity, final BigDecimal price,
+                      final int threshold) throws SQLException {
+        return Transactions.run(pool, conn -> {
+            PreparedStatement stmt = conn.prepare(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            stmt.setString(1, name);
+            stmt.setString(2, description);
+            stmt.setInt(3, 0);
+            stmt.setBigDecimal(4, price);
+            stmt.setInt(5, threshold);
+            stmt.executeUpdate();
+            int itemId;
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No ID generated for item: " + name);
+                }
+                itemId = keys.getInt(1);
+            }
+            if (quantity != 0) {
+                JdbcStockLedger.append(conn, itemId, MovementType.OPENING, quantity, 0);
+            }
+            JdbcChangeLog.record(conn, ChangeEntity.ITEM, itemId);
+            return itemId;
+        });
+    }
+
+    /**
+     * A new quantity is an absolute set; the difference from the current quantity is appended
+     * as an adjustment movement. The item row is locked first so two adjustments of the same
+     * item cannot both compute their difference from the same quantity.
+     */
+    @Override
+    public boolean update(final int itemId, String name, String description, final Integer quantity,
+                          BigDecimal price, Integer threshold) throws SQLException {
+        StringBuilder query = new StringBuilder("UPDATE items SET ");
+        List<Object> params = new ArrayList<>();
+        if (name != null) {
+            query.append("name = ?, ");
+            params.add(name);
+        }
+        if (description != null) {
+            query.append("description = ?, ");
+            params.add(description);
+        }
+        if (price != null) {
+            query.append("price = ?, ");
+            params.add(price);
+        }
+        if (threshold != null) {
+            query.append("threshold = ?, ");
+            params.add(threshold);
+        }
+        if (params.isEmpty() && quantity == null) {
+            return find(itemId) != null;
+        }
+        // A quantity alone is only appended to the ledger and leaves the row as it is
+        final String sql;
+        if (params.isEmpty()) {
+            sql = null;
+        } else {
+            query.setLength(query.length() - 2);
+            query.append(" WHERE item_id = ?");
+            params.add(itemId);
+            sql = query.toString();
+        }
+        
+        return Transactions.run(pool, conn -> {
+            if (quantity != null) {
+                PreparedStatement lock = conn.prepare(JdbcStockLedger.LOCK_CURRENT_SQL);
+                lock.setInt(1, itemId);
+                int current;
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    current = rs.getInt(1);
+                }
+                if (quantity != current) {
+                    JdbcStockLedger.append(conn, itemId, MovementType.ADJUSTMENT, quantity - current, 0);
+                }
+            }
+            if (sql != null) {
+                try (PreparedStatement stmt = conn.prepareUncached(sql)) {
+                    for (int i = 0; i < params.size(); i++) {
+                        stmt.setObject(i + 1, params.get(i));
+                    }
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+            }
+            JdbcChangeLog.record(conn, ChangeEntity.ITEM, itemId);
+            return true;
+        });
+    }
+
+    @Override
+    public ItemRow find(int itemId) throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_SQL);
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public Map<Integer, ItemRow> findAll(Collection<Integer> itemIds) throws SQLException {
+        final Map<Integer, ItemRow> found = new HashMap<>();
+        if (itemIds.size() == 1) {
+            ItemRow item = find(itemIds.iterator().next());
+            if (item != null) {
+                found.put(item.itemId, item);
+            }
+            return found;
+        }
+        InLists.query(pool, COLUMNS + "WHERE item_id IN ", new ArrayList<>(new HashSet<>(itemIds)), rs -> {
+            ItemRow item = read(rs);
+            found.put(item.itemId, item);
+        });
+        return found;
+    }
+
+    @Override
+    public List<ItemRow> lowStock() throws SQLException {
+        List<ItemRow> rows = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(SELECT_LOW_STOCK_SQL).executeQuery()) {
+            while (rs.next()) {
+                rows.add(read(rs));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public List<ItemRow> lowestHeadroom(int limit) throws SQLException {
+        List<ItemRow> rows = new ArrayList<>(limit);
+        try (PooledConnection conn = reads.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_LOWEST_HEADROOM_SQL);
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(read(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public StockTotals totals() throws SQLException {
+        try (PooledConnection conn = reads.borrow();
+             ResultSet rs = conn.prepare(TOTALS_SQL).executeQuery()) {
+            rs.next();
+            return new StockTotals(rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3), rs.getLong(4));
+        }
+    }
+
+    /** Appends only: no item row is locked, so flushes never wait on receipts or each other. */
+    @Override
+    public void consume(Map<Integer, Integer> quantities) throws SQLException {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        final Map<Integer, Integer> ordered = new TreeMap<>(quantities);
+        Transactions.run(pool, conn -> {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            PreparedStatement ledger = JdbcStockLedger.appendStatement(conn);
+            try {
+                for (Map.Entry<Integer, Integer> consumed : ordered.entrySet()) {
+                    JdbcStockLedger.bindAppend(ledger, consumed.getKey(), MovementType.CONSUMPTION,
+                        -consumed.getValue(), 0, now);
+                    ledger.addBatch();
+                }
+                ledger.executeBatch();
+            } finally {
+                ledger.clearBatch();
+            }
+            JdbcChangeLog.recordAll(conn, ChangeEntity.ITEM, ordered.keySet());
+            return null;
+        });
+    }
+
+    @Override
+    public void scanStock(Collection<Integer> itemIds, final StockRowHandler handler) throws SQLException {
+        InLists.RowHandler columns = rs -> handler.row(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+            rs.getBigDecimal(4).movePointRight(2).longValue(), rs.getInt(5));
+        if (itemIds != null) {
+            InLists.query(pool, STOCK_COLUMNS + "WHERE item_id IN ", new ArrayList<>(itemIds), columns);
+            return;
+        }
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(STOCK_COLUMNS + "ORDER BY item_id");
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    columns.handle(rs);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Page<ItemRow> list(int afterId, int limit, String namePrefix, boolean lowStockOnly) throws SQLException {
+        boolean byName = namePrefix != null && !namePrefix.isEmpty();
+        String sql = COLUMNS +
+            "WHERE item_id > ?" +
+            (byName ? " AND name LIKE ?" : "") +
+            (lowStockOnly ? " AND " + JdbcStockLedger.LOW_STOCK : "") +
+            " ORDER BY item_id LIMIT ?";
+        
+        try (PooledConnection conn = reads.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            int param = 1;
+            stmt.setInt(param++, afterId);
+            if (byName) {
+                stmt.setString(param++, InLists.escapeLike(namePrefix) + "%");
+            }
+            stmt.setInt(param, limit + 1);
+            stmt.setFetchSize(limit + 1);
+            
+            List<ItemRow> rows = new ArrayList<>(limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(read(rs));
+                }
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? afterId : rows.get(Math.min(rows.size(), limit) - 1).itemId);
+        }
+    }
+
+    static ItemRow read(ResultSet rs) throws SQLException {
+        return new ItemRow(rs.getInt("item_id"), rs.getString("name"), rs.getString("description"),
+            rs.getInt("quantity"), rs.getBigDecimal("price"), rs.getInt("threshold"));
+    }
+}
+
+/** Suppliers over JDBC, listed with the same keyset pagination as items. */
+class JdbcSupplierRepository implements SupplierRepository {
+    private static final String INSERT_SQL =
+        "INSERT INTO suppliers (name, contact, phone, email) VALUES (?, ?, ?, ?)";
+    private static final String COLUMNS = "SELECT supplier_id, name, contact, phone, email FROM suppliers ";
+    private static final String SELECT_SQL = COLUMNS + "WHERE supplier_id = ?";
+
+    private final ConnectionPool pool;
+    /** Listings and reports; the pool itself, or replicas when configured. */
+    private final ConnectionSource reads;
+
+    JdbcSupplierRepository(ConnectionPool pool, ConnectionSource reads) {
+        this.pool = pool;
+        this.reads = reads;
+    }
+
+    @Override
+    public int insert(final String name, final String contact, final String phone, final String email)
+            throws SQLException {
+        return Transactions.run(pool, conn -> {
+            PreparedStatement stmt = conn.prepare(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            stmt.setString(1, name);
+            stmt.setString(2, contact);
+            stmt.setString(3, phone);
+            stmt.setString(4, email);
+            stmt.executeUpdate();
+            int supplierId;
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No ID generated for supplier: " + name);
+                }
+                supplierId = keys.getInt(1);
+            }
+            // Its order counters exist from the start, so counting never has to insert
+            JdbcOrderRepository.seedStatusCounts(conn, supplierId);
+            JdbcChangeLog.record(conn, ChangeEntity.SUPPLIER, supplierId);
+            return supplierId;
+        });
+    }
+
+    @Override
+    public boolean update(final int supplierId, String name, String contact, String phone, String email)
+            throws SQLException {
+        StringBuilder query = new StringBuilder("UPDATE suppliers SET ");
+        List<String> params = new ArrayList<>();
+        if (name != null) {
+            query.append("name = ?, ");
+            params.add(name);
+        }
+        if (contact != null) {
+            query.append("contact = ?, ");
+            params.add(contact);
+        }
+        if (phone != null) {
+            query.append("phone = ?, ");
+            params.add(phone);
+        }
+        if (email != null) {
+            query.append("email = ?, ");
+            params.add(email);
+        }
+        if (params.isEmpty()) {
+            return find(supplierId) != null;
+        }
+        query.setLength(query.length() - 2);
+        query.append(" WHERE supplier_id = ?");
+        final String sql = query.toString();
+        
+        return Transactions.run(pool, conn -> {
+            try (PreparedStatement stmt = conn.prepareUncached(sql)) {
+                for (int i = 0; i < params.size(); i++) {
+                    stmt.setString(i + 1, params.get(i));
+                }
+                stmt.setInt(params.size() + 1, supplierId);
+                if (stmt.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            JdbcChangeLog.record(conn, ChangeEntity.SUPPLIER, supplierId);
+            return true;
+        });
+    }
+
+    @Override
+    public SupplierRow find(int supplierId) throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SELECT_SQL);
+            stmt.setInt(1, supplierId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public Map<Integer, SupplierRow> findAll(Collection<Integer> supplierIds) throws SQLException {
+        final Map<Integer, SupplierRow> found = new HashMap<>();
+        InLists.query(pool, COLUMNS + "WHERE supplier_id IN ", new ArrayList<>(new HashSet<>(supplierIds)), rs -> {
+            SupplierRow supplier = read(rs);
+            found.put(supplier.supplierId, supplier);
+        });
+        return found;
+    }
+
+    @Override
+    public Page<SupplierRow> list(int afterId, int limit, String namePrefix) throws SQLException {
+        boolean byName = namePrefix != null && !namePrefix.isEmpty();
+        String sql = COLUMNS +
+            "WHERE supplier_id > ?" +
+            (byName ? " AND name LIKE ?" : "") +
+            " ORDER BY supplier_id LIMIT ?";
+        
+        try (PooledConnection conn = reads.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            int param = 1;
+            stmt.setInt(param++, afterId);
+            if (byName) {
+                stmt.setString(param++, InLists.escapeLike(namePrefix) + "%");
+            }
+            stmt.setInt(param, limit + 1);
+            stmt.setFetchSize(limit + 1);
+            
+            List<SupplierRow> rows = new ArrayList<>(limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(read(rs));
+                }
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? afterId : rows.get(Math.min(rows.size(), limit) - 1).supplierId);
+        }
+    }
+
+    static SupplierRow read(ResultSet rs) throws SQLException {
+        return new SupplierRow(rs.getInt("supplier_id"), rs.getString("name"), rs.getString("contact"),
+            rs.getString("phone"), rs.getString("email"));
+    }
+}
+
+/**
+ * Alerts over JDBC. Listings walk the primary key downwards ({@code WHERE alert_id < cursor
+ * ORDER BY alert_id DESC}), which is newest first without sorting the whole table by date.
+ */
+class JdbcAlertRepository implements AlertRepository {
+    private static final String SELECT_PENDING_ITEMS_SQL =
+        "SELECT DISTINCT item_id FROM alerts WHERE status_code = " + AlertStatus.PENDING.code;
+    private static final String COUNT_PENDING_SQL =
+        "SELECT COUNT(*) FROM alerts WHERE item_id = ? AND status_code = " + AlertStatus.PENDING.code;
+    private static final String INSERT_SQL =
+        "INSERT INTO alerts (item_id, message, alert_date, status_code) VALUES (?, ?, ?, " + AlertStatus.PENDING.code + ")";
+    private static final String SELECT_ITEM_SQL =
+        "SELECT item_id FROM alerts WHERE alert_id = ?";
+    private static final String RESOLVE_SQL =
+        "UPDATE alerts SET status_code = " + AlertStatus.RESOLVED.code + " WHERE alert_id = ?";
+    private static final String SELECT_ARCHIVABLE_SQL =
+        "SELECT alert_id FROM alerts WHERE status_code = " + AlertStatus.RESOLVED.code + " AND alert_date < ? " +
+        "ORDER BY alert_id LIMIT ?";
+    private static final String NEWEST_ARCHIVED_SQL =
+        "SELECT MAX(alert_date) FROM alerts_history";
+
+    private final ConnectionPool pool;
+    /** Listings and reports; the pool itself, or replicas when configured. */
+    private final ConnectionSource reads;
+
+    JdbcAlertRepository(ConnectionPool pool, ConnectionSource reads) {
+        this.pool = pool;
+        this.reads = reads;
+    }
+
+    @Override
+    public Set<Integer> pendingItemIds() throws SQLException {
+        Set<Integer> itemIds = new HashSet<>();
+        try (PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepare(SELECT_PENDING_ITEMS_SQL).executeQuery()) {
+            while (rs.next()) {
+                itemIds.add(rs.getInt(1));
+            }
+        }
+        return itemIds;
+    }
+
+    @Override
+    public int countPending(int itemId) throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(COUNT_PENDING_SQL);
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void insertPending(Map<Integer, String> messagesByItem) throws SQLException {
+        if (messagesByItem.isEmpty()) {
+            return;
+        }
+        java.sql.Date today = new java.sql.Date(new Date().getTime());
+        Transactions.run(pool, conn -> {
+            PreparedStatement stmt = conn.prepare(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            List<Integer> alertIds = new ArrayList<>(messagesByItem.size());
+            try {
+                for (Map.Entry<Integer, String> alert : messagesByItem.entrySet()) {
+                    stmt.setInt(1, alert.getKey());
+                    stmt.setString(2, alert.getValue());
+                    stmt.setDate(3, today);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        alertIds.add(keys.getInt(1));
+                    }
+                }
+            } finally {
+                stmt.clearBatch();
+            }
+            JdbcChangeLog.recordAll(conn, ChangeEntity.ALERT, alertIds);
+            return null;
+        });
+    }
+
+    @Override
+    public int resolve(final int alertId) throws SQLException {
+        return Transactions.run(pool, conn -> {
+            PreparedStatement select = conn.prepare(SELECT_ITEM_SQL);
+            select.setInt(1, alertId);
+            int itemId;
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                itemId = rs.getInt(1);
+            }
+            
+            PreparedStatement stmt = conn.prepare(RESOLVE_SQL);
+            stmt.setInt(1, alertId);
+            if (stmt.executeUpdate() == 0) {
+                return -1;
+            }
+            JdbcChangeLog.record(conn, ChangeEntity.ALERT, alertId);
+            return itemId;
+        });
+    }
+
+    @Override
+    public Page<AlertRow> list(int beforeId, int limit) throws SQLException {
+        String sql = "SELECT alert_id, item_id, message, alert_date, status_code FROM alerts " +
+            (beforeId > 0 ? "WHERE alert_id < ? " : "") +
+            "ORDER BY alert_id DESC LIMIT ?";
+        
+        try (PooledConnection conn = reads.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            int param = 1;
+            if (beforeId > 0) {
+                stmt.setInt(param++, beforeId);
+            }
+            stmt.setInt(param, limit + 1);
+            stmt.setFetchSize(limit + 1);
+            
+            List<AlertRow> rows = new ArrayList<>(limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new AlertRow(rs.getInt("alert_id"), rs.getInt("item_id"), rs.getString("message"),
+                        rs.getDate("alert_date"), AlertStatus.fromCode(rs.getInt("status_code")), null));
+                }
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? beforeId : rows.get(Math.min(rows.size(), limit) - 1).alertId);
+        }
+    }
+
+    @Override
+    public Page<AlertRow> raisedBetween(java.sql.Date from, java.sql.Date to, int beforeId, int limit)
+            throws SQLException {
+        try (PooledConnection conn = reads.borrow()) {
+            List<AlertRow> rows = raisedBetween(conn, "alerts", from, to, beforeId, limit);
+            java.sql.Date newestArchived = Archives.newest(conn, NEWEST_ARCHIVED_SQL);
+            if (newestArchived != null && !from.after(newestArchived)) {
+                rows.addAll(raisedBetween(conn, "alerts_history", from, to, beforeId, limit));
+                rows.sort((a, b) -> Integer.compare(b.alertId, a.alertId));
+                Archives.trim(rows, limit + 1);
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? beforeId : rows.get(Math.min(rows.size(), limit) - 1).alertId);
+        }
+    }
+
+    private static List<AlertRow> raisedBetween(PooledConnection conn, String table, java.sql.Date from,
+                                                java.sql.Date to, int beforeId, int limit) throws SQLException {
+        PreparedStatement stmt = conn.prepare("SELECT alert_id, item_id, message, alert_date, status_code FROM " +
+            table + " WHERE alert_date BETWEEN ? AND ?" + (beforeId > 0 ? " AND alert_id < ?" : "") +
+            " ORDER BY alert_id DESC LIMIT ?");
+        int param = 1;
+        stmt.setDate(param++, from);
+        stmt.setDate(param++, to);
+        if (beforeId > 0) {
+            stmt.setInt(param++, beforeId);
+        }
+        stmt.setInt(param, limit + 1);
+        List<AlertRow> rows = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new AlertRow(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getDate(4),
+                    AlertStatus.fromCode(rs.getInt(5)), null));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int archiveResolved(java.sql.Date before, int limit) throws SQLException {
+        return Archives.move(pool, SELECT_ARCHIVABLE_SQL, before, limit, "alerts", "alerts_history", "alert_id",
+            "alert_id, item_id, message, alert_date, status_code");
+    }
+}
+
+/** Why an item's stock changed. */
+enum MovementType { OPENING, RECEIPT, ADJUSTMENT, CONSUMPTION }
+
+/**
+ * Where an order is in its lifecycle, stored as the small integer {@code orders.status_code}.
+ * Orders only move forward: Pending to Shipped to Received (or straight to Received), and
+ * an open order can be Cancelled. Received and Cancelled are final.
+ */
+enum OrderStatus {
+    PENDING(1, "Pending"), SHIPPED(2, "Shipped"), RECEIVED(3, "Received"), CANCELLED(4, "Cancelled");
+
+    final int code;
+    final String label;
+
+    OrderStatus(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    /** Pending and Shipped orders are still expected to add stock. */
+    boolean isOpen() {
+        return this == PENDING || this == SHIPPED;
+    }
+
+    boolean canMoveTo(OrderStatus next) {
+        switch (this) {
+            case PENDING:
+                return next == SHIPPED || next == RECEIVED || next == CANCELLED;
+            case SHIPPED:
+                return next == RECEIVED || next == CANCELLED;
+            default:
+                return false;
+        }
+    }
+
+    static OrderStatus fromCode(int code) {
+        for (OrderStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order status code: " + code);
+    }
+
+    /** The status with this label, ignoring case and surrounding spaces, or null if there is none. */
+    static OrderStatus parse(String label) {
+        for (OrderStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label.trim())) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
+
+/** Whether an alert still needs attention, stored as {@code alerts.status_code}. */
+enum AlertStatus {
+    PENDING(1, "Pending"), RESOLVED(2, "Resolved");
+
+    final int code;
+    final String label;
+
+    AlertStatus(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    static AlertStatus fromCode(int code) {
+        for (AlertStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown alert status code: " + code);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
+
+/**
+ * The append-only history of every stock change. Writers only append, so receipts and
+ * consumption never wait on an item row. {@code items.quantity} is the materialized sum of an
+ * item's folded movements; a periodic fold adds the committed movements not yet in it, marking
+ * them with its batch number, and reads add the few that remain unmarked. Periodic snapshots
+ * record each moved item's quantity as of a fold batch, so rebuilding or asking for a past
+ * quantity reads one snapshot plus the movements after it, not the full history.
+ */
+interface StockLedger {
+    /** The item's most recent movements, newest first. */
+    List<StockMovement> history(int itemId, int limit) throws SQLException;
+
+    /** The item's stock as of the given time. */
+    int quantityAt(int itemId, Timestamp at) throws SQLException;
+
+    /**
+     * Snapshots every item with movements folded since the previous snapshot. Only folded
+     * movements are included, and a fold batch never changes once committed, so a movement
+     * whose transaction commits late lands in a later batch instead of behind the snapshot.
+     * Returns the number of items snapshotted.
+     */
+    int takeSnapshot() throws SQLException;
+
+    /**
+     * Adds every committed movement that is not yet in {@code items.quantity} to it, marking
+     * each with the new fold batch. Movements are picked by what the fold can see, never by
+     * ID or time, so one still uncommitted stays in the tail until a later fold. Current
+     * quantities are unchanged. Returns the number of items updated.
+     */
+    int fold() throws SQLException;
+
+    /**
+     * Compares every item's current quantity with its ledger. With {@code repair}, each
+     * drifted item is rechecked under a row lock and corrected to the ledger value.
+     */
+    List<StockDrift> verify(boolean repair) throws SQLException;
+}
+
+/**
+ * Ledger over JDBC, in {@code stock_movements} and {@code stock_snapshots}, with the last fold
+ * batch in {@code stock_fold}. A movement's {@code fold_batch} is null until a fold adds it to
+ * {@code items.quantity}. Queries over {@code items} read stock through
+ * {@link #CURRENT_QUANTITY} and {@link #LOW_STOCK}, never {@code items.quantity} alone.
+ */
+class JdbcStockLedger implements StockLedger {
+    /** An item's current quantity in a query over {@code items}: folded, plus its unfolded movements. */
+    static final String CURRENT_QUANTITY =
+        "(items.quantity + COALESCE((SELECT SUM(m.quantity_delta) FROM stock_movements m " +
+        "WHERE m.item_id = items.item_id AND m.fold_batch IS NULL), 0))";
+    /**
+     * Items at or below their threshold. The headroom index finds the ones low as folded; the
+     * few with unfolded movements are checked at their current quantity.
+     */
+    static final String LOW_STOCK =
+        "(items.stock_headroom <= 0 OR items.item_id IN (SELECT u.item_id FROM stock_movements u " +
+        "WHERE u.fold_batch IS NULL)) AND " + CURRENT_QUANTITY + " <= items.threshold";
+    /** Movements per fold transaction, so catching up after downtime does not hold locks for long. */
+    static final int FOLD_LIMIT = 5000;
+    /** Locks an item row, so adjustments and repairs of the same item serialize. */
+    static final String LOCK_CURRENT_SQL =
+        "SELECT " + CURRENT_QUANTITY + " FROM items WHERE item_id = ? FOR UPDATE";
+    private static final String APPEND_SQL =
+        "INSERT INTO stock_movements (item_id, movement_type, quantity_delta, order_id, moved_at) " +
+        "VALUES (?, ?, ?, ?, ?)";
+    private static final String RECORD_OPENINGS_SQL =
+        "INSERT INTO stock_movements (item_id, movement_type, quantity_delta, moved_at) " +
+        "SELECT i.item_id, 'OPENING', i.quantity, CURRENT_TIMESTAMP FROM items i " +
+        "WHERE i.item_id > ? AND i.quantity <> 0 " +
+        "AND NOT EXISTS (SELECT 1 FROM stock_movements m WHERE m.item_id = i.item_id)";
+    /** An item none of whose movements are folded yet has a folded quantity of zero. */
+    private static final String UNFOLD_OPENINGS_SQL =
+        "UPDATE items SET quantity = 0 WHERE item_id > ? AND quantity <> 0 " +
+        "AND NOT EXISTS (SELECT 1 FROM stock_movements m WHERE m.item_id = items.item_id " +
+        "AND m.fold_batch IS NOT NULL)";
+    private static final String HISTORY_SQL =
+        "SELECT movement_id, item_id, movement_type, quantity_delta, order_id, moved_at " +
+        "FROM stock_movements WHERE item_id = ? ORDER BY movement_id DESC LIMIT ?";
+    private static final String SNAPSHOT_AT_SQL =
+        "SELECT fold_batch, quantity FROM stock_snapshots WHERE item_id = ? AND as_of <= ? " +
+        "ORDER BY fold_batch DESC LIMIT 1";
+    private static final String LATEST_SNAPSHOT_SQL =
+        "SELECT fold_batch, quantity FROM stock_snapshots WHERE item_id = ? " +
+        "ORDER BY fold_batch DESC LIMIT 1";
+    /** Movements after a snapshot's batch: folded later, or not folded yet. */
+    private static final String AFTER_BATCH = "(fold_batch > ? OR fold_batch IS NULL)";
+    private static final String TAIL_AT_SQL =
+        "SELECT COALESCE(SUM(quantity_delta), 0) FROM stock_movements " +
+        "WHERE item_id = ? AND " + AFTER_BATCH + " AND moved_at <= ?";
+    private static final String TAIL_SQL =
+        "SELECT COALESCE(SUM(quantity_delta), 0) FROM stock_movements WHERE item_id = ? AND " + AFTER_BATCH;
+    private static final String TAILS_SQL =
+        "SELECT item_id, SUM(quantity_delta) FROM stock_movements WHERE " + AFTER_BATCH + " GROUP BY item_id";
+    /** Snapshots only move forward, so the newest batch and the newest as_of are the same snapshot. */
+    private static final String LAST_SNAPSHOT_SQL =
+        "SELECT COALESCE(MAX(fold_batch), 0), MAX(as_of) FROM stock_snapshots";
+    private static final String LAST_FOLD_SQL =
+        "SELECT fold_batch FROM stock_fold WHERE fold_id = 1";
+    private static final String BATCH_DELTAS_SQL =
+        "SELECT item_id, SUM(quantity_delta), MAX(moved_at) FROM stock_movements " +
+        "WHERE fold_batch > ? AND fold_batch <= ? GROUP BY item_id";
+    private static final String LATEST_SNAPSHOTS_SQL =
+        "SELECT s.item_id, s.quantity FROM stock_snapshots s " +
+        "JOIN (SELECT item_id, MAX(fold_batch) AS fold_batch FROM stock_snapshots GROUP BY item_id) l " +
+        "ON s.item_id = l.item_id AND s.fold_batch = l.fold_batch";
+    private static final String LATEST_SNAPSHOT_OF_ITEMS_SQL =
+        "SELECT s.item_id, s.quantity FROM stock_snapshots s WHERE s.fold_batch = " +
+        "(SELECT MAX(t.fold_batch) FROM stock_snapshots t WHERE t.item_id = s.item_id) AND s.item_id IN ";
+    private static final String INSERT_SNAPSHOT_SQL =
+        "INSERT INTO stock_snapshots (item_id, fold_batch, quantity, as_of, taken_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String LOCK_FOLD_SQL =
+        "SELECT fold_batch FROM stock_fold WHERE fold_id = 1 FOR UPDATE";
+    private static final String UNFOLDED_SQL =
+        "SELECT movement_id, item_id, quantity_delta FROM stock_movements WHERE fold_batch IS NULL " +
+        "ORDER BY movement_id LIMIT " + FOLD_LIMIT;
+    private static final String MARK_FOLDED_SQL =
+        "UPDATE stock_movements SET fold_batch = ? WHERE movement_id = ?";
+    private static final String SET_FOLD_SQL =
+        "UPDATE stock_fold SET fold_batch = ? WHERE fold_id = 1";
+    private static final String ADD_QUANTITY_SQL =
+        "UPDATE items SET quantity = quantity + ? WHERE item_id = ?";
+    private static final String CURRENT_QUANTITIES_SQL =
+        "SELECT item_id, " + CURRENT_QUANTITY + " FROM items ORDER BY item_id";
+
+    private final ConnectionPool pool;
+
+    JdbcStockLedger(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /** Appends one movement inside the caller's transaction. */
+    static void append(PooledConnection conn, int itemId, MovementType type, int delta, int orderId)
+            throws SQLException {
+        PreparedStatement stmt = conn.prepare(APPEND_SQL);
+        bindAppend(stmt, itemId, type, delta, orderId, new Timestamp(System.currentTimeMillis()));
+        stmt.executeUpdate();
+    }
+
+    /** The cached append statement, for callers that batch many movements. */
+    static PreparedStatement appendStatement(PooledConnection conn) throws SQLException {
+        return conn.prepare(APPEND_SQL);
+    }
+
+    /**
+     * Records opening movements for the items after {@code afterId} that were inserted with a
+     * quantity but without going through the ledger, e.g. by a bulk load, and zeroes their
+     * folded quantity: like any new movement, an opening counts through the tail until the
+     * next fold. Runs in the caller's transaction, which must be the one that inserted the
+     * items: once they commit, a consumption can give them a movement and hide them from this.
+     */
+    static void recordOpenings(PooledConnection conn, long afterId) throws SQLException {
+        PreparedStatement openings = conn.prepare(RECORD_OPENINGS_SQL);
+        openings.setLong(1, afterId);
+        openings.executeUpdate();
+        PreparedStatement unfold = conn.prepare(UNFOLD_OPENINGS_SQL);
+        unfold.setLong(1, afterId);
+        unfold.executeUpdate();
+    }
+
+    static void bindAppend(PreparedStatement stmt, int itemId, MovementType type, int delta, int orderId,
+                           Timestamp at) throws SQLException {
+        stmt.setInt(1, itemId);
+        stmt.setString(2, type.name());
+        stmt.setInt(3, delta);
+        if (orderId > 0) {
+            stmt.setInt(4, orderId);
+        } else {
+            stmt.setNull(4, Types.INTEGER);
+        }
+        stmt.setTimestamp(5, at);
+    }
+
+    @Override
+    public List<StockMovement> history(int itemId, int limit) throws SQLException {
+        List<StockMovement> movements = new ArrayList<>();
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(HISTORY_SQL);
+            stmt.setInt(1, itemId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    movements.add(new StockMovement(rs.getLong("movement_id"), rs.getInt("item_id"),
+                        MovementType.valueOf(rs.getString("movement_type")), rs.getInt("quantity_delta"),
+                        rs.getInt("order_id"), rs.getTimestamp("moved_at")));
+                }
+            }
+        }
+        return movements;
+    }
+
+    @Override
+    public int quantityAt(int itemId, Timestamp at) throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement snapshot = conn.prepare(SNAPSHOT_AT_SQL);
+            snapshot.setInt(1, itemId);
+            snapshot.setTimestamp(2, at);
+            long batch = 0;
+            int quantity = 0;
+            try (ResultSet rs = snapshot.executeQuery()) {
+                if (rs.next()) {
+                    batch = rs.getLong(1);
+                    quantity = rs.getInt(2);
+                }
+            }
+            
+            PreparedStatement tail = conn.prepare(TAIL_AT_SQL);
+            tail.setInt(1, itemId);
+            tail.setLong(2, batch);
+            tail.setTimestamp(3, at);
+            try (ResultSet rs = tail.executeQuery()) {
+                rs.next();
+                return quantity + rs.getInt(1);
+            }
+        }
+    }
+
+    @Override
+    public int takeSnapshot() throws SQLException {
+        return Transactions.run(pool, conn -> {
+            long previous;
+            Timestamp previousAsOf;
+            try (ResultSet rs = conn.prepare(LAST_SNAPSHOT_SQL).executeQuery()) {
+                rs.next();
+                previous = rs.getLong(1);
+                previousAsOf = rs.getTimestamp(2);
+            }
+            long batch;
+            try (ResultSet rs = conn.prepare(LAST_FOLD_SQL).executeQuery()) {
+                rs.next();
+                batch = rs.getLong(1);
+            }
+            if (batch <= previous) {
+                return 0;
+            }
+            
+            // Every item's latest snapshot holds its quantity as of the previous batch, so the
+            // new quantity is that plus the batches in between, which no later commit can change
+            final Map<Integer, Integer> deltas = new TreeMap<>();
+            Timestamp asOf = previousAsOf;
+            PreparedStatement stmt = conn.prepare(BATCH_DELTAS_SQL);
+            stmt.setLong(1, previous);
+            stmt.setLong(2, batch);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    deltas.put(rs.getInt(1), rs.getInt(2));
+                    if (asOf == null || rs.getTimestamp(3).after(asOf)) {
+                        asOf = rs.getTimestamp(3);
+                    }
+                }
+            }
+            final Map<Integer, Integer> base = new HashMap<>();
+            InLists.query(conn, LATEST_SNAPSHOT_OF_ITEMS_SQL, new ArrayList<>(deltas.keySet()),
+                rs -> base.put(rs.getInt(1), rs.getInt(2)));
+            
+            // As of the newest movement included, so a query for an earlier time never uses it
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            PreparedStatement insert = conn.prepare(INSERT_SNAPSHOT_SQL);
+            for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                Integer quantity = base.get(delta.getKey());
+                insert.setInt(1, delta.getKey());
+                insert.setLong(2, batch);
+                insert.setInt(3, (quantity == null ? 0 : quantity) + delta.getValue());
+                insert.setTimestamp(4, asOf);
+                insert.setTimestamp(5, now);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            return deltas.size();
+        });
+    }
+
+    @Override
+    public int fold() throws SQLException {
+        final Set<Integer> updated = new HashSet<>();
+        int folded;
+        do {
+            folded = Transactions.run(pool, conn -> {
+                // Serializes folds, and is taken before the read below so that read sees every
+                // movement an earlier fold marked
+                long batch;
+                try (ResultSet rs = conn.prepare(LOCK_FOLD_SQL).executeQuery()) {
+                    rs.next();
+                    batch = rs.getLong(1) + 1;
+                }
+                
+                // Only committed movements are visible here, whatever their ID or timestamp
+                List<Long> movements = new ArrayList<>();
+                Map<Integer, Integer> deltas = new TreeMap<>();
+                try (ResultSet rs = conn.prepare(UNFOLDED_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        movements.add(rs.getLong(1));
+                        deltas.merge(rs.getInt(2), rs.getInt(3), Integer::sum);
+                    }
+                }
+                if (movements.isEmpty()) {
+                    return 0;
+                }
+                PreparedStatement mark = conn.prepare(MARK_FOLDED_SQL);
+                for (long movementId : movements) {
+                    mark.setLong(1, batch);
+                    mark.setLong(2, movementId);
+                    mark.addBatch();
+                }
+                mark.executeBatch();
+                // In item_id order, so the fold and adjustments lock item rows in the same order.
+                // The marks commit with the quantities, so no read sees a movement twice.
+                PreparedStatement add = conn.prepare(ADD_QUANTITY_SQL);
+                for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                    if (delta.getValue() != 0) {
+                        add.setInt(1, delta.getValue());
+                        add.setInt(2, delta.getKey());
+                        add.addBatch();
+                    }
+                }
+                add.executeBatch();
+                PreparedStatement move = conn.prepare(SET_FOLD_SQL);
+                move.setLong(1, batch);
+                move.executeUpdate();
+                updated.addAll(deltas.keySet());
+                return movements.size();
+            });
+        } while (folded == FOLD_LIMIT);
+        return updated.size();
+    }
+
+    @Override
+    public List<StockDrift> verify(final boolean repair) throws SQLException {
+        List<StockDrift> drifted = Transactions.run(pool, conn -> {
+            Map<Integer, Integer> ledger = new HashMap<>();
+            try (ResultSet rs = conn.prepare(LATEST_SNAPSHOTS_SQL).executeQuery()) {
+                while (rs.next()) {
+                    ledger.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            long batch;
+            try (ResultSet rs = conn.prepare(LAST_SNAPSHOT_SQL).executeQuery()) {
+                rs.next();
+                batch = rs.getLong(1);
+            }
+            PreparedStatement tails = conn.prepare(TAILS_SQL);
+            tails.setLong(1, batch);
+            try (ResultSet rs = tails.executeQuery()) {
+                while (rs.next()) {
+                    ledger.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+                }
+            }
+            
+            List<StockDrift> found = new ArrayList<>();
+            try (ResultSet rs = conn.prepare(CURRENT_QUANTITIES_SQL).executeQuery()) {
+                while (rs.next()) {
+                    Integer expected = ledger.get(rs.getInt(1));
+                    int ledgerQuantity = expected == null ? 0 : expected;
+                    if (rs.getInt(2) != ledgerQuantity) {
+                        found.add(new StockDrift(rs.getInt(1), rs.getInt(2), ledgerQuantity));
+                    }
+                }
+            }
+            return found;
+        });
+        if (!repair) {
+            return drifted;
+        }
+        
+        List<StockDrift> repaired = new ArrayList<>();
+        for (final StockDrift drift : drifted) {
+            StockDrift fixed = Transactions.run(pool, conn -> {
+                // Recheck under the row lock; a write may have landed since the scan above
+                PreparedStatement lock = conn.prepare(LOCK_CURRENT_SQL);
+                lock.setInt(1, drift.itemId);
+                int materialized;
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    materialized = rs.getInt(1);
+                }
+                int ledgerQuantity = currentQuantity(conn, drift.itemId);
+                if (materialized == ledgerQuantity) {
+                    return null;
+                }
+                // Relative, so a fold of this item's tail committed before or after still adds up
+                PreparedStatement update = conn.prepare(ADD_QUANTITY_SQL);
+                update.setInt(1, ledgerQuantity - materialized);
+                update.setInt(2, drift.itemId);
+                update.executeUpdate();
+                JdbcChangeLog.record(conn, ChangeEntity.ITEM, drift.itemId);
+                return new StockDrift(drift.itemId, materialized, ledgerQuantity);
+            });
+            if (fixed != null) {
+                repaired.add(fixed);
+            }
+        }
+        return repaired;
+    }
+
+    /** The item's quantity according to the ledger: its latest snapshot plus every movement after it. */
+    private static int currentQuantity(PooledConnection conn, int itemId) throws SQLException {
+        PreparedStatement snapshot = conn.prepare(LATEST_SNAPSHOT_SQL);
+        snapshot.setInt(1, itemId);
+        long batch = 0;
+        int quantity = 0;
+        try (ResultSet rs = snapshot.executeQuery()) {
+            if (rs.next()) {
+                batch = rs.getLong(1);
+                quantity = rs.getInt(2);
+            }
+        }
+        PreparedStatement tail = conn.prepare(TAIL_SQL);
+        tail.setInt(1, itemId);
+        tail.setLong(2, batch);
+        try (ResultSet rs = tail.executeQuery()) {
+            rs.next();
+            return quantity + rs.getInt(1);
+        }
+    }
+}
+
+/** The kind of row a captured change refers to, stored as {@code change_log.entity_type}. */
+enum ChangeEntity {
+    ITEM(1, "items"), SUPPLIER(2, "suppliers"), ORDER(3, "orders"), ALERT(4, "alerts");
+
+    final int code;
+    final String table;
+
+    ChangeEntity(int code, String table) {
+        this.code = code;
+        this.table = table;
+    }
+
+    static ChangeEntity fromCode(int code) {
+        for (ChangeEntity entity : values()) {
+            if (entity.code == code) {
+                return entity;
+            }
+        }
+        throw new IllegalArgumentException("Unknown change entity code: " + code);
+    }
+}
+
+/**
+ * Change data capture for downstream systems. Every write to an item, supplier, order or
+ * alert appends the row's ID to {@code change_log} in the same transaction, so a change is
+ * visible exactly when the write commits. Consumers take a full export once, then pull the
+ * changes after its watermark in batches and re-read the rows they name. Changes carry no
+ * row data: the latest state of a row is all a consumer needs.
+ *
+ * <p>Change IDs are assigned when a change is written, not when it commits, so they cannot be
+ * the watermark. A change gets its feed position once committed instead: positions are handed
+ * out under a lock to the changes the sequencer can see, so a change whose transaction commits
+ * late gets a later position than any watermark returned before, never one behind it.
+ */
+interface ChangeLog {
+    class Change {
+        final long position;
+        final ChangeEntity entity;
+        final int entityId;
+        final Timestamp changedAt;
+        
+        Change(long position, ChangeEntity entity, int entityId, Timestamp changedAt) {
+            this.position = position;
+            this.entity = entity;
+            this.entityId = entityId;
+            this.changedAt = changedAt;
+        }
+    }
+
+    class Batch {
+        final List<Change> changes;
+        /** The position to pass as {@code afterPosition} for the next batch. */
+        final long watermark;
+        /** True if more positioned changes were waiting when this batch was read. */
+        final boolean more;
+        
+        Batch(List<Change> changes, long watermark, boolean more) {
+            this.changes = changes;
+            this.watermark = watermark;
+            this.more = more;
+        }
+    }
+
+    /**
+     * Positions every change committed so far and returns the highest position. A full export
+     * takes this before it starts and reports it as the watermark to sync from.
+     */
+    long watermark() throws SQLException;
+
+    /** Positions committed changes, then returns up to {@code limit} after {@code afterPosition}, in position order. */
+    Batch since(long afterPosition, int limit) throws SQLException;
+}
+
+/** Change log over JDBC, in {@code change_log}, with the last position handed out in {@code change_feed}. */
+class JdbcChangeLog implements ChangeLog {
+    /** Changes positioned per transaction, so catching up on a large backlog does not hold the lock for long. */
+    static final int SEQUENCE_LIMIT = 5000;
+    private static final String APPEND_SQL =
+        "INSERT INTO change_log (entity_type, entity_id, changed_at) VALUES (?, ?, ?)";
+    /** Changes for every item inserted without going through a repository, e.g. by a bulk load. */
+    static final String RECORD_ITEMS_AFTER_SQL =
+        "INSERT INTO change_log (entity_type, entity_id, changed_at) " +
+        "SELECT " + ChangeEntity.ITEM.code + ", item_id, CURRENT_TIMESTAMP FROM items WHERE item_id > ? ORDER BY item_id";
+    private static final String LOCK_FEED_SQL =
+        "SELECT feed_position FROM change_feed WHERE feed_id = 1 FOR UPDATE";
+    private static final String UNPOSITIONED_SQL =
+        "SELECT change_id FROM change_log WHERE feed_position IS NULL ORDER BY change_id LIMIT " + SEQUENCE_LIMIT;
+    private static final String SET_POSITION_SQL =
+        "UPDATE change_log SET feed_position = ? WHERE change_id = ?";
+    private static final String SET_FEED_SQL =
+        "UPDATE change_feed SET feed_position = ? WHERE feed_id = 1";
+    private static final String SINCE_SQL =
+        "SELECT feed_position, entity_type, entity_id, changed_at FROM change_log " +
+        "WHERE feed_position > ? ORDER BY feed_position LIMIT ?";
+
+    private final ConnectionPool pool;
+
+    JdbcChangeLog(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /** Records one changed row inside the caller's transaction. */
+    static void record(PooledConnection conn, ChangeEntity entity, int entityId) throws SQLException {
+        PreparedStatement stmt = conn.prepare(APPEND_SQL);
+        stmt.setInt(1, entity.code);
+        stmt.setInt(2, entityId);
+        stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+        stmt.executeUpdate();
+    }
+
+    /** Records many changed rows as one batch inside the caller's transaction. */
+    static void recordAll(PooledConnection conn, ChangeEntity entity, Collection<Integer> entityIds)
+            throws SQLException {
+        if (entityIds.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        PreparedStatement stmt = conn.prepare(APPEND_SQL);
+        try {
+            for (int entityId : entityIds) {
+                stmt.setInt(1, entity.code);
+                stmt.setInt(2, entityId);
+                stmt.setTimestamp(3, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.clearBatch();
+        }
+    }
+
+    @Override
+    public long watermark() throws SQLException {
+        long last;
+        int positioned;
+        do {
+            final long[] handedOut = new long[1];
+            positioned = Transactions.run(pool, conn -> {
+                // Taken before the read below, so that read sees every change an earlier
+                // sequencer positioned, and two sequencers never hand out the same position
+                long position;
+                try (ResultSet rs = conn.prepare(LOCK_FEED_SQL).executeQuery()) {
+                    rs.next();
+                    position = rs.getLong(1);
+                }
+                List<Long> changeIds = new ArrayList<>();
+                try (ResultSet rs = conn.prepare(UNPOSITIONED_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        changeIds.add(rs.getLong(1));
+                    }
+                }
+                if (!changeIds.isEmpty()) {
+                    PreparedStatement stmt = conn.prepare(SET_POSITION_SQL);
+                    for (long changeId : changeIds) {
+                        stmt.setLong(1, ++position);
+                        stmt.setLong(2, changeId);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    PreparedStatement feed = conn.prepare(SET_FEED_SQL);
+                    feed.setLong(1, position);
+                    feed.executeUpdate();
+                }
+                handedOut[0] = position;
+                return changeIds.size();
+            });
+            last = handedOut[0];
+        } while (positioned == SEQUENCE_LIMIT);
+        return last;
+    }
+
+    @Override
+    public Batch since(long afterPosition, int limit) throws SQLException {
+        if (watermark() <= afterPosition) {
+            return new Batch(Collections.<Change>emptyList(), afterPosition, false);
+        }
+        try (PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepare(SINCE_SQL);
+            stmt.setLong(1, afterPosition);
+            stmt.setInt(2, limit + 1);
+            stmt.setFetchSize(limit + 1);
+            List<Change> changes = new ArrayList<>(limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getLong(1), ChangeEntity.fromCode(rs.getInt(2)), rs.getInt(3),
+                        rs.getTimestamp(4)));
+                }
+            }
+            boolean more = changes.size() > limit;
+            if (more) {
+                changes.remove(limit);
+            }
+            return new Batch(changes, changes.isEmpty() ? afterPosition : changes.get(changes.size() - 1).position, more);
+        }
+    }
+}
+
+/** One page of a keyset-paginated listing; pass {@link #nextCursor} to fetch the next page. */
+class Page<T> {
+    final List<T> rows;
+    final int nextCursor;
+    final boolean hasMore;
+
+    Page(List<T> rows, int nextCursor, boolean hasMore) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /** Builds a page from {@code limit + 1} fetched rows; the extra row only signals there is more. */
+    static <T> Page<T> of(List<T> fetched, int limit, int lastKey) {
+        boolean hasMore = fetched.size() > limit;
+        if (hasMore) {
+            fetched.remove(fetched.size() - 1);
+        }
+        return new Page<>(fetched, lastKey, hasMore);
+    }
+}
+
+class ItemRow {
+    final int itemId;
+    final String name;
+    final String description;
+    final int quantity;
+    final BigDecimal price;
+    final int threshold;
+
+    ItemRow(int itemId, String name, String description, int quantity, BigDecimal price, int threshold) {
+        this.itemId = itemId;
+        this.name = name;
+        this.description = description;
+        this.quantity = quantity;
+        this.price = price;
+        this.threshold = threshold;
+    }
+}
+
+/** Stock summed over a set of items; {@link #plus} merges the totals of several warehouses. */
+class StockTotals {
+    final long items;
+    final long units;
+    final BigDecimal value;
+    final long lowStockItems;
+
+    StockTotals(long items, long units, BigDecimal value, long lowStockItems) {
+        this.items = items;
+        this.units = units;
+        this.value = value.setScale(2, RoundingMode.HALF_UP);
+        this.lowStockItems = lowStockItems;
+    }
+
+    StockTotals plus(StockTotals other) {
+        return new StockTotals(items + other.items, units + other.units, value.add(other.value),
+            lowStockItems + other.lowStockItems);
+    }
+}
+
+class SupplierRow {
+    final int supplierId;
+    final String name;
+    final String contact;
+    final String phone;
+    final String email;
+
+    SupplierRow(int supplierId, String name, String contact, String phone, String email) {
+        this.supplierId = supplierId;
+        this.name = name;
+        this.contact = contact;
+        this.phone = phone;
+        this.email = email;
+    }
+}
+
+class OrderRow {
+    final int orderId;
+    final int supplierId;
+    final int itemId;
+    final java.sql.Date orderDate;
+    final int quantity;
+    final OrderStatus status;
+    final String supplierName;
+    final String itemName;
+
+    OrderRow(int orderId, int supplierId, int itemId, java.sql.Date orderDate, int quantity,
+             OrderStatus status, String supplierName, String itemName) {
+        this.orderId = orderId;
+        this.supplierId = supplierId;
+        this.itemId = itemId;
+        this.orderDate = orderDate;
+        this.quantity = quantity;
+        this.status = status;
+        this.supplierName = supplierName;
+        this.itemName = itemName;
+    }
+}
+
+class AlertRow {
+    final int alertId;
+    final int itemId;
+    final String message;
+    final java.sql.Date alertDate;
+    final AlertStatus status;
+    final String itemName;
+
+    AlertRow(int alertId, int itemId, String message, java.sql.Date alertDate, AlertStatus status,
+             String itemName) {
+        this.alertId = alertId;
+        this.itemId = itemId;
+        this.message = message;
+        this.alertDate = alertDate;
+        this.status = status;
+        this.itemName = itemName;
+    }
+}
+
+class StockMovement {
+    final long movementId;
+    final int itemId;
+    final MovementType type;
+    final int quantityDelta;
+    /** The order a receipt came from; 0 for other movements. */
+    final int orderId;
+    final Timestamp movedAt;
+
+    StockMovement(long movementId, int itemId, MovementType type, int quantityDelta, int orderId,
+                  Timestamp movedAt) {
+        this.movementId = movementId;
+        this.itemId = itemId;
+        this.type = type;
+        this.quantityDelta = quantityDelta;
+        this.orderId = orderId;
+        this.movedAt = movedAt;
+    }
+}
+
+/** An item whose materialized quantity disagrees with its ledger. */
+class StockDrift {
+    final int itemId;
+    final int materialized;
+    final int ledger;
+
+    StockDrift(int itemId, int materialized, int ledger) {
+        this.itemId = itemId;
+        this.materialized = materialized;
+        this.ledger = ledger;
+    }
+}
+
+/**
+ * Brings the database schema up to date. Each {@link Migration} runs once, in version order,
+ * and is recorded in {@code schema_version}; when the schema is current, startup costs a
+ * single {@code SELECT MAX(version)} instead of re-issuing every table definition.
+ */
+class SchemaMigrator {
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "Create items, suppliers, orders and alerts tables",
+            "CREATE TABLE IF NOT EXISTS items (" +
+                "item_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(100) NOT NULL, " +
+                "description VARCHAR(255), " +
+                "quantity INT NOT NULL, " +
+                "price DECIMAL(10,2) NOT NULL, " +
+                "threshold INT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS suppliers (" +
+                "supplier_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(100) NOT NULL, " +
+                "contact VARCHAR(100), " +
+                "phone VARCHAR(20), " +
+                "email VARCHAR(100))",
+            "CREATE TABLE IF NOT EXISTS orders (" +
+                "order_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "supplier_id INT, " +
+                "item_id INT, " +
+                "quantity INT NOT NULL, " +
+                "order_date DATE NOT NULL, " +
+                "status VARCHAR(20) NOT NULL, " +
+                "FOREIGN KEY (supplier_id) REFERENCES suppliers(supplier_id), " +
+                "FOREIGN KEY (item_id) REFERENCES items(item_id))",
+            "CREATE TABLE IF NOT EXISTS alerts (" +
+                "alert_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "item_id INT, " +
+                "message VARCHAR(255) NOT NULL, " +
+                "alert_date DATE NOT NULL, " +
+                "status VARCHAR(20) NOT NULL, " +
+                "FOREIGN KEY (item_id) REFERENCES items(item_id))"),
+        new Migration(2, "Index order and alert status filters and low stock headroom",
+            // Status first so filtered listings can walk the index in order_id order
+            "CREATE INDEX idx_orders_status ON orders (status, order_id)",
+            "CREATE INDEX idx_orders_supplier ON orders (supplier_id, order_id)",
+            "CREATE INDEX idx_alerts_status_item ON alerts (status, item_id)",
+            "CREATE INDEX idx_alerts_item_status ON alerts (item_id, status)",
+            "CREATE INDEX idx_alerts_date ON alerts (alert_date)",
+            // quantity <= threshold compares two columns and cannot use an index; headroom <= 0 can
+            "ALTER TABLE items ADD COLUMN stock_headroom INT " +
+                "GENERATED ALWAYS AS (quantity - threshold) STORED",
+            "CREATE INDEX idx_items_headroom ON items (stock_headroom, item_id)"),
+        new Migration(3, "Add the stock movement ledger and snapshots",
+            "CREATE TABLE IF NOT EXISTS stock_movements (" +
+                "movement_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "item_id INT NOT NULL, " +
+                "movement_type VARCHAR(20) NOT NULL, " +
+                "quantity_delta INT NOT NULL, " +
+                "order_id INT, " +
+                "moved_at TIMESTAMP NOT NULL, " +
+                "FOREIGN KEY (item_id) REFERENCES items(item_id))",
+            "CREATE INDEX idx_movements_item ON stock_movements (item_id, movement_id)",
+            "CREATE TABLE IF NOT EXISTS stock_snapshots (" +
+                "item_id INT NOT NULL, " +
+                "movement_id BIGINT NOT NULL, " +
+                "quantity INT NOT NULL, " +
+                "as_of TIMESTAMP NOT NULL, " +
+                "taken_at TIMESTAMP NOT NULL, " +
+                "PRIMARY KEY (item_id, movement_id))",
+            // Existing stock becomes each item's opening balance
+            "INSERT INTO stock_movements (item_id, movement_type, quantity_delta, moved_at) " +
+                "SELECT item_id, 'OPENING', quantity, CURRENT_TIMESTAMP FROM items WHERE quantity <> 0"),
+        new Migration(4, "Store order and alert status as codes and count orders per status",
+            // Free-text statuses map to the closest code; anything unrecognised stays open
+            "ALTER TABLE orders ADD COLUMN status_code SMALLINT NOT NULL DEFAULT 1",
+            "UPDATE orders SET status_code = CASE UPPER(TRIM(status)) " +
+                "WHEN 'SHIPPED' THEN 2 WHEN 'RECEIVED' THEN 3 " +
+                "WHEN 'CANCELLED' THEN 4 WHEN 'CANCELED' THEN 4 ELSE 1 END",
+            "ALTER TABLE alerts ADD COLUMN status_code SMALLINT NOT NULL DEFAULT 1",
+            "UPDATE alerts SET status_code = CASE UPPER(TRIM(status)) WHEN 'RESOLVED' THEN 2 ELSE 1 END",
+            // New indexes first: MySQL needs one on alerts.item_id for its foreign key at all times
+            "CREATE INDEX idx_orders_status_code ON orders (status_code, order_id)",
+            "CREATE INDEX idx_alerts_code_item ON alerts (status_code, item_id)",
+            "CREATE INDEX idx_alerts_item_code ON alerts (item_id, status_code)",
+            "DROP INDEX idx_orders_status ON orders",
+            "DROP INDEX idx_alerts_status_item ON alerts",
+            "DROP INDEX idx_alerts_item_status ON alerts",
+            "ALTER TABLE orders DROP COLUMN status",
+            "ALTER TABLE alerts DROP COLUMN status",
+            "CREATE TABLE IF NOT EXISTS order_status_counts (" +
+                "supplier_id INT NOT NULL, " +
+                "status_code SMALLINT NOT NULL, " +
+                "slot SMALLINT NOT NULL, " +
+                "order_count BIGINT NOT NULL, " +
+                "PRIMARY KEY (supplier_id, status_code, slot))",
+            JdbcOrderRepository.RECOUNT_SQL,
+            JdbcOrderRepository.SEED_COUNTS_SQL),
+        // Not backfilled: consumers start from a full export and its watermark
+        new Migration(5, "Add the change log for incremental sync",
+            "CREATE TABLE IF NOT EXISTS change_log (" +
+                "change_id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "entity_type SMALLINT NOT NULL, " +
+                "entity_id INT NOT NULL, " +
+                "changed_at TIMESTAMP NOT NULL)"),
+        new Migration(6, "Add the replication heartbeat",
+            // Written on the primary; a replica's copy shows how far it has caught up
+            "CREATE TABLE IF NOT EXISTS replication_heartbeat (" +
+                "heartbeat_id INT PRIMARY KEY, " +
+                "beat_millis BIGINT NOT NULL)",
+            "INSERT INTO replication_heartbeat (heartbeat_id, beat_millis) VALUES (1, 0)"),
+        // No foreign keys: history outlives the suppliers and items it refers to
+        new Migration(7, "Add history tables for archived orders and alerts",
+            "CREATE TABLE IF NOT EXISTS orders_history (" +
+                "order_id INT PRIMARY KEY, " +
+                "supplier_id INT, " +
+                "item_id INT, " +
+                "quantity INT NOT NULL, " +
+                "order_date DATE NOT NULL, " +
+                "status_code SMALLINT NOT NULL, " +
+                "archived_at TIMESTAMP NOT NULL)",
+            "CREATE INDEX idx_orders_history_date ON orders_history (order_date, order_id)",
+            "CREATE TABLE IF NOT EXISTS alerts_history (" +
+                "alert_id INT PRIMARY KEY, " +
+                "item_id INT, " +
+                "message VARCHAR(255) NOT NULL, " +
+                "alert_date DATE NOT NULL, " +
+                "status_code SMALLINT NOT NULL, " +
+                "archived_at TIMESTAMP NOT NULL)",
+            "CREATE INDEX idx_alerts_history_date ON alerts_history (alert_date, alert_id)",
+            // Live alerts already have idx_alerts_date; live orders had no date index until now
+            "CREATE INDEX idx_orders_date ON orders (order_date, order_id)"),
+        // Existing quantities already sum every movement, so the whole ledger counts as folded
+        new Migration(8, "Add the stock ledger fold position",
+            "CREATE TABLE IF NOT EXISTS stock_fold (" +
+                "fold_id INT PRIMARY KEY, " +
+                "movement_id BIGINT NOT NULL)",
+            "INSERT INTO stock_fold (fold_id, movement_id) " +
+                "SELECT 1, COALESCE(MAX(movement_id), 0) FROM stock_movements"),
+        // A fold position let a movement committed late fall behind it. Everything is folded
+        // here, each movement as its own batch, so existing snapshots keep their meaning
+        new Migration(9, "Fold the stock ledger by batch instead of by position",
+            "ALTER TABLE stock_movements ADD COLUMN fold_batch BIGINT",
+            "UPDATE items SET quantity = quantity + COALESCE((SELECT SUM(m.quantity_delta) " +
+                "FROM stock_movements m WHERE m.item_id = items.item_id " +
+                "AND m.movement_id > (SELECT f.movement_id FROM stock_fold f WHERE f.fold_id = 1)), 0)",
+            "UPDATE stock_movements SET fold_batch = movement_id",
+            "ALTER TABLE stock_fold CHANGE COLUMN movement_id fold_batch BIGINT NOT NULL",
+            "UPDATE stock_fold SET fold_batch = (SELECT COALESCE(MAX(movement_id), 0) FROM stock_movements)",
+            "ALTER TABLE stock_snapshots CHANGE COLUMN movement_id fold_batch BIGINT NOT NULL",
+            // Current quantities read an item's unfolded movements; low stock and the fold read all of them
+            "CREATE INDEX idx_movements_item_batch ON stock_movements (item_id, fold_batch)",
+            "CREATE INDEX idx_movements_batch ON stock_movements (fold_batch, item_id)"),
+        // Existing changes keep their IDs as positions, so watermarks already handed out still work
+        new Migration(10, "Position changes in commit order for the change feed",
+            "ALTER TABLE change_log ADD COLUMN feed_position BIGINT",
+            "UPDATE change_log SET feed_position = change_id",
+            "CREATE INDEX idx_change_log_position ON change_log (feed_position)",
+            "CREATE TABLE IF NOT EXISTS change_feed (" +
+                "feed_id INT PRIMARY KEY, " +
+                "feed_position BIGINT NOT NULL)",
+            "INSERT INTO change_feed (feed_id, feed_position) " +
+                "SELECT 1, COALESCE(MAX(change_id), 0) FROM change_log"),
+        // Its row is locked by the one process that consumes stock through in-memory counters
+        new Migration(11, "Add the stock consumer claim",
+            "CREATE TABLE IF NOT EXISTS stock_consumer (" +
+                "consumer_id INT PRIMARY KEY)",
+            "INSERT INTO stock_consumer (consumer_id) VALUES (1)"));
+
+    private static final String STEPS_DONE_SQL =
+        "SELECT step FROM schema_migration_steps WHERE version = ?";
+    private static final String RECORD_STEP_SQL =
+        "INSERT INTO schema_migration_steps (version, step, applied_at) VALUES (?, ?, ?)";
+    private static final String CLEAR_STEPS_SQL =
+        "DELETE FROM schema_migration_steps WHERE version = ?";
+    /** How long to wait for another process's migration before giving up. */
+    private static final long LOCK_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final ConnectionPool pool;
+    private final SqlDialect dialect;
+
+    SchemaMigrator(ConnectionPool pool, SqlDialect dialect) {
+        this.pool = pool;
+        this.dialect = dialect;
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Applies any migrations newer than the recorded version and returns the resulting version.
+     * An up-to-date schema costs one read. Otherwise the migration lock is taken first, so
+     * processes starting together migrate one at a time and the later ones find nothing to do.
+     * Each statement commits with a record of its step, so a migration cut short resumes after
+     * its last completed statement instead of replaying them.
+     */
+    int migrate() throws SQLException {
+        try (PooledConnection conn = pool.borrow()) {
+            if (currentVersion(conn) >= latestVersion()) {
+                return latestVersion();
+            }
+        }
+        try (Connection lock = pool.openUnpooled();
+             PooledConnection conn = pool.borrow()) {
+            holdMigrationLock(lock);
+            int current = currentVersion(conn);
+            if (current < latestVersion()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_migration_steps (" +
+                        "version INT NOT NULL, " +
+                        "step INT NOT NULL, " +
+                        "applied_at TIMESTAMP NOT NULL, " +
+                        "PRIMARY KEY (version, step))");
+                }
+            }
+            conn.raw().setAutoCommit(false);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > current) {
+                    apply(conn, migration);
+                    current = migration.version;
+                }
+            }
+            return current;
+        }
+    }
+
+    /** Runs the migration's statements not yet recorded as done, then records the version. */
+    private void apply(PooledConnection conn, Migration migration) throws SQLException {
+        Set<Integer> done = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareUncached(STEPS_DONE_SQL)) {
+            stmt.setInt(1, migration.version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    done.add(rs.getInt(1));
+                }
+            }
+        }
+        if (!done.isEmpty()) {
+            System.out.println("Resuming schema migration " + migration.version + " after " + done.size() +
+                " of " + migration.statements.length + " steps");
+        }
+        Connection raw = conn.raw();
+        for (int step = 0; step < migration.statements.length; step++) {
+            if (done.contains(step)) {
+                continue;
+            }
+            // DML steps commit atomically with their record; DDL commits implicitly just before it
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(dialect.adaptDdl(migration.statements[step]));
+            }
+            try (PreparedStatement stmt = conn.prepareUncached(RECORD_STEP_SQL)) {
+                stmt.setInt(1, migration.version);
+                stmt.setInt(2, step);
+                stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                stmt.executeUpdate();
+            }
+            raw.commit();
+        }
+        try (PreparedStatement stmt = conn.prepareUncached(
+                "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+            stmt.setInt(1, migration.version);
+            stmt.setString(2, migration.description);
+            stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareUncached(CLEAR_STEPS_SQL)) {
+            stmt.setInt(1, migration.version);
+            stmt.executeUpdate();
+        }
+        raw.commit();
+        System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+    }
+
+    /**
+     * Locks the single {@code schema_lock} row on {@code lock} and leaves the transaction open;
+     * the lock is released when that connection closes. A connection of its own, because the
+     * DDL the migration runs commits, and would release, any lock held on its connection.
+     */
+    private static void holdMigrationLock(Connection lock) throws SQLException {
+        try (Statement stmt = lock.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_lock (lock_id INT PRIMARY KEY)");
+            stmt.executeUpdate("INSERT INTO schema_lock (lock_id) VALUES (1)");
+        } catch (SQLException e) {
+            // Another process created the row first
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                throw e;
+            }
+        }
+        lock.setAutoCommit(false);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LOCK_WAIT_MILLIS);
+        boolean announced = false;
+        while (true) {
+            try (Statement stmt = lock.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT lock_id FROM schema_lock WHERE lock_id = 1 FOR UPDATE")) {
+                rs.next();
+                return;
+            } catch (SQLException e) {
+                lock.rollback();
+                if (!Transactions.isLockTimeout(e) || System.nanoTime() > deadline) {
+                    throw e;
+                }
+                if (!announced) {
+                    System.out.println("Waiting for another process to finish migrating the schema...");
+                    announced = true;
+                }
+            }
+        }
+    }
+
+    /** The table or view does not exist: 42S02, or 42S04 from H2 on a database with no tables. */
+    static boolean isMissingTable(SQLException e) {
+        return "42S02".equals(e.getSQLState()) || "42S04".equals(e.getSQLState());
+    }
+
+    /**
+     * Fails unless the recorded schema version is the latest. One indexed read and no DDL, for
+     * starts that skip {@link #migrate}; a missing version table counts as version 0.
+     */
+    static void requireLatest(Connection conn) throws SQLException {
+        int current;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            current = rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+            current = 0;
+        }
+        if (current < latestVersion()) {
+            throw new SQLException("Database schema is at version " + current + ", this build needs " +
+                latestVersion() + "; start once without inventory.fastStart to migrate it");
+        }
+    }
+
+    /** Returns the recorded schema version, creating the version table on first run. */
+    static int currentVersion(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            if (!isMissingTable(e)) {
+                throw e;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT PRIMARY KEY, " +
+                    "description VARCHAR(200) NOT NULL, " +
+                    "applied_at TIMESTAMP NOT NULL)");
+            }
+            return 0;
+        }
+    }
+
+    static class Migration {
+        final int version;
+        final String description;
+        final String[] statements;
+        
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
+
+/**
+ * Bounded, thread-safe LRU map with hit/miss/eviction counters. Read-through callers take a
+ * {@link #epoch()} before loading and insert with {@link #putIfCurrent}, so a value loaded
+ * before a concurrent write cannot overwrite what that write stored or invalidated.
+ */
+class LruCache<K, V> {
+    private final int maxSize;
+    private final LinkedHashMap<K, V> map;
+    private long epoch;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= LruCache.this.maxSize) {
+                    return false;
+                }
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /** Caches a value read from the database unless a write has happened since {@code loadEpoch}. */
+    synchronized void putIfCurrent(K key, V value, long loadEpoch) {
+        if (epoch == loadEpoch && !map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    /** Stores the value just written to the database. */
+    synchronized void put(K key, V value) {
+        epoch++;
+        map.put(key, value);
+    }
+
+    synchronized void remove(K key) {
+        epoch++;
+        map.remove(key);
+    }
+
+    /** Replaces a cached value in place; does nothing if the key is not cached. */
+    synchronized void update(K key, Function<V, V> change) {
+        epoch++;
+        V value = map.get(key);
+        if (value != null) {
+            map.put(key, change.apply(value));
+        }
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(map.size(), maxSize, hits, misses, evictions);
+    }
+}
+
+class CacheStats {
+    final int size;
+    final int maxSize;
+    final long hits;
+    final long misses;
+    final long evictions;
+
+    CacheStats(int size, int maxSize, long hits, long misses, long evictions) {
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : hits / (double) lookups;
+    }
+}
+
+/**
+ * Read-through/write-through cache of items by {@code item_id} and suppliers by
+ * {@code supplier_id}. Callers that write a row must tell the cache (put, refresh or
+ * adjust) so later reads never see the old values.
+ */
+class CatalogCache {
+    private final ItemRepository itemStore;
+    private final SupplierRepository supplierStore;
+    private final LruCache<Integer, ItemRow> items;
+    private final LruCache<Integer, SupplierRow> suppliers;
+
+    CatalogCache(ItemRepository itemStore, SupplierRepository supplierStore, int maxItems, int maxSuppliers) {
+        this.itemStore = itemStore;
+        this.supplierStore = supplierStore;
+        this.items = new LruCache<>(maxItems);
+        this.suppliers = new LruCache<>(maxSuppliers);
+    }
+
+    /** Returns the item, loading it on a miss; null if there is no such item. */
+    ItemRow item(int itemId) throws SQLException {
+        ItemRow item = items.get(itemId);
+        if (item != null) {
+            return item;
+        }
+        long epoch = items.epoch();
+        item = itemStore.find(itemId);
+        if (item != null) {
+            items.putIfCurrent(itemId, item, epoch);
+        }
+        return item;
+    }
+
+    /** Returns the supplier, loading it on a miss; null if there is no such supplier. */
+    SupplierRow supplier(int supplierId) throws SQLException {
+        SupplierRow supplier = suppliers.get(supplierId);
+        if (supplier != null) {
+            return supplier;
+        }
+        long epoch = suppliers.epoch();
+        supplier = supplierStore.find(supplierId);
+        if (supplier != null) {
+            suppliers.putIfCurrent(supplierId, supplier, epoch);
+        }
+        return supplier;
+    }
+
+    /** Looks up many items at once, loading all misses in one batched read. */
+    Map<Integer, ItemRow> items(Collection<Integer> itemIds) throws SQLException {
+        Map<Integer, ItemRow> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer itemId : new HashSet<>(itemIds)) {
+            ItemRow item = items.get(itemId);
+            if (item != null) {
+                found.put(itemId, item);
+            } else {
+                missing.add(itemId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        
+        long epoch = items.epoch();
+        for (ItemRow item : itemStore.findAll(missing).values()) {
+            found.put(item.itemId, item);
+            items.putIfCurrent(item.itemId, item, epoch);
+        }
+        return found;
+    }
+
+    /** Looks up many suppliers at once, loading all misses in one batched read. */
+    Map<Integer, SupplierRow> suppliers(Collection<Integer> supplierIds) throws SQLException {
+        Map<Integer, SupplierRow> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer supplierId : new HashSet<>(supplierIds)) {
+            SupplierRow supplier = suppliers.get(supplierId);
+            if (supplier != null) {
+                found.put(supplierId, supplier);
+            } else {
+                missing.add(supplierId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        
+        long epoch = suppliers.epoch();
+        for (SupplierRow supplier : supplierStore.findAll(missing).values()) {
+            found.put(supplier.supplierId, supplier);
+            suppliers.putIfCurrent(supplier.supplierId, supplier, epoch);
+        }
+        return found;
+    }
+
+    /** Fills in item and supplier names on a page of orders from the cache rather than a join. */
+    Page<OrderRow> withNames(Page<OrderRow> page) throws SQLException {
+        List<Integer> itemIds = new ArrayList<>();
+        List<Integer> supplierIds = new ArrayList<>();
+        for (OrderRow row : page.rows) {
+            itemIds.add(row.itemId);
+            supplierIds.add(row.supplierId);
+        }
+        Map<Integer, ItemRow> itemsById = items(itemIds);
+        Map<Integer, SupplierRow> suppliersById = suppliers(supplierIds);
+        
+        List<OrderRow> named = new ArrayList<>(page.rows.size());
+        for (OrderRow row : page.rows) {
+            ItemRow item = itemsById.get(row.itemId);
+            SupplierRow supplier = suppliersById.get(row.supplierId);
+            named.add(new OrderRow(row.orderId, row.supplierId, row.itemId, row.orderDate, row.quantity,
+                row.status, supplier == null ? null : supplier.name, item == null ? null : item.name));
+        }
+        return new Page<>(named, page.nextCursor, page.hasMore);
+    }
+
+    /** Fills in item names on a page of alerts. */
+    Page<AlertRow> withAlertNames(Page<AlertRow> page) throws SQLException {
+        List<Integer> itemIds = new ArrayList<>();
+        for (AlertRow row : page.rows) {
+            itemIds.add(row.itemId);
+        }
+        Map<Integer, ItemRow> itemsById = items(itemIds);
+        
+        List<AlertRow> named = new ArrayList<>(page.rows.size());
+        for (AlertRow row : page.rows) {
+            ItemRow item = itemsById.get(row.itemId);
+            named.add(new AlertRow(row.alertId, row.itemId, row.message, row.alertDate, row.status,
+                item == null ? null : item.name));
+        }
+        return new Page<>(named, page.nextCursor, page.hasMore);
+    }
+
+    void putItem(ItemRow item) {
+        items.put(item.itemId, item);
+    }
+
+    void putSupplier(SupplierRow supplier) {
+        suppliers.put(supplier.supplierId, supplier);
+    }
+
+    /** Reloads an item after a partial update, so the cache holds exactly what was written. */
+    void refreshItem(int itemId) throws SQLException {
+        items.remove(itemId);
+        item(itemId);
+    }
+
+    void refreshSupplier(int supplierId) throws SQLException {
+        suppliers.remove(supplierId);
+        supplier(supplierId);
+    }
+
+    /** Applies a relative stock change to the cached item, if it is cached. */
+    void adjustItemQuantity(int itemId, final int delta) {
+        items.update(itemId, item -> new ItemRow(item.itemId, item.name, item.description,
+            item.quantity + delta, item.price, item.threshold));
+    }
+
+    void invalidateItem(int itemId) {
+        items.remove(itemId);
+    }
+
+    CacheStats itemStats() {
+        return items.stats();
+    }
+
+    CacheStats supplierStats() {
+        return suppliers.stats();
+    }
+}
+
+/**
+ * Immutable, column-oriented copy of the stock columns of every item: one primitive array
+ * per column, in item ID order, with prices in integer cents. Valuation, supplier totals and
+ * headroom rankings run over the arrays with parallel primitive streams, so they neither box
+ * values nor create an object per item.
+ */
+final class CatalogSnapshot {
+    /** Stock attributed to the supplier of each item's latest order; supplier 0 means never ordered. */
+    static final class SupplierTotal {
+        final int supplierId;
+        final int items;
+        final long units;
+        final long valueCents;
+        
+        SupplierTotal(int supplierId, int items, long units, long valueCents) {
+            this.supplierId = supplierId;
+            this.items = items;
+            this.units = units;
+            this.valueCents = valueCents;
+        }
+    }
+
+    /** Accumulates streamed rows into growable column arrays. */
+    private static final class Builder implements ItemRepository.StockRowHandler {
+        int size;
+        int[] itemIds;
+        int[] quantities;
+        int[] thresholds;
+        long[] priceCents;
+        int[] supplierIds;
+        
+        Builder(int capacity) {
+            capacity = Math.max(16, capacity);
+            itemIds = new int[capacity];
+            quantities = new int[capacity];
+            thresholds = new int[capacity];
+            priceCents = new long[capacity];
+            supplierIds = new int[capacity];
+        }
+
+        @Override
+        public void row(int itemId, int quantity, int threshold, long price, int supplierId) {
+            if (size == itemIds.length) {
+                int capacity = size * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                thresholds = Arrays.copyOf(thresholds, capacity);
+                priceCents = Arrays.copyOf(priceCents, capacity);
+                supplierIds = Arrays.copyOf(supplierIds, capacity);
+            }
+            itemIds[size] = itemId;
+            quantities[size] = quantity;
+            thresholds[size] = threshold;
+            priceCents[size] = price;
+            supplierIds[size] = supplierId;
+            size++;
+        }
+        
+        CatalogSnapshot build(long loadedAtMillis) {
+            return new CatalogSnapshot(Arrays.copyOf(itemIds, size), Arrays.copyOf(quantities, size),
+                Arrays.copyOf(thresholds, size), Arrays.copyOf(priceCents, size), Arrays.copyOf(supplierIds, size),
+                loadedAtMillis);
+        }
+    }
+
+    final int size;
+    final int[] itemIds;
+    final int[] quantities;
+    final int[] thresholds;
+    final long[] priceCents;
+    final int[] supplierIds;
+    /** When the full load this snapshot descends from was taken; refreshes keep it. */
+    final long loadedAtMillis;
+
+    private CatalogSnapshot(int[] itemIds, int[] quantities, int[] thresholds, long[] priceCents,
+                            int[] supplierIds, long loadedAtMillis) {
+        this.size = itemIds.length;
+        this.itemIds = itemIds;
+        this.quantities = quantities;
+        this.thresholds = thresholds;
+        this.priceCents = priceCents;
+        this.supplierIds = supplierIds;
+        this.loadedAtMillis = loadedAtMillis;
+    }
+
+    static CatalogSnapshot load(ItemRepository items) throws SQLException {
+        long loadedAt = System.currentTimeMillis();
+        Builder builder = new Builder(1024);
+        items.scanStock(null, builder);
+        return builder.build(loadedAt);
+    }
+
+    /** A copy with the given items re-read; items this snapshot does not have yet are merged in. */
+    CatalogSnapshot refresh(ItemRepository items, Collection<Integer> changedIds) throws SQLException {
+        Builder changed = new Builder(changedIds.size());
+        items.scanStock(changedIds, changed);
+        
+        Builder merged = new Builder(size + changed.size);
+        System.arraycopy(itemIds, 0, merged.itemIds, 0, size);
+        System.arraycopy(quantities, 0, merged.quantities, 0, size);
+        System.arraycopy(thresholds, 0, merged.thresholds, 0, size);
+        System.arraycopy(priceCents, 0, merged.priceCents, 0, size);
+        System.arraycopy(supplierIds, 0, merged.supplierIds, 0, size);
+        merged.size = size;
+        boolean added = false;
+        for (int i = 0; i < changed.size; i++) {
+            int position = Arrays.binarySearch(itemIds, changed.itemIds[i]);
+            if (position < 0) {
+                position = merged.size++;
+                added = true;
+            }
+            merged.itemIds[position] = changed.itemIds[i];
+            merged.quantities[position] = changed.quantities[i];
+            merged.thresholds[position] = changed.thresholds[i];
+            merged.priceCents[position] = changed.priceCents[i];
+            merged.supplierIds[position] = changed.supplierIds[i];
+        }
+        CatalogSnapshot refreshed = merged.build(loadedAtMillis);
+        return added ? refreshed.sortedById() : refreshed;
+    }
+
+    /** New items usually have the highest IDs, so this is normally a no-op scan. */
+    private CatalogSnapshot sortedById() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = itemIds[i - 1] < itemIds[i];
+        }
+        if (sorted) {
+            return this;
+        }
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) itemIds[i] << 32 | i;
+        }
+        Arrays.parallelSort(keys);
+        Builder builder = new Builder(size);
+        for (long key : keys) {
+            int i = (int) key;
+            builder.row(itemIds[i], quantities[i], thresholds[i], priceCents[i], supplierIds[i]);
+        }
+        return builder.build(loadedAtMillis);
+    }
+
+    long totalUnits() {
+        return IntStream.range(0, size).parallel().mapToLong(i -> quantities[i]).sum();
+    }
+
+    long totalValueCents() {
+        return IntStream.range(0, size).parallel().mapToLong(i -> (long) quantities[i] * priceCents[i]).sum();
+    }
+
+    long lowStockCount() {
+        return IntStream.range(0, size).parallel().filter(i -> quantities[i] <= thresholds[i]).count();
+    }
+
+    /** Per-supplier item count, units and value, highest value first. */
+    List<SupplierTotal> supplierTotals() {
+        final int[] suppliers = IntStream.of(supplierIds).parallel().distinct().sorted().toArray();
+        // Rows: item count, units, value in cents; one column per supplier
+        long[][] totals = IntStream.range(0, size).parallel().collect(
+            () -> new long[3][suppliers.length],
+            (acc, i) -> {
+                int slot = Arrays.binarySearch(suppliers, supplierIds[i]);
+                acc[0][slot]++;
+                acc[1][slot] += quantities[i];
+                acc[2][slot] += (long) quantities[i] * priceCents[i];
+            },
+            (left, right) -> {
+                for (int row = 0; row < 3; row++) {
+                    for (int slot = 0; slot < suppliers.length; slot++) {
+                        left[row][slot] += right[row][slot];
+                    }
+                }
+            });
+        
+        List<SupplierTotal> result = new ArrayList<>(suppliers.length);
+        for (int slot = 0; slot < suppliers.length; slot++) {
+            result.add(new SupplierTotal(suppliers[slot], (int) totals[0][slot], totals[1][slot], totals[2][slot]));
+        }
+        result.sort((a, b) -> Long.compare(b.valueCents, a.valueCents));
+        return result;
+    }
+
+    /** Positions of the {@code k} items with the least headroom (quantity minus threshold), least first. */
+    int[] lowestHeadroom(int k) {
+        return IntStream.range(0, size).parallel().collect(() -> new TopK(k), TopK::offer, TopK::addAll).drain();
+    }
+
+    long headroom(int position) {
+        return (long) quantities[position] - thresholds[position];
+    }
+
+    /** Bounded max-heap of positions keyed by headroom, so its root is the first to evict. */
+    private final class TopK {
+        private final int[] heap;
+        private int count;
+        
+        TopK(int k) {
+            heap = new int[Math.max(0, k)];
+        }
+        
+        void offer(int position) {
+            if (count < heap.length) {
+                heap[count] = position;
+                siftUp(count++);
+            } else if (count > 0 && before(position, heap[0])) {
+                heap[0] = position;
+                siftDown(0);
+            }
+        }
+        
+        void addAll(TopK other) {
+            for (int i = 0; i < other.count; i++) {
+                offer(other.heap[i]);
+            }
+        }
+
+        /** Empties the heap into an array, least headroom first. */
+        int[] drain() {
+            int[] ordered = new int[count];
+            while (count > 0) {
+                ordered[count - 1] = heap[0];
+                heap[0] = heap[--count];
+                siftDown(0);
+            }
+            return ordered;
+        }
+
+        /** Lower headroom first; ties go to the lower item ID. */
+        private boolean before(int a, int b) {
+            long diff = headroom(a) - headroom(b);
+            return diff < 0 || (diff == 0 && a < b);
+        }
+        
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!before(heap[parent], heap[i])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+        
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < count; child++) {
+                    if (before(heap[largest], heap[child])) {
+                        largest = child;
+                    }
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+        
+        private void swap(int a, int b) {
+            int tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+        }
+    }
+}
+
+/**
+ * Holds the current {@link CatalogSnapshot}. Writes only note which items changed; the next
+ * report re-reads just those items into a copy of the snapshot. The whole snapshot is
+ * reloaded once it is older than {@code maxAgeMillis}, which also picks up changes made by
+ * other processes.
+ */
+class CatalogAnalytics {
+    private final ItemRepository items;
+    private final OperationMetrics metrics;
+    private final long maxAgeMillis;
+    private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+    private CatalogSnapshot snapshot;
+
+    CatalogAnalytics(ItemRepository items, OperationMetrics metrics, long maxAgeMillis) {
+        this.items = items;
+        this.metrics = metrics;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    void itemsChanged(Collection<Integer> itemIds) {
+        changed.addAll(itemIds);
+    }
+
+    /** Forces a full reload on next use, e.g. after a bulk import. */
+    synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    synchronized CatalogSnapshot current() throws SQLException {
+        // Changes are cleared before reading, so one noted during the read is re-read next time
+        if (snapshot == null || System.currentTimeMillis() - snapshot.loadedAtMillis > maxAgeMillis) {
+            changed.clear();
+            snapshot = metrics.time("loadCatalogSnapshot", () -> CatalogSnapshot.load(items));
+        } else if (!changed.isEmpty()) {
+            final List<Integer> itemIds = new ArrayList<>(changed);
+            changed.removeAll(itemIds);
+            final CatalogSnapshot stale = snapshot;
+            snapshot = metrics.time("refreshCatalogSnapshot", () -> stale.refresh(items, itemIds));
+        }
+        return snapshot;
+    }
+}
+
+/**
+ * In-memory search over item names and descriptions. Two structures are kept per item:
+ * <ul>
+ * <li>a sorted key set with one entry per word of the name, and one for the whole name, for
+ *     prefix matches in O(log n + k);</li>
+ * <li>a trigram inverted index over name and description for substrings: the query's
+ *     rarest trigram gives the candidates, which are then checked against the text. A query
+ *     shorter than a trigram is checked against every item's text instead.</li>
+ * </ul>
+ * Prefix matches rank ahead of substring matches, and a search stops once it has {@code k}
+ * hits. Updates are incremental. Replaced words are removed, while stale trigram postings
+ * are left behind and filtered out by the text check. {@link #load} can be repeated to pick
+ * up items added by other processes.
+ */
+class ItemSearchIndex {
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final int LOAD_PAGE_SIZE = 10_000;
+
+    /** Lower-cased text of one item. */
+    private static final class Document {
+        final String name;
+        final String description;
+        
+        Document(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+    }
+
+    /** Growable int array, so postings cost four bytes per entry rather than a boxed Integer. */
+    private static final class Postings {
+        int[] itemIds = new int[4];
+        int size;
+        
+        void add(int itemId) {
+            if (size == itemIds.length) {
+                itemIds = Arrays.copyOf(itemIds, size * 2);
+            }
+            itemIds[size++] = itemId;
+        }
+    }
+
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final TreeSet<String> prefixKeys = new TreeSet<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+    private int maxItemId;
+    /** Where the next load starts reading, and the newest ID indexed when the last one ended. */
+    private int loadFrom;
+    private int lastLoadEnd;
+    private volatile boolean loaded;
+
+    /**
+     * Indexes every item not yet in the index, a page at a time; returns how many were added.
+     * A repeated load reads from the newest ID as of the load before last, not the newest
+     * indexed, so an item committed after a newer one is still picked up by the next load or
+     * the one after.
+     */
+    int load(ItemRepository items) throws SQLException {
+        int added = 0;
+        int afterId;
+        synchronized (this) {
+            afterId = loaded ? loadFrom : 0;
+        }
+        Page<ItemRow> page;
+        do {
+            page = items.list(afterId, LOAD_PAGE_SIZE, null, false);
+            synchronized (this) {
+                for (ItemRow item : page.rows) {
+                    // An item a write already indexed is newer than this read of it
+                    if (!documents.containsKey(item.itemId)) {
+                        put(item.itemId, item.name, item.description);
+                        added++;
+                    }
+                }
+            }
+            afterId = page.nextCursor;
+        } while (page.hasMore);
+        synchronized (this) {
+            loadFrom = loaded ? lastLoadEnd : maxItemId;
+            lastLoadEnd = maxItemId;
+        }
+        loaded = true;
+        return added;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    synchronized int size() {
+        return documents.size();
+    }
+
+    /** Adds the item, or replaces what was indexed for it. */
+    synchronized void put(int itemId, String name, String description) {
+        Document previous = documents.get(itemId);
+        Document document = new Document(normalize(name), normalize(description));
+        if (previous != null) {
+            for (String key : prefixKeys(itemId, previous.name)) {
+                prefixKeys.remove(key);
+            }
+        }
+        documents.put(itemId, document);
+        prefixKeys.addAll(prefixKeys(itemId, document.name));
+        
+        Set<Long> grams = new HashSet<>();
+        addTrigrams(document.name, grams);
+        addTrigrams(document.description, grams);
+        if (previous != null) {
+            Set<Long> old = new HashSet<>();
+            addTrigrams(previous.name, old);
+            addTrigrams(previous.description, old);
+            grams.removeAll(old);
+        }
+        for (Long gram : grams) {
+            trigrams.computeIfAbsent(gram, g -> new Postings()).add(itemId);
+        }
+        maxItemId = Math.max(maxItemId, itemId);
+    }
+
+    /** Up to {@code k} matching item IDs: name and word prefixes first, then substrings. */
+    synchronized List<Integer> search(String query, int k) {
+        String q = normalize(query);
+        Set<Integer> hits = new LinkedHashSet<>();
+        if (q.isEmpty() || k <= 0) {
+            return new ArrayList<>(hits);
+        }
+        
+        for (String key : prefixKeys.subSet(q, q + Character.MAX_VALUE)) {
+            hits.add(Integer.parseInt(key.substring(key.lastIndexOf(KEY_SEPARATOR) + 1)));
+            if (hits.size() == k) {
+                return new ArrayList<>(hits);
+            }
+        }
+        
+        if (q.length() < 3) {
+            // Too short for a trigram: check every document
+            for (Map.Entry<Integer, Document> entry : documents.entrySet()) {
+                Document document = entry.getValue();
+                if ((document.name.contains(q) || document.description.contains(q)) &&
+                        hits.add(entry.getKey()) && hits.size() == k) {
+                    break;
+                }
+            }
+            return new ArrayList<>(hits);
+        }
+        Postings rarest = rarestTrigram(q);
+        for (int i = 0; rarest != null && i < rarest.size && hits.size() < k; i++) {
+            int itemId = rarest.itemIds[i];
+            Document document = documents.get(itemId);
+            if (!hits.contains(itemId) && (document.name.contains(q) || document.description.contains(q))) {
+                hits.add(itemId);
+            }
+        }
+        return new ArrayList<>(hits);
+    }
+
+    /** Null when one of the query's trigrams occurs nowhere. */
+    private Postings rarestTrigram(String q) {
+        Postings rarest = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings postings = trigrams.get(trigram(q, i));
+            if (postings == null) {
+                return null;
+            }
+            if (rarest == null || postings.size < rarest.size) {
+                rarest = postings;
+            }
+        }
+        return rarest;
+    }
+
+    private static List<String> prefixKeys(int itemId, String name) {
+        String suffix = KEY_SEPARATOR + Integer.toString(itemId);
+        List<String> keys = new ArrayList<>();
+        keys.add(name + suffix);
+        for (String word : name.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !word.equals(name)) {
+                keys.add(word + suffix);
+            }
+        }
+        return keys;
+    }
+
+    private static void addTrigrams(String text, Set<Long> grams) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            grams.add(trigram(text, i));
+        }
+    }
+
+    private static long trigram(String text, int at) {
+        return (long) text.charAt(at) << 32 | (long) text.charAt(at + 1) << 16 | text.charAt(at + 2);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+/** Runs a unit of work in a transaction, retrying it when the database picks it as a deadlock victim. */
+final class Transactions {
+    private static final int MAX_ATTEMPTS = 3;
+
+    interface Work<T> {
+        T run(PooledConnection conn) throws SQLException;
+    }
+
+    private Transactions() {
+    }
+
+    static <T> T run(ConnectionPool pool, Work<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (PooledConnection conn = pool.borrow()) {
+                Connection raw = conn.raw();
+                raw.setAutoCommit(false);
+                try {
+                    T result = work.run(conn);
+                    raw.commit();
+                    pool.noteWrite();
+                    return result;
+                } catch (SQLException e) {
+                    raw.rollback();
+                    if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    /** SQLSTATE class 40 covers deadlocks and serialization failures, which are safe to retry. */
+    static boolean isRetryable(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("40");
+    }
+
+    /** A lock wait that ran out: class 40 or error 1205 on MySQL, HYT00 on H2. */
+    static boolean isLockTimeout(SQLException e) {
+        return isRetryable(e) || "HYT00".equals(e.getSQLState()) || e.getErrorCode() == 1205;
+    }
+}
+
+/**
+ * Orders over JDBC. Every status change first locks the order row and checks the move
+ * against {@link OrderStatus#canMoveTo}, so when several operators receive the same order
+ * concurrently exactly one wins and stock is added once. The same transaction moves the
+ * order between the counters in {@code order_status_counts}, so dashboard totals are a
+ * read of a few hundred rows instead of a count over every order.
+ */
+class JdbcOrderRepository implements OrderRepository {
+    /**
+     * Rows per (supplier, status) counter. Each transaction adds to one slot picked at random,
+     * so concurrent orders for the same supplier rarely wait on the same counter row.
+     */
+    static final int COUNT_SLOTS = 8;
+    /** Open statuses, for SQL, as {@link OrderStatus#isOpen} defines them. */
+    private static final String OPEN_CODES = statusCodes(true);
+    /** Final statuses: orders in them never change again and can be archived. */
+    private static final String CLOSED_CODES = statusCodes(false);
+    private static final String SELECT_ARCHIVABLE_SQL =
+        "SELECT order_id FROM orders WHERE status_code IN " + CLOSED_CODES + " AND order_date < ? " +
+        "ORDER BY order_id LIMIT ?";
+    private static final String NEWEST_ARCHIVED_SQL =
+        "SELECT MAX(order_date) FROM orders_history";
+    /** As {@link #RECOUNT_SQL}, counting archived orders too. */
+    private static final String RECOUNT_WITH_HISTORY_SQL =
+        "INSERT INTO order_status_counts (supplier_id, status_code, slot, order_count) " +
+        "SELECT COALESCE(supplier_id, 0), status_code, 0, COUNT(*) FROM " +
+        "(SELECT supplier_id, status_code FROM orders " +
+        "UNION ALL SELECT supplier_id, status_code FROM orders_history) o " +
+        "GROUP BY COALESCE(supplier_id, 0), status_code";
+
+    private static final String INSERT_ORDER_SQL =
+        "INSERT INTO orders (supplier_id, item_id, quantity, order_date, status_code) VALUES (?, ?, ?, ?, ?)";
+    private static final String LOCK_ORDER_SQL =
+        "SELECT supplier_id, item_id, quantity, status_code FROM orders WHERE order_id = ? FOR UPDATE";
+    private static final String SET_STATUS_SQL =
+        "UPDATE orders SET status_code = ? WHERE order_id = ?";
+    private static final String ADD_COUNT_SQL =
+        "UPDATE order_status_counts SET order_count = order_count + ? " +
+        "WHERE supplier_id = ? AND status_code = ? AND slot = ?";
+    private static final String INSERT_COUNT_SQL =
+        "INSERT INTO order_status_counts (supplier_id, status_code, slot, order_count) VALUES (?, ?, ?, 0)";
+    private static final String SELECT_COUNTS_SQL =
+        "SELECT supplier_id, status_code, SUM(order_count) FROM order_status_counts GROUP BY supplier_id, status_code";
+    /** Low stock items with their last supplier and open order quantity; a dry run reads just this. */
+    private static final String PREVIEW_REORDER_SQL =
+        "SELECT item_id, " + JdbcStockLedger.CURRENT_QUANTITY + ", threshold, " +
+        "(SELECT o.supplier_id FROM orders o WHERE o.item_id = items.item_id ORDER BY o.order_id DESC LIMIT 1), " +
+        "(SELECT COALESCE(SUM(o.quantity), 0) FROM orders o WHERE o.item_id = items.item_id " +
+        "AND o.status_code IN " + OPEN_CODES + ") " +
+        "FROM items WHERE " + JdbcStockLedger.LOW_STOCK + " ORDER BY item_id";
+    /** Locks the low stock items, so concurrent reorders serialize instead of ordering twice. */
+    private static final String SELECT_REORDER_SQL = PREVIEW_REORDER_SQL + " FOR UPDATE";
+
+    /** Recounts slot 0 of every counter from the orders themselves. */
+    static final String RECOUNT_SQL =
+        "INSERT INTO order_status_counts (supplier_id, status_code, slot, order_count) " +
+        "SELECT COALESCE(supplier_id, 0), status_code, 0, COUNT(*) FROM orders " +
+        "GROUP BY COALESCE(supplier_id, 0), status_code";
+    /** Adds the zero rows still missing, for every supplier (and 0 for none), status and slot. */
+    static final String SEED_COUNTS_SQL =
+        "INSERT INTO order_status_counts (supplier_id, status_code, slot, order_count) " +
+        "SELECT s.supplier_id, c.status_code, n.slot, 0 FROM " +
+        "(SELECT supplier_id FROM suppliers UNION ALL SELECT 0) s CROSS JOIN " +
+        "(" + statusCodeRows() + ") c CROSS JOIN " +
+        "(SELECT 0 AS slot UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 " +
+        "UNION ALL SELECT 4 UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7) n " +
+        "WHERE NOT EXISTS (SELECT 1 FROM order_status_counts x WHERE x.supplier_id = s.supplier_id " +
+        "AND x.status_code = c.status_code AND x.slot = n.slot)";
+
+    private final ConnectionPool pool;
+    /** Listings and reports; the pool itself, or replicas when configured. */
+    private final ConnectionSource reads;
+
+    JdbcOrderRepository(ConnectionPool pool, ConnectionSource reads) {
+        this.pool = pool;
+        this.reads = reads;
+    }
+
+    /** The codes of the open, or else the final, statuses as a SQL list such as {@code (1, 2)}. */
+    private static String statusCodes(boolean open) {
+        StringBuilder list = new StringBuilder();
+        for (OrderStatus status : OrderStatus.values()) {
+            if (status.isOpen() == open) {
+                list.append(list.length() == 0 ? "(" : ", ").append(status.code);
+            }
+        }
+        return list.append(')').toString();
+    }
+
+    /** One row per status, {@code SELECT 1 AS status_code UNION ALL SELECT 2 ...}. */
+    private static String statusCodeRows() {
+        OrderStatus[] statuses = OrderStatus.values();
+        StringBuilder rows = new StringBuilder("SELECT " + statuses[0].code + " AS status_code");
+        for (int i = 1; i < statuses.length; i++) {
+            rows.append(" UNION ALL SELECT ").append(statuses[i].code);
+        }
+        return rows.toString();
+    }
+
+    /**
+     * Rebuilds the counters from scratch, for orders written without going through this
+     * repository (bulk seeding). Runs on the caller's connection and transaction.
+     */
+    static void rebuildStatusCounts(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM order_status_counts");
+            stmt.executeUpdate(RECOUNT_WITH_HISTORY_SQL);
+            stmt.executeUpdate(SEED_COUNTS_SQL);
+        }
+    }
+
+    /** Adds the zeroed counter rows for a new supplier, in the caller's transaction. */
+    static void seedStatusCounts(PooledConnection conn, int supplierId) throws SQLException {
+        PreparedStatement stmt = conn.prepare(INSERT_COUNT_SQL);
+        try {
+            for (OrderStatus status : OrderStatus.values()) {
+                for (int slot = 0; slot < COUNT_SLOTS; slot++) {
+                    stmt.setInt(1, supplierId);
+                    stmt.setInt(2, status.code);
+                    stmt.setInt(3, slot);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.clearBatch();
+        }
+    }
+
+    @Override
+    public Result create(final int supplierId, final int itemId, final int quantity, final OrderStatus status)
+            throws SQLException {
+        if (status == OrderStatus.CANCELLED) {
+            throw new IllegalArgumentException("An order cannot be created Cancelled");
+        }
+        return Transactions.run(pool, conn -> {
+            PreparedStatement stmt = conn.prepare(INSERT_ORDER_SQL, Statement.RETURN_GENERATED_KEYS);
+            stmt.setInt(1, supplierId);
+            stmt.setInt(2, itemId);
+            stmt.setInt(3, quantity);
+            stmt.setDate(4, new java.sql.Date(new Date().getTime()));
+            stmt.setInt(5, status.code);
+            stmt.executeUpdate();
+            int orderId = 0;
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    orderId = keys.getInt(1);
+                }
+            }
+            new CountChanges().move(supplierId, null, status).apply(conn);
+            JdbcChangeLog.record(conn, ChangeEntity.ORDER, orderId);
+            
+            if (status != OrderStatus.RECEIVED) {
+                return new Result(Outcome.CREATED, orderId, itemId, quantity, status);
+            }
+            addStock(conn, orderId, itemId, quantity);
+            return new Result(Outcome.RECEIVED, orderId, itemId, quantity, status);
+        });
+    }
+
+    @Override
+    public Result receive(final int orderId) throws SQLException {
+        return changeStatus(orderId, OrderStatus.RECEIVED);
+    }
+
+    @Override
+    public Result changeStatus(final int orderId, final OrderStatus status) throws SQLException {
+        return Transactions.run(pool, conn -> {
+            PreparedStatement lock = conn.prepare(LOCK_ORDER_SQL);
+            lock.setInt(1, orderId);
+            int supplierId;
+            int itemId;
+            int quantity;
+            OrderStatus current;
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next()) {
+                    return new Result(Outcome.NOT_FOUND, orderId, 0, 0, null);
+                }
+                supplierId = rs.getInt("supplier_id");
+                itemId = rs.getInt("item_id");
+                quantity = rs.getInt("quantity");
+                current = OrderStatus.fromCode(rs.getInt("status_code"));
+            }
+            
+            if (current == OrderStatus.RECEIVED) {
+                return new Result(Outcome.ALREADY_RECEIVED, orderId, itemId, quantity, current);
+            }
+            if (current == status) {
+                return new Result(Outcome.UPDATED, orderId, itemId, quantity, current);
+            }
+            if (!current.canMoveTo(status)) {
+                return new Result(Outcome.INVALID_TRANSITION, orderId, itemId, quantity, current);
+            }
+            
+            PreparedStatement update = conn.prepare(SET_STATUS_SQL);
+            update.setInt(1, status.code);
+            update.setInt(2, orderId);
+            update.executeUpdate();
+            new CountChanges().move(supplierId, current, status).apply(conn);
+            JdbcChangeLog.record(conn, ChangeEntity.ORDER, orderId);
+            if (status != OrderStatus.RECEIVED) {
+                return new Result(Outcome.UPDATED, orderId, itemId, quantity, status);
+            }
+            addStock(conn, orderId, itemId, quantity);
+            return new Result(Outcome.RECEIVED, orderId, itemId, quantity, status);
+        });
+    }
+
+    /**
+     * Receives a whole shipment in one transaction: the open orders are locked and flipped to
+     * Received with one statement per chunk of IDs and each order is appended to the ledger as
+     * a receipt, in one batch; no item row is touched. Orders that are missing, already
+     * received or cancelled are skipped, which makes re-submitting a shipment harmless.
+     */
+    @Override
+    public ShipmentResult receiveShipment(Collection<Integer> orderIds) throws SQLException {
+        final List<Integer> ids = new ArrayList<>(new TreeSet<>(orderIds));
+        return Transactions.run(pool, conn -> {
+            List<Integer> received = new ArrayList<>();
+            // Received quantity per item, for the result
+            Map<Integer, Integer> deltas = new TreeMap<>();
+            CountChanges counts = new CountChanges();
+            PreparedStatement ledger = JdbcStockLedger.appendStatement(conn);
+            ledger.clearBatch();
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            
+            for (int from = 0; from < ids.size(); from += InLists.CHUNK) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + InLists.CHUNK, ids.size()));
+                String inList = InLists.placeholders(chunk.size());
+                
+                try (PreparedStatement select = conn.prepareUncached(
+                        "SELECT order_id, supplier_id, item_id, quantity, status_code FROM orders " +
+                        "WHERE order_id IN " + inList + " AND status_code IN " + OPEN_CODES + " FOR UPDATE")) {
+                    InLists.bind(select, chunk);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            received.add(rs.getInt("order_id"));
+                            deltas.merge(rs.getInt("item_id"), rs.getInt("quantity"), Integer::sum);
+                            counts.move(rs.getInt("supplier_id"), OrderStatus.fromCode(rs.getInt("status_code")),
+                                OrderStatus.RECEIVED);
+                            JdbcStockLedger.bindAppend(ledger, rs.getInt("item_id"), MovementType.RECEIPT,
+                                rs.getInt("quantity"), rs.getInt("order_id"), now);
+                            ledger.addBatch();
+                        }
+                    }
+                }
+                try (PreparedStatement mark = conn.prepareUncached(
+                        "UPDATE orders SET status_code = " + OrderStatus.RECEIVED.code +
+                        " WHERE order_id IN " + inList + " AND status_code IN " + OPEN_CODES)) {
+                    InLists.bind(mark, chunk);
+                    mark.executeUpdate();
+                }
+            }
+            
+            if (!deltas.isEmpty()) {
+                ledger.executeBatch();
+                counts.apply(conn);
+                JdbcChangeLog.recordAll(conn, ChangeEntity.ORDER, received);
+                JdbcChangeLog.recordAll(conn, ChangeEntity.ITEM, deltas.keySet());
+            }
+            
+            List<Integer> skipped = new ArrayList<>(ids);
+            skipped.removeAll(new HashSet<>(received));
+            return new ShipmentResult(received, skipped, deltas);
+        });
+    }
+
+    @Override
+    public ReorderPlan reorder(final double targetFactor, final int defaultSupplierId, final boolean dryRun)
+            throws SQLException {
+        if (dryRun) {
+            // Orders nothing, so it neither locks the items nor opens a write transaction
+            try (PooledConnection conn = pool.borrow()) {
+                return plan(conn, PREVIEW_REORDER_SQL, targetFactor, defaultSupplierId);
+            }
+        }
+        return Transactions.run(pool, conn -> {
+            ReorderPlan plan = plan(conn, SELECT_REORDER_SQL, targetFactor, defaultSupplierId);
+            if (!plan.bySupplier.isEmpty()) {
+                java.sql.Date today = new java.sql.Date(new Date().getTime());
+                CountChanges counts = new CountChanges();
+                PreparedStatement insert = conn.prepare(INSERT_ORDER_SQL, Statement.RETURN_GENERATED_KEYS);
+                List<Integer> orderIds = new ArrayList<>();
+                try {
+                    for (List<ReorderLine> lines : plan.bySupplier.values()) {
+                        for (ReorderLine line : lines) {
+                            insert.setInt(1, line.supplierId);
+                            insert.setInt(2, line.itemId);
+                            insert.setInt(3, line.quantity);
+                            insert.setDate(4, today);
+                            insert.setInt(5, OrderStatus.PENDING.code);
+                            insert.addBatch();
+                            counts.move(line.supplierId, null, OrderStatus.PENDING);
+                        }
+                    }
+                    insert.executeBatch();
+                    try (ResultSet keys = insert.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            orderIds.add(keys.getInt(1));
+                        }
+                    }
+                } finally {
+                    insert.clearBatch();
+                }
+                counts.apply(conn);
+                JdbcChangeLog.recordAll(conn, ChangeEntity.ORDER, orderIds);
+            }
+            return plan;
+        });
+    }
+
+    /** What to order for each low stock item that {@code sql} returns. */
+    private static ReorderPlan plan(PooledConnection conn, String sql, double targetFactor, int defaultSupplierId)
+            throws SQLException {
+        Map<Integer, List<ReorderLine>> bySupplier = new TreeMap<>();
+        List<Integer> withoutSupplier = new ArrayList<>();
+        int alreadyOnOrder = 0;
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            while (rs.next()) {
+                int itemId = rs.getInt(1);
+                int threshold = rs.getInt(3);
+                int supplierId = rs.getInt(4);
+                long target = Math.max((long) Math.ceil(threshold * targetFactor), threshold + 1L);
+                long quantity = target - rs.getInt(2) - rs.getLong(5);
+                if (quantity <= 0) {
+                    alreadyOnOrder++;
+                    continue;
+                }
+                if (supplierId == 0) {
+                    supplierId = defaultSupplierId;
+                }
+                if (supplierId == 0) {
+                    withoutSupplier.add(itemId);
+                    continue;
+                }
+                bySupplier.computeIfAbsent(supplierId, id -> new ArrayList<>())
+                    .add(new ReorderLine(itemId, supplierId, (int) Math.min(quantity, Integer.MAX_VALUE)));
+            }
+        }
+        return new ReorderPlan(bySupplier, alreadyOnOrder, withoutSupplier);
+    }
+
+    @Override
+    public Page<OrderRow> list(int afterId, int limit, OrderStatus status, int supplierId) throws SQLException {
+        boolean byStatus = status != null;
+        String sql = "SELECT order_id, supplier_id, item_id, order_date, quantity, status_code FROM orders " +
+            "WHERE order_id > ?" +
+            (byStatus ? " AND status_code = ?" : "") +
+            (supplierId > 0 ? " AND supplier_id = ?" : "") +
+            " ORDER BY order_id LIMIT ?";
+        
+        try (PooledConnection conn = reads.borrow()) {
+            PreparedStatement stmt = conn.prepare(sql);
+            int param = 1;
+            stmt.setInt(param++, afterId);
+            if (byStatus) {
+                stmt.setInt(param++, status.code);
+            }
+            if (supplierId > 0) {
+                stmt.setInt(param++, supplierId);
+            }
+            stmt.setInt(param, limit + 1);
+            stmt.setFetchSize(limit + 1);
+            
+            List<OrderRow> rows = new ArrayList<>(limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new OrderRow(rs.getInt("order_id"), rs.getInt("supplier_id"),
+                        rs.getInt("item_id"), rs.getDate("order_date"), rs.getInt("quantity"),
+                        OrderStatus.fromCode(rs.getInt("status_code")), null, null));
+                }
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? afterId : rows.get(Math.min(rows.size(), limit) - 1).orderId);
+        }
+    }
+
+    @Override
+    public Page<OrderRow> placedBetween(java.sql.Date from, java.sql.Date to, int beforeId, int limit)
+            throws SQLException {
+        try (PooledConnection conn = reads.borrow()) {
+            List<OrderRow> rows = placedBetween(conn, "orders", from, to, beforeId, limit);
+            java.sql.Date newestArchived = Archives.newest(conn, NEWEST_ARCHIVED_SQL);
+            if (newestArchived != null && !from.after(newestArchived)) {
+                rows.addAll(placedBetween(conn, "orders_history", from, to, beforeId, limit));
+                rows.sort((a, b) -> Integer.compare(b.orderId, a.orderId));
+                Archives.trim(rows, limit + 1);
+            }
+            return Page.of(rows, limit, rows.isEmpty() ? beforeId : rows.get(Math.min(rows.size(), limit) - 1).orderId);
+        }
+    }
+
+    private static List<OrderRow> placedBetween(PooledConnection conn, String table, java.sql.Date from,
+                                                java.sql.Date to, int beforeId, int limit) throws SQLException {
+        PreparedStatement stmt = conn.prepare("SELECT order_id, supplier_id, item_id, order_date, quantity, " +
+            "status_code FROM " + table + " WHERE order_date BETWEEN ? AND ?" +
+            (beforeId > 0 ? " AND order_id < ?" : "") + " ORDER BY order_id DESC LIMIT ?");
+        int param = 1;
+        stmt.setDate(param++, from);
+        stmt.setDate(param++, to);
+        if (beforeId > 0) {
+            stmt.setInt(param++, beforeId);
+        }
+        stmt.setInt(param, limit + 1);
+        List<OrderRow> rows = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new OrderRow(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDate(4), rs.getInt(5),
+                    OrderStatus.fromCode(rs.getInt(6)), null, null));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int archiveClosed(java.sql.Date before, int limit) throws SQLException {
+        return Archives.move(pool, SELECT_ARCHIVABLE_SQL, before, limit, "orders", "orders_history", "order_id",
+            "order_id, supplier_id, item_id, quantity, order_date, status_code");
+    }
+
+    @Override
+    public Map<Integer, long[]> statusCounts() throws SQLException {
+        try (PooledConnection conn = reads.borrow();
+             ResultSet rs = conn.prepare(SELECT_COUNTS_SQL).executeQuery()) {
+            Map<Integer, long[]> counts = new TreeMap<>();
+            while (rs.next()) {
+                OrderStatus status = OrderStatus.fromCode(rs.getInt(2));
+                counts.computeIfAbsent(rs.getInt(1), id -> new long[OrderStatus.values().length])[status.ordinal()] =
+                    rs.getLong(3);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * The net change to each (supplier, status) counter made by one transaction. The changes
+     * go to one random slot, in supplier then status order, so concurrent transactions lock
+     * counter rows in the same order and cannot deadlock on them.
+     */
+    private static final class CountChanges {
+        private final Map<Long, Integer> deltas = new TreeMap<>();
+
+        /** Moves one order of the supplier from one status to another; either may be null. */
+        CountChanges move(int supplierId, OrderStatus from, OrderStatus to) {
+            if (from != null) {
+                deltas.merge(key(supplierId, from), -1, Integer::sum);
+            }
+            if (to != null) {
+                deltas.merge(key(supplierId, to), 1, Integer::sum);
+            }
+            return this;
+        }
+        
+        void apply(PooledConnection conn) throws SQLException {
+            int slot = ThreadLocalRandom.current().nextInt(COUNT_SLOTS);
+            PreparedStatement stmt = conn.prepare(ADD_COUNT_SQL);
+            try {
+                for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+                    if (delta.getValue() == 0) {
+                        continue;
+                    }
+                    stmt.setInt(1, delta.getValue());
+                    stmt.setInt(2, (int) (delta.getKey() >>> 8));
+                    stmt.setInt(3, (int) (delta.getKey() & 0xFF));
+                    stmt.setInt(4, slot);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            } finally {
+                stmt.clearBatch();
+            }
+        }
+        
+        private static long key(int supplierId, OrderStatus status) {
+            return (long) supplierId << 8 | status.code;
+        }
+    }
+
+    /**
+     * Records the receipt in the ledger, which is all it takes to add it to the item's stock:
+     * the item row is not locked, so receipts of the same item do not queue behind each other.
+     * The ledger's foreign key rejects an item that does not exist.
+     */
+    private void addStock(PooledConnection conn, int orderId, int itemId, int quantity) throws SQLException {
+        JdbcStockLedger.append(conn, itemId, MovementType.RECEIPT, quantity, orderId);
+        JdbcChangeLog.record(conn, ChangeEntity.ITEM, itemId);
+    }
+}
+
+/**
+ * Measures order receipt throughput with N concurrent receivers all racing to receive the
+ * same orders, and checks that each order added its stock exactly once. It creates its own
+ * item, supplier and orders, so point it at a scratch database.
+ */
+class ReceiveThroughputProbe {
+    private final OrderRepository orders;
+    private final ItemRepository items;
+    private final SupplierRepository suppliers;
+
+    ReceiveThroughputProbe(InventoryStore store) {
+        this.orders = store.orders();
+        this.items = store.items();
+        this.suppliers = store.suppliers();
+    }
+
+    void run(int threads, int orderCount) throws SQLException, InterruptedException {
+        final int itemId = items.insert("Receive probe item", "created by --receive-probe", 0, BigDecimal.ZERO, 0);
+        final int supplierId = suppliers.insert("Receive probe supplier", null, null, null);
+        final List<Integer> orderIds = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            orderIds.add(orders.create(supplierId, itemId, 1, OrderStatus.PENDING).orderId);
+        }
+        
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final List<Integer> mine = new ArrayList<>(orderIds);
+            Collections.shuffle(mine);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int orderId : mine) {
+                    try {
+                        OrderRepository.Outcome outcome = orders.receive(orderId).outcome;
+                        if (outcome == OrderRepository.Outcome.RECEIVED) {
+                            received.incrementAndGet();
+                        } else {
+                            duplicates.incrementAndGet();
+                        }
+                    } catch (SQLException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        
+        int stock = items.find(itemId).quantity;
+        long attempts = received.get() + duplicates.get() + failures.get();
+        System.out.printf("%d receivers: %.0f receipts/s, %.0f attempts/s, %d received, " +
+                "%d duplicates rejected, %d errors, stock %s%n",
+            threads, received.get() / seconds, attempts / seconds, received.get(),
+            duplicates.get(), failures.get(),
+            stock == received.get() && received.get() == orderCount ? "consistent" : "INCONSISTENT (" + stock + ")");
+    }
+}
+
+/**
+ * Measures consumption throughput: {@code threads} point-of-sale threads each consume one
+ * unit of the same item {@code consumesPerThread} times, against only half that much stock.
+ * Exactly the stock on hand must be accepted, the rest rejected, and once flushed the item's
+ * quantity and stock ledger must both reach zero, and the catalog cache must agree.
+ */
+class ConsumeThroughputProbe {
+    private final ItemRepository items;
+    private final StockLedger ledger;
+    private final StockCounters counters;
+    private final CatalogCache catalog;
+
+    ConsumeThroughputProbe(InventoryStore store, StockCounters counters, CatalogCache catalog) {
+        this.items = store.items();
+        this.ledger = store.ledger();
+        this.counters = counters;
+        this.catalog = catalog;
+    }
+
+    void run(int threads, final int consumesPerThread) throws SQLException, InterruptedException {
+        final int stock = threads * consumesPerThread / 2;
+        final int itemId = items.insert("Consume probe item", "created by --consume-probe", stock,
+            BigDecimal.ZERO, stock / 10);
+        catalog.item(itemId); // Cached before consumption, so a missed invalidation shows up below
+        
+        final AtomicLong accepted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < consumesPerThread; i++) {
+                    try {
+                        if (counters.consume(itemId, 1).outcome == StockCounters.Outcome.ACCEPTED) {
+                            accepted.incrementAndGet();
+                        } else {
+                            rejected.incrementAndGet();
+                        }
+                    } catch (SQLException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        
+        // Wait out the write-behind flush, and the cache invalidation after it, before checking
+        long deadline = System.currentTimeMillis() + 10_000;
+        int quantity = items.find(itemId).quantity;
+        int cached = catalog.item(itemId).quantity;
+        while ((quantity != 0 || cached != quantity) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            quantity = items.find(itemId).quantity;
+            cached = catalog.item(itemId).quantity;
+        }
+        int ledgerQuantity = ledger.quantityAt(itemId, new Timestamp(System.currentTimeMillis()));
+        long attempts = accepted.get() + rejected.get() + failures.get();
+        System.out.printf("%d consumers: %.0f consumes/s, %d accepted, %d rejected, %d errors, stock %s%n",
+            threads, attempts / seconds, accepted.get(), rejected.get(), failures.get(),
+            accepted.get() == stock && quantity == 0 && ledgerQuantity == 0 && cached == 0
+                ? "consistent" : "INCONSISTENT (" + quantity + ", ledger " + ledgerQuantity + ", cached " + cached + ")");
+    }
+}
+
+/**
+ * Benchmarks the core data-access operations against any JDBC database, typically an
+ * embedded one: {@code java -cp h2.jar inventory.java --bench jdbc:h2:./bench-db}.
+ * The database is seeded to the requested size once and reused by later runs. Each operation
+ * is warmed up, then measured on {@code bench.threads} threads for a fixed time, and results
+ * are written as JSON Lines so two runs can be compared with {@code --bench-compare}.
+ * The same operations run under JMH through {@link #harness}; see {@code jmh/} and
+ * {@code gradle jmh}.
+ */
+class InventoryBenchmark {
+    private static final String[] ALL_OPERATIONS = {
+        "insertItem", "updateItem", "createOrder", "receiveOrder", "receiveShipment",
+        "lowStockScan", "ordersByStatus", "orderDashboard"
+    };
+
+    private interface Operation {
+        void run(Random random) throws SQLException;
+    }
+
+    private final String url;
+    private final int itemCount = Integer.getInteger("bench.items", 1000);
+    private final int supplierCount = Integer.getInteger("bench.suppliers", 100);
+    private final int orderCount = Integer.getInteger("bench.orders", 10000);
+    private final int threads = Integer.getInteger("bench.threads", 1);
+    private final int warmupSeconds = Integer.getInteger("bench.warmupSeconds", 2);
+    private final int measureSeconds = Integer.getInteger("bench.measureSeconds", 5);
+    private final Path reportFile = Paths.get(System.getProperty("bench.report", "bench-report.jsonl"));
+
+    private final InventoryStore store;
+    private final ConnectionPool pool;
+    private final LowStockEvaluator lowStock;
+    private final AlertPipeline alertPipeline;
+    private final OrderRepository orders;
+    private final Deque<Integer> pendingOrders = new ConcurrentLinkedDeque<>();
+    private int minItemId;
+    private int maxItemId;
+    private int minSupplierId;
+    private int maxSupplierId;
+
+    InventoryBenchmark(String url) throws SQLException, ClassNotFoundException {
+        this.url = url;
+        this.store = InventoryStore.open(new DatabaseConfig(SqlDialect.forUrl(url), url,
+            System.getProperty("bench.user", ""), System.getProperty("bench.password", ""),
+            threads + 2, 30_000L, 50), null);
+        this.pool = store.pool();
+        this.lowStock = new LowStockEvaluator(store.items(), store.alerts());
+        // Writes publish their low stock checks as the application does, so they are timed without them
+        this.alertPipeline = new AlertPipeline(lowStock, new OperationMetrics(), 10000, 500, 50L);
+        this.orders = store.orders();
+    }
+
+    /**
+     * One operation on a seeded database, behind JDK interfaces only. The JMH benchmarks are
+     * compiled in a named package, which cannot refer to this file's classes, so they get one
+     * of these by reflection from {@link #harness}. Each call runs the operation once with the
+     * calling thread's random.
+     */
+    static final class Harness implements Callable<Void>, AutoCloseable {
+        private final InventoryBenchmark benchmark;
+        private final Operation operation;
+        
+        Harness(InventoryBenchmark benchmark, Operation operation) {
+            this.benchmark = benchmark;
+            this.operation = operation;
+        }
+
+        @Override
+        public Void call() throws SQLException {
+            operation.run(ThreadLocalRandom.current());
+            return null;
+        }
+
+        @Override
+        public void close() {
+            benchmark.close();
+        }
+    }
+
+    /** Migrates and seeds the database at {@code url} as {@code --bench} does, ready to run {@code operation}. */
+    static Harness harness(String url, String operation) throws SQLException, ClassNotFoundException {
+        InventoryBenchmark benchmark = new InventoryBenchmark(url);
+        try {
+            benchmark.prepare();
+            return new Harness(benchmark, benchmark.start(operation));
+        } catch (SQLException | RuntimeException e) {
+            benchmark.close();
+            throw e;
+        }
+    }
+
+    static void main(String[] args) {
+        String selected = System.getProperty("bench.ops");
+        InventoryBenchmark benchmark = null;
+        try {
+            benchmark = new InventoryBenchmark(args[1]);
+            benchmark.run(selected == null ? ALL_OPERATIONS : selected.split(","));
+        } catch (Exception e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        } finally {
+            if (benchmark != null) {
+                benchmark.close();
+            }
+        }
+    }
+
+    private void prepare() throws SQLException {
+        store.migrate();
+        seed();
+        lowStock.loadPendingAlerts();
+    }
+
+    /** The named operation, with the ledger folded first; what the operation appends stays in the tail. */
+    private Operation start(String name) throws SQLException {
+        Operation operation = operation(name);
+        store.ledger().fold();
+        return operation;
+    }
+
+    private void close() {
+        alertPipeline.close();
+        store.close();
+    }
+
+    void run(String[] operations) throws SQLException, IOException, InterruptedException {
+        prepare();
+        
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("{\"type\": \"meta\", \"timestamp\": \"%s\", \"java\": \"%s\", " +
+                "\"url\": \"%s\", \"items\": %d, \"suppliers\": %d, \"orders\": %d, \"threads\": %d, " +
+                "\"warmupSeconds\": %d, \"measureSeconds\": %d}",
+            new Timestamp(System.currentTimeMillis()), System.getProperty("java.version"),
+            url.replace("\\", "/").replace("\"", "'"), itemCount, supplierCount, orderCount, threads,
+            warmupSeconds, measureSeconds));
+        
+        System.out.printf("%n%-16s %12s %10s %10s %10s %10s %10s%n",
+            "Operation", "ops/s", "mean us", "p50 us", "p90 us", "p99 us", "max us");
+        for (String name : operations) {
+            Operation operation = start(name.trim());
+            measure(operation, warmupSeconds);
+            long[] samples = measure(operation, measureSeconds);
+            BenchResult result = new BenchResult(name.trim(), samples, measureSeconds);
+            System.out.printf("%-16s %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", result.name,
+                result.opsPerSecond, result.meanMicros, result.percentileMicros(50),
+                result.percentileMicros(90), result.percentileMicros(99), result.maxMicros());
+            lines.add(result.toJson());
+        }
+        
+        Files.write(reportFile, lines, StandardCharsets.UTF_8);
+        System.out.println("\nReport written to " + reportFile.toAbsolutePath());
+    }
+
+    private Operation operation(String name) {
+        switch (name) {
+            case "insertItem":
+                return random -> {
+                    int itemId = store.items().insert("Bench item " + random.nextInt(1_000_000),
+                        "inserted by benchmark", random.nextInt(200),
+                        BigDecimal.valueOf(random.nextInt(100_000), 2), 20);
+                    alertPipeline.publish(Collections.singleton(itemId));
+                };
+            case "updateItem":
+                return random -> {
+                    int itemId = randomItem(random);
+                    store.items().update(itemId, null, null, random.nextInt(200), null, null);
+                    alertPipeline.publish(Collections.singleton(itemId));
+                };
+            case "createOrder":
+                return random -> orders.create(randomSupplier(random), randomItem(random),
+                    1 + random.nextInt(100), OrderStatus.PENDING);
+            case "receiveOrder":
+                return random -> {
+                    OrderRepository.Result result = orders.receive(nextPendingOrder(random));
+                    if (result.outcome == OrderRepository.Outcome.RECEIVED) {
+                        alertPipeline.publish(Collections.singleton(result.itemId));
+                    }
+                };
+            case "receiveShipment":
+                return random -> {
+                    List<Integer> shipment = new ArrayList<>();
+                    for (int i = 0; i < 20; i++) {
+                        shipment.add(nextPendingOrder(random));
+                    }
+                    alertPipeline.publish(orders.receiveShipment(shipment).stockDeltas.keySet());
+                };
+            case "lowStockScan":
+                return random -> lowStock.reconcile();
+            case "ordersByStatus":
+                return random -> orders.list(0, 20, OrderStatus.PENDING, 0);
+            case "orderDashboard":
+                return random -> orders.statusCounts();
+            default:
+                throw new IllegalArgumentException("Unknown benchmark operation: " + name +
+                    " (expected one of " + Arrays.toString(ALL_OPERATIONS) + ")");
+        }
+    }
+
+    /** Runs the operation on every thread for the given time and returns all latencies in nanoseconds. */
+    private long[] measure(final Operation operation, int seconds) throws InterruptedException {
+        final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        final long[][] perThread = new long[threads][];
+        final int[] counts = new int[threads];
+        final AtomicLong errors = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(index * 7919L + System.nanoTime());
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        operation.run(random);
+                    } catch (SQLException | RuntimeException e) {
+                        // Counted and skipped, so one bad operation cannot lose the thread's samples
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                perThread[index] = samples;
+                counts[index] = count;
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (errors.get() > 0) {
+            System.err.println(errors.get() + " operations failed");
+        }
+        
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(perThread[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private int randomItem(Random random) {
+        return minItemId + random.nextInt(maxItemId - minItemId + 1);
+    }
+
+    private int randomSupplier(Random random) {
+        return minSupplierId + random.nextInt(maxSupplierId - minSupplierId + 1);
+    }
+
+    /** Takes an order that is still pending, creating a fresh one when the seeded supply runs out. */
+    private int nextPendingOrder(Random random) throws SQLException {
+        Integer orderId = pendingOrders.pollFirst();
+        if (orderId != null) {
+            return orderId;
+        }
+        return orders.create(randomSupplier(random), randomItem(random), 1 + random.nextInt(100), OrderStatus.PENDING).orderId;
+    }
+
+    /** Tops the tables up to the requested sizes with batched inserts; an already seeded database is reused. */
+    private void seed() throws SQLException {
+        Random random = new Random(42);
+        int suppliers = count("suppliers");
+        int items = count("items");
+        int existingOrders = count("orders");
+        long start = System.nanoTime();
+        
+        try (PooledConnection conn = pool.borrow()) {
+            Connection raw = conn.raw();
+            raw.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareUncached(
+                    "INSERT INTO suppliers (name, contact, phone, email) VALUES (?, ?, ?, ?)")) {
+                for (int i = suppliers; i < supplierCount; i++) {
+                    stmt.setString(1, "Supplier " + i);
+                    stmt.setString(2, "Contact " + i);
+                    stmt.setString(3, "555-" + (1000 + i % 9000));
+                    stmt.setString(4, "supplier" + i + "@example.com");
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            raw.commit();
+            
+            // Openings commit with their items, as the importer writes them
+            loadIdRanges(conn);
+            long lastItemId = maxItemId;
+            try (PreparedStatement stmt = conn.prepareUncached(JdbcItemRepository.INSERT_SQL)) {
+                for (int i = items; i < itemCount; i++) {
+                    stmt.setString(1, "Item " + i);
+                    stmt.setString(2, "Seeded item number " + i);
+                    stmt.setInt(3, random.nextInt(500));
+                    stmt.setBigDecimal(4, BigDecimal.valueOf(1 + random.nextInt(100_000), 2));
+                    stmt.setInt(5, 10 + random.nextInt(40));
+                    stmt.addBatch();
+                    if ((i + 1) % 1000 == 0) {
+                        stmt.executeBatch();
+                        JdbcStockLedger.recordOpenings(conn, lastItemId);
+                        raw.commit();
+                        loadIdRanges(conn);
+                        lastItemId = maxItemId;
+                    }
+                }
+                stmt.executeBatch();
+            }
+            JdbcStockLedger.recordOpenings(conn, lastItemId);
+            raw.commit();
+            loadIdRanges(conn);
+            
+            OrderStatus[] statuses = {OrderStatus.RECEIVED, OrderStatus.RECEIVED, OrderStatus.RECEIVED,
+                OrderStatus.RECEIVED, OrderStatus.RECEIVED, OrderStatus.RECEIVED, OrderStatus.RECEIVED,
+                OrderStatus.PENDING, OrderStatus.PENDING, OrderStatus.SHIPPED};
+            long day = 24L * 60 * 60 * 1000;
+            try (PreparedStatement stmt = conn.prepareUncached(
+                    "INSERT INTO orders (supplier_id, item_id, quantity, order_date, status_code) VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = existingOrders; i < orderCount; i++) {
+                    stmt.setInt(1, randomSupplier(random));
+                    stmt.setInt(2, randomItem(random));
+                    stmt.setInt(3, 1 + random.nextInt(100));
+                    stmt.setDate(4, new java.sql.Date(System.currentTimeMillis() - random.nextInt(730) * day));
+                    stmt.setInt(5, statuses[random.nextInt(statuses.length)].code);
+                    stmt.addBatch();
+                    if ((i + 1) % 5000 == 0) {
+                        stmt.executeBatch();
+                        raw.commit();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            raw.commit();
+            if (suppliers < supplierCount || existingOrders < orderCount) {
+                // The raw inserts above bypass the repository, so its order counters are recounted
+                JdbcOrderRepository.rebuildStatusCounts(conn);
+                raw.commit();
+            }
+            
+            try (PreparedStatement stmt = conn.prepareUncached(
+                    "SELECT order_id FROM orders WHERE status_code = " + OrderStatus.PENDING.code +
+                    " ORDER BY order_id LIMIT 1000000");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pendingOrders.add(rs.getInt(1));
+                }
+            }
+        }
+        
+        System.out.printf("Dataset: %d items, %d suppliers, %d orders (seeded in %.1f s)%n",
+            count("items"), count("suppliers"), count("orders"), (System.nanoTime() - start) / 1e9);
+    }
+
+    private void loadIdRanges(PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(item_id), MAX(item_id) FROM items")) {
+                rs.next();
+                minItemId = rs.getInt(1);
+                maxItemId = rs.getInt(2);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(supplier_id), MAX(supplier_id) FROM suppliers")) {
+                rs.next();
+                minSupplierId = rs.getInt(1);
+                maxSupplierId = rs.getInt(2);
+            }
+        }
+    }
+
+    private int count(String table) throws SQLException {
+        try (PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /** Prints throughput and p99 changes between two reports, e.g. before and after a change. */
+    static void compare(Path baseline, Path current) {
+        try {
+            Map<String, Map<String, String>> before = readResults(baseline);
+            Map<String, Map<String, String>> after = readResults(current);
+            System.out.printf("%-16s %12s %12s %8s %10s %10s %8s%n",
+                "Operation", "base ops/s", "ops/s", "change", "base p99", "p99", "change");
+            for (Map.Entry<String, Map<String, String>> entry : after.entrySet()) {
+                Map<String, String> base = before.get(entry.getKey());
+                if (base == null) {
+                    continue;
+                }
+                double baseOps = Double.parseDouble(base.get("opspersecond"));
+                double ops = Double.parseDouble(entry.getValue().get("opspersecond"));
+                double baseP99 = Double.parseDouble(base.get("p99micros"));
+                double p99 = Double.parseDouble(entry.getValue().get("p99micros"));
+                System.out.printf("%-16s %12.1f %12.1f %+7.1f%% %10.1f %10.1f %+7.1f%%%n", entry.getKey(),
+                    baseOps, ops, (ops / baseOps - 1) * 100, baseP99, p99, (p99 / baseP99 - 1) * 100);
+            }
+        } catch (IOException | MalformedRowException | RuntimeException e) {
+            System.err.println("Error comparing benchmark reports: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, Map<String, String>> readResults(Path report)
+            throws IOException, MalformedRowException {
+        Map<String, Map<String, String>> results = new LinkedHashMap<>();
+        try (JsonItemRowReader reader = new JsonItemRowReader(Files.newBufferedReader(report, StandardCharsets.UTF_8))) {
+            Map<String, String> row;
+            while ((row = reader.next()) != null) {
+                if ("result".equals(row.get("type"))) {
+                    results.put(row.get("operation"), row);
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Latency summary for one measured operation. */
+    static class BenchResult {
+        final String name;
+        final long[] sortedNanos;
+        final double opsPerSecond;
+        final double meanMicros;
+        
+        BenchResult(String name, long[] sortedNanos, int seconds) {
+            this.name = name;
+            this.sortedNanos = sortedNanos;
+            this.opsPerSecond = sortedNanos.length / (double) seconds;
+            long sum = 0;
+            for (long nanos : sortedNanos) {
+                sum += nanos;
+            }
+            this.meanMicros = sortedNanos.length == 0 ? 0.0 : sum / (double) sortedNanos.length / 1000.0;
+        }
+        
+        double percentileMicros(double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1000.0;
+        }
+        
+        double maxMicros() {
+            return sortedNanos.length == 0 ? 0.0 : sortedNanos[sortedNanos.length - 1] / 1000.0;
+        }
+        
+        String toJson() {
+            return String.format(Locale.ROOT,
+                "{\"type\": \"result\", \"operation\": \"%s\", \"samples\": %d, \"opsPerSecond\": %.2f, " +
+                    "\"meanMicros\": %.2f, \"p50Micros\": %.2f, \"p90Micros\": %.2f, \"p99Micros\": %.2f, " +
+                    "\"maxMicros\": %.2f}",
+                name, sortedNanos.length, opsPerSecond, meanMicros, percentileMicros(50),
+                percentileMicros(90), percentileMicros(99), maxMicros());
+        }
+    }
+}
+
+/**
+ * Soak test: {@code load.threads} workers run a weighted mix of application writes against
+ * one database for {@code load.seconds}, or until {@code load.operations} have run, e.g.
+ * {@code java -cp h2.jar inventory.java --load jdbc:h2:./load-db}. Unlike the benchmark, the
+ * operations run concurrently with each other, so they contend for the same rows and
+ * connections as they do in production. Latency goes into a {@link LatencyHistogram} per
+ * operation, so a run of any length uses the same memory.
+ */
+class LoadGenerator {
+    private static final String DEFAULT_MIX =
+        "addItem:15,updateItem:35,createOrder:25,receiveOrder:20,resolveAlert:5";
+
+    /** DONE, CONFLICT when a concurrent write got there first, SKIPPED when there was nothing to do. */
+    private enum Outcome { DONE, CONFLICT, SKIPPED }
+
+    private interface Operation {
+        Outcome run(Random random) throws SQLException;
+    }
+
+    /** Latency and outcomes of one operation type. */
+    private static class OperationLoad {
+        final String name;
+        final Operation operation;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        volatile String lastError;
+        
+        OperationLoad(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+        
+        long attempts() {
+            return latency.count() + errors.sum();
+        }
+    }
+
+    private final String url;
+    private final int itemCount = Integer.getInteger("load.items", 1000);
+    private final int supplierCount = Integer.getInteger("load.suppliers", 20);
+    private final int threads = Integer.getInteger("load.threads", 16);
+    private final int seconds = Integer.getInteger("load.seconds", 60);
+    private final long operationLimit = Long.getLong("load.operations", 0L);
+    private final int reportSeconds = Integer.getInteger("load.reportSeconds", 10);
+
+    private final InventoryStore store;
+    private final LowStockEvaluator lowStock;
+    private final AlertPipeline alertPipeline;
+    private final Deque<Integer> pendingOrders = new ConcurrentLinkedDeque<>();
+    private final Deque<Integer> pendingAlerts = new ConcurrentLinkedDeque<>();
+    private final List<OperationLoad> loads = new ArrayList<>();
+    private int[] cumulativeWeights;
+    private int minItemId;
+    private int maxItemId;
+    private int minSupplierId;
+    private int maxSupplierId;
+
+    LoadGenerator(String url) throws SQLException, ClassNotFoundException {
+        this.url = url;
+        this.store = InventoryStore.open(new DatabaseConfig(SqlDialect.forUrl(url), url,
+            System.getProperty("load.user", ""), System.getProperty("load.password", ""),
+            Integer.getInteger("load.poolSize", threads), 30_000L, 50), null);
+        this.lowStock = new LowStockEvaluator(store.items(), store.alerts());
+        this.alertPipeline = new AlertPipeline(lowStock, new OperationMetrics(), 10000, 500, 50L);
+    }
+
+    static void main(String[] args) {
+        LoadGenerator generator = null;
+        try {
+            generator = new LoadGenerator(args.length > 1 ? args[1] : "jdbc:h2:mem:load;DB_CLOSE_DELAY=-1");
+            generator.parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+            generator.run();
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+        } finally {
+            if (generator != null) {
+                generator.alertPipeline.close();
+                generator.store.close();
+            }
+        }
+    }
+
+    /** Parses {@code name:weight,...}; an operation with weight 0 is left out. */
+    void parseMix(String mix) {
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight;
+            try {
+                weight = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : -1;
+            } catch (NumberFormatException e) {
+                weight = -1;
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Expected name:weight in load.mix, got: " + entry);
+            }
+            if (weight > 0) {
+                String name = parts[0].trim();
+                loads.add(new OperationLoad(name, operation(name)));
+                weights.add(weight);
+            }
+        }
+        if (loads.isEmpty()) {
+            throw new IllegalArgumentException("load.mix has no operation with a positive weight");
+        }
+        cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            total += weights.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    private Operation operation(String name) {
+        switch (name) {
+            case "addItem":
+                return random -> {
+                    int itemId = store.items().insert("Load item " + random.nextInt(1_000_000),
+                        "inserted by load test", random.nextInt(200), BigDecimal.valueOf(random.nextInt(100_000), 2), 20);
+                    alertPipeline.publish(Collections.singleton(itemId));
+                    return Outcome.DONE;
+                };
+            case "updateItem":
+                return random -> {
+                    int itemId = randomItem(random);
+                    if (!store.items().update(itemId, null, null, random.nextInt(200), null, null)) {
+                        return Outcome.SKIPPED;
+                    }
+                    alertPipeline.publish(Collections.singleton(itemId));
+                    return Outcome.DONE;
+                };
+            case "createOrder":
+                return random -> {
+                    int orderId = store.orders().create(randomSupplier(random), randomItem(random),
+                        1 + random.nextInt(100), OrderStatus.PENDING).orderId;
+                    pendingOrders.add(orderId);
+                    return Outcome.DONE;
+                };
+            case "receiveOrder":
+                return random -> {
+                    Integer orderId = pendingOrders.pollFirst();
+                    if (orderId == null) {
+                        orderId = store.orders().create(randomSupplier(random), randomItem(random),
+                            1 + random.nextInt(100), OrderStatus.PENDING).orderId;
+                    }
+                    OrderRepository.Result result = store.orders().receive(orderId);
+                    if (result.outcome != OrderRepository.Outcome.RECEIVED) {
+                        return Outcome.CONFLICT;
+                    }
+                    alertPipeline.publish(Collections.singleton(result.itemId));
+                    return Outcome.DONE;
+                };
+            case "resolveAlert":
+                return random -> {
+                    Integer alertId = pendingAlerts.pollFirst();
+                    if (alertId == null) {
+                        for (AlertRow alert : store.alerts().list(0, 100).rows) {
+                            if (alert.status == AlertStatus.PENDING) {
+                                pendingAlerts.add(alert.alertId);
+                            }
+                        }
+                        alertId = pendingAlerts.pollFirst();
+                        if (alertId == null) {
+                            return Outcome.SKIPPED;
+                        }
+                    }
+                    int itemId = store.alerts().resolve(alertId);
+                    if (itemId < 0) {
+                        return Outcome.CONFLICT;
+                    }
+                    lowStock.alertResolved(itemId);
+                    return Outcome.DONE;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown load operation: " + name +
+                    " (expected addItem, updateItem, createOrder, receiveOrder or resolveAlert)");
+        }
+    }
+
+    void run() throws SQLException, InterruptedException {
+        store.migrate();
+        seed();
+        lowStock.loadPendingAlerts();
+        System.out.printf("Running %s on %d threads for %s%n", describeMix(), threads,
+            operationLimit > 0 ? operationLimit + " operations" : seconds + " s");
+        
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong remaining = new AtomicLong(operationLimit > 0 ? operationLimit : Long.MAX_VALUE);
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The ledger fold runs as it would in the application, so reads see a realistic tail
+        int foldSeconds = Math.max(1, Integer.getInteger("inventory.ledger.foldIntervalSeconds", 5));
+        ScheduledExecutorService folding = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-fold");
+            thread.setDaemon(true);
+            return thread;
+        });
+        folding.scheduleWithFixedDelay(() -> {
+            try {
+                store.ledger().fold();
+            } catch (SQLException e) {
+                System.err.println("Error folding stock ledger: " + e.getMessage());
+            }
+        }, foldSeconds, foldSeconds, TimeUnit.SECONDS);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t * 7919L + System.nanoTime();
+            workers.execute(() -> {
+                Random random = new Random(seed);
+                while ((operationLimit > 0 || System.nanoTime() < deadline) && remaining.decrementAndGet() >= 0) {
+                    runOne(pick(random), random);
+                }
+            });
+        }
+        workers.shutdown();
+        
+        long lastAttempts = 0;
+        long lastReport = begin;
+        while (!workers.awaitTermination(reportSeconds, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            long attempts = 0;
+            long failures = 0;
+            for (OperationLoad load : loads) {
+                attempts += load.attempts();
+                failures += load.errors.sum();
+            }
+            System.out.printf("%6.0f s  %10d ops  %10.1f ops/s  %d errors%n", (now - begin) / 1e9, attempts,
+                (attempts - lastAttempts) / ((now - lastReport) / 1e9), failures);
+            lastAttempts = attempts;
+            lastReport = now;
+        }
+        folding.shutdownNow();
+        report((System.nanoTime() - begin) / 1e9);
+    }
+
+    private OperationLoad pick(Random random) {
+        int ticket = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (ticket >= cumulativeWeights[i]) {
+            i++;
+        }
+        return loads.get(i);
+    }
+
+    private static void runOne(OperationLoad load, Random random) {
+        long start = System.nanoTime();
+        try {
+            Outcome outcome = load.operation.run(random);
+            if (outcome == Outcome.CONFLICT) {
+                load.conflicts.increment();
+            } else if (outcome == Outcome.SKIPPED) {
+                load.skipped.increment();
+            }
+        } catch (SQLException e) {
+            if (isConflict(e)) {
+                load.conflicts.increment();
+            } else {
+                load.errors.increment();
+                load.lastError = e.getMessage();
+                return;
+            }
+        } catch (RuntimeException e) {
+            // A bug in one operation is reported like any other error; the worker keeps going
+            load.errors.increment();
+            load.lastError = e.toString();
+            return;
+        }
+        load.latency.record(System.nanoTime() - start);
+    }
+
+    /** Deadlocks and serialization failures: SQLSTATE class 40, transaction rollback. */
+    private static boolean isConflict(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("40");
+    }
+
+    private void report(double elapsed) {
+        System.out.printf("%n%-14s %10s %10s %10s %10s %10s %10s %9s %9s %9s%n", "Operation", "ops", "ops/s",
+            "p50 us", "p99 us", "p999 us", "max us", "conflict%", "skip%", "error%");
+        long totalAttempts = 0;
+        for (OperationLoad load : loads) {
+            long attempts = load.attempts();
+            totalAttempts += attempts;
+            System.out.printf("%-14s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %9.2f %9.2f %9.2f%n", load.name, attempts,
+                attempts / elapsed, load.latency.percentileMicros(50), load.latency.percentileMicros(99),
+                load.latency.percentileMicros(99.9), load.latency.maxMicros(),
+                percent(load.conflicts.sum(), attempts), percent(load.skipped.sum(), attempts),
+                percent(load.errors.sum(), attempts));
+        }
+        System.out.printf("%-14s %10d %10.1f%n", "All", totalAttempts, totalAttempts / elapsed);
+        for (OperationLoad load : loads) {
+            if (load.lastError != null) {
+                System.out.println("Last " + load.name + " error: " + load.lastError);
+            }
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0.0 : part * 100.0 / whole;
+    }
+
+    private String describeMix() {
+        StringBuilder mix = new StringBuilder();
+        for (int i = 0; i < loads.size(); i++) {
+            int weight = cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]);
+            mix.append(i == 0 ? "" : ", ").append(loads.get(i).name).append(' ').append(weight);
+        }
+        return mix.toString();
+    }
+
+    private int randomItem(Random random) {
+        return minItemId + random.nextInt(maxItemId - minItemId + 1);
+    }
+
+    private int randomSupplier(Random random) {
+        return minSupplierId + random.nextInt(maxSupplierId - minSupplierId + 1);
+    }
+
+    /** Adds suppliers and items through the repositories until there are enough; existing ones are reused. */
+    private void seed() throws SQLException {
+        long start = System.nanoTime();
+        // Counted rather than taken from the id range, which deleted rows leave gaps in
+        for (int i = count("suppliers"); i < supplierCount; i++) {
+            store.suppliers().insert("Load supplier " + i, null, null, null);
+        }
+        Random random = new Random(42);
+        for (int i = count("items"); i < itemCount; i++) {
+            store.items().insert("Load item " + i, "seeded by load test", random.nextInt(200),
+                BigDecimal.valueOf(1 + random.nextInt(100_000), 2), 20);
+        }
+        loadIdRanges();
+        System.out.printf("Dataset: items %d-%d, suppliers %d-%d (ready in %.1f s)%n",
+            minItemId, maxItemId, minSupplierId, maxSupplierId, (System.nanoTime() - start) / 1e9);
+    }
+
+    private int count(String table) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void loadIdRanges() throws SQLException {
+        try (PooledConnection conn = store.pool().borrow(); Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(item_id), MAX(item_id) FROM items")) {
+                rs.next();
+                minItemId = rs.getInt(1);
+                maxItemId = rs.getInt(2);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(supplier_id), MAX(supplier_id) FROM suppliers")) {
+                rs.next();
+                minSupplierId = rs.getInt(1);
+                maxSupplierId = rs.getInt(2);
+            }
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package inventory.jmh;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations {@code --bench} measures, under JMH. Each operation is its own trial against
+ * the database at {@code bench.url}, seeded to {@code bench.items}, {@code bench.suppliers} and
+ * {@code bench.orders} on first use and reused after that, exactly as {@code --bench} does.
+ *
+ * <p>JMH does not accept benchmarks in the default package, where the application's classes
+ * live, so the operation is reached through the JDK-typed handle {@code InventoryBenchmark.harness}
+ * returns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryOperations {
+    @Param({"insertItem", "updateItem", "createOrder", "receiveOrder", "receiveShipment",
+        "lowStockScan", "ordersByStatus", "orderDashboard"})
+    public String operation;
+
+    private Callable<?> harness;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Method open = Class.forName("InventoryBenchmark").getDeclaredMethod("harness", String.class, String.class);
+        open.setAccessible(true);
+        harness = (Callable<?>) open.invoke(null, System.getProperty("bench.url", "jdbc:h2:./build/jmh-db"), operation);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return harness.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((AutoCloseable) harness).close();
+    }
+}
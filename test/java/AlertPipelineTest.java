@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AlertPipelineTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void runtimeFailureIsCountedAndLeavesAReconcileOwed() throws Exception {
+        Evaluator evaluator = new Evaluator(store);
+        evaluator.failNext = true;
+        AlertPipeline pipeline = new AlertPipeline(evaluator, new OperationMetrics(), 10, 10, 50L);
+
+        pipeline.publish(Collections.singletonList(1));
+        pipeline.close();
+
+        assertTrue(pipeline.describe().endsWith("failures 1"));
+        assertEquals(1, evaluator.reconciles.get());
+    }
+
+    @Test
+    void overflowIsReconciledBeforeTheWriterExits() throws Exception {
+        Evaluator evaluator = new Evaluator(store);
+        evaluator.hold = new CountDownLatch(1);
+        AlertPipeline pipeline = new AlertPipeline(evaluator, new OperationMetrics(), 1, 1, 0L);
+
+        // The writer holds item 1, item 2 fills the queue and item 3 overflows
+        pipeline.publish(Collections.singletonList(1));
+        assertTrue(evaluator.holding.await(5, TimeUnit.SECONDS));
+        pipeline.publish(Arrays.asList(2, 3));
+        evaluator.hold.countDown();
+        pipeline.close();
+
+        assertEquals(2, evaluator.evaluations.get());
+        assertEquals(1, evaluator.reconciles.get());
+    }
+
+    /** Counts the calls it gets; can fail the next evaluation or hold the first one. */
+    private static final class Evaluator extends LowStockEvaluator {
+        final AtomicInteger evaluations = new AtomicInteger();
+        final AtomicInteger reconciles = new AtomicInteger();
+        final CountDownLatch holding = new CountDownLatch(1);
+        volatile boolean failNext;
+        volatile CountDownLatch hold;
+
+        Evaluator(InventoryStore store) {
+            super(store.items(), store.alerts());
+        }
+
+        @Override
+        List<String> evaluate(Collection<Integer> itemIds) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("evaluation failed");
+            }
+            evaluations.incrementAndGet();
+            holding.countDown();
+            try {
+                if (hold != null) {
+                    hold.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        List<String> reconcile() {
+            reconciles.incrementAndGet();
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BulkItemImporterTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void everyImportedItemCommitsWithItsOpening() throws Exception {
+        ImportReport report = importer(2).importRows(new Rows(5, null));
+
+        assertEquals(5, report.imported);
+        for (int itemId = 1; itemId <= 5; itemId++) {
+            assertEquals(10 * itemId, store.items().find(itemId).quantity);
+            assertEquals(1, count("SELECT COUNT(*) FROM stock_movements WHERE item_id = ? AND movement_type = 'OPENING'", itemId));
+            assertEquals(0, count("SELECT quantity FROM items WHERE item_id = ?", itemId));
+            assertEquals(1, count("SELECT COUNT(*) FROM change_log WHERE entity_id = ?", itemId));
+        }
+        store.ledger().fold();
+        assertEquals(30, count("SELECT quantity FROM items WHERE item_id = ?", 3));
+    }
+
+    @Test
+    void consumptionBetweenImportTransactionsKeepsTheOpeningStock() throws Exception {
+        // Item 1 commits with the first transaction and is consumed before the import ends
+        ImportReport report = importer(2).importRows(new Rows(5, () ->
+            store.items().consume(Collections.singletonMap(1, 4))));
+
+        assertEquals(5, report.imported);
+        assertEquals(6, store.items().find(1).quantity);
+        store.ledger().fold();
+        assertEquals(6, store.items().find(1).quantity);
+        assertEquals(6, count("SELECT quantity FROM items WHERE item_id = ?", 1));
+        assertEquals(0, store.ledger().verify(false).size());
+    }
+
+    private BulkItemImporter importer(int transactionSize) {
+        return new BulkItemImporter(store.pool(), JdbcItemRepository.INSERT_SQL, 1, transactionSize);
+    }
+
+    private int count(String sql, int itemId) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached(sql)) {
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    interface Step {
+        void run() throws SQLException;
+    }
+
+    /** Rows with item i holding 10 * i units; {@code beforeThird} runs once the first two are committed. */
+    private static final class Rows implements ItemRowReader {
+        private final List<Map<String, String>> rows = new ArrayList<>();
+        private final Step beforeThird;
+        private int rowNumber;
+
+        Rows(int count, Step beforeThird) {
+            for (int i = 1; i <= count; i++) {
+                Map<String, String> row = new HashMap<>();
+                row.put("name", "Imported " + i);
+                row.put("quantity", String.valueOf(10 * i));
+                row.put("price", "1.50");
+                row.put("threshold", "2");
+                rows.add(row);
+            }
+            this.beforeThird = beforeThird;
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (rowNumber == 2 && beforeThird != null) {
+                try {
+                    beforeThird.run();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return rowNumber < rows.size() ? rows.get(rowNumber++) : null;
+        }
+
+        @Override
+        public int rowNumber() {
+            return rowNumber;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChangeLogTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void changeCommittedAfterANewerOneComesAfterTheWatermark() throws Exception {
+        long start = store.changes().watermark();
+        long watermark;
+        try (PooledConnection older = store.pool().borrow()) {
+            Connection raw = older.raw();
+            raw.setAutoCommit(false);
+            JdbcChangeLog.record(older, ChangeEntity.ITEM, 1);
+
+            // A newer change commits and is read while the older transaction is still open
+            Transactions.run(store.pool(), conn -> {
+                JdbcChangeLog.record(conn, ChangeEntity.ITEM, 2);
+                return null;
+            });
+            ChangeLog.Batch first = store.changes().since(start, 10);
+            assertEquals(Arrays.asList(2), entityIds(first));
+            watermark = first.watermark;
+            assertEquals(watermark, store.changes().watermark());
+
+            raw.commit();
+        }
+
+        ChangeLog.Batch second = store.changes().since(watermark, 10);
+        assertEquals(Arrays.asList(1), entityIds(second));
+        assertTrue(second.watermark > watermark);
+        assertTrue(store.changes().since(second.watermark, 10).changes.isEmpty());
+    }
+
+    @Test
+    void batchesPageThroughInPositionOrder() throws Exception {
+        Transactions.run(store.pool(), conn -> {
+            for (int id = 1; id <= 5; id++) {
+                JdbcChangeLog.record(conn, ChangeEntity.ORDER, id);
+            }
+            return null;
+        });
+
+        ChangeLog.Batch first = store.changes().since(0, 3);
+        assertEquals(Arrays.asList(1, 2, 3), entityIds(first));
+        assertTrue(first.more);
+        ChangeLog.Batch second = store.changes().since(first.watermark, 3);
+        assertEquals(Arrays.asList(4, 5), entityIds(second));
+        assertFalse(second.more);
+        assertEquals(second.watermark, store.changes().watermark());
+    }
+
+    private static List<Integer> entityIds(ChangeLog.Batch batch) {
+        List<Integer> ids = new ArrayList<>();
+        for (ChangeLog.Change change : batch.changes) {
+            ids.add(change.entityId);
+        }
+        return ids;
+    }
+}
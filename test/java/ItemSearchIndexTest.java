@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ItemSearchIndexTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void shortQueriesMatchSubstringsToo() throws Exception {
+        ItemSearchIndex index = new ItemSearchIndex();
+        index.put(1, "Blue Widget", "");
+        index.put(2, "Gadget", "fits a bx-9 socket");
+        index.put(3, "Sprocket", "");
+
+        assertEquals(Arrays.asList(1), index.search("bl", 10));
+        assertEquals(Arrays.asList(2), index.search("bx", 10));
+        assertEquals(Arrays.asList(2, 3), index.search("ck", 10));
+        assertEquals(Arrays.asList(3), index.search("ro", 10));
+        assertEquals(Collections.emptyList(), index.search("zq", 10));
+    }
+
+    @Test
+    void repeatedLoadsPickUpItemsCommittedAfterNewerOnes() throws Exception {
+        ItemSearchIndex index = new ItemSearchIndex();
+        store.items().insert("Anvil", "", 1, BigDecimal.ONE, 0);
+        assertEquals(1, index.load(store.items()));
+
+        int olderId;
+        try (PooledConnection older = store.pool().borrow()) {
+            Connection raw = older.raw();
+            raw.setAutoCommit(false);
+            olderId = insert(older, "Bellows");
+            // A newer item commits and is indexed while the older one is still uncommitted
+            store.items().insert("Chisel", "", 1, BigDecimal.ONE, 0);
+            assertEquals(1, index.load(store.items()));
+            raw.commit();
+        }
+
+        index.load(store.items());
+        assertEquals(Arrays.asList(olderId), index.search("bellows", 10));
+        assertEquals(3, index.size());
+    }
+
+    private static int insert(PooledConnection conn, String name) throws Exception {
+        try (PreparedStatement stmt = conn.raw().prepareStatement(JdbcItemRepository.INSERT_SQL,
+                 Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, name);
+            stmt.setString(2, "");
+            stmt.setInt(3, 0);
+            stmt.setBigDecimal(4, BigDecimal.ONE);
+            stmt.setInt(5, 0);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                assertTrue(keys.next());
+                return keys.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JdbcOrderRepositoryTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void dryRunReorderDoesNotWaitForLockedItems() throws Exception {
+        int itemId = store.items().insert("Widget", "", 1, BigDecimal.ONE, 5);
+        try (PooledConnection locker = store.pool().borrow()) {
+            Connection raw = locker.raw();
+            raw.setAutoCommit(false);
+            try (PreparedStatement stmt = locker.prepareUncached(
+                    "SELECT item_id FROM items WHERE item_id = ? FOR UPDATE")) {
+                stmt.setInt(1, itemId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                }
+            }
+
+            long start = System.nanoTime();
+            OrderRepository.ReorderPlan plan = store.orders().reorder(2.0, 1, true);
+            assertEquals(1, plan.orderCount());
+            assertEquals(9, plan.bySupplier.get(1).get(0).quantity);
+            assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReplicaRouterTest {
+    private InventoryStore primary;
+    private InventoryStore copy;
+    private ReplicaRouter router;
+    private ReplicaRouter.Replica replica;
+
+    @BeforeEach
+    void openStores() throws Exception {
+        primary = TestStores.open();
+        copy = TestStores.open();
+        // The copy has applied a heartbeat from now, and never applies another
+        Thread.sleep(5);
+        try (PooledConnection conn = copy.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached(
+                 "UPDATE replication_heartbeat SET beat_millis = ? WHERE heartbeat_id = 1")) {
+            stmt.setLong(1, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+        replica = new ReplicaRouter.Replica("copy", copy.pool());
+        router = new ReplicaRouter(primary.pool(), Collections.singletonList(replica), 20, 60000, true);
+        for (int i = 0; i < 250 && replica.appliedMillis == 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @AfterEach
+    void closeStores() {
+        router.close();
+        copy.close();
+        primary.close();
+    }
+
+    @Test
+    void writeOnAnotherThreadKeepsReadsOnThePrimary() throws Exception {
+        readOnce();
+        assertEquals(1, replica.reads.sum());
+        assertEquals(0, router.primaryReads());
+
+        Thread.sleep(5);
+        Thread writer = new Thread(() -> {
+            try {
+                Transactions.run(primary.pool(), conn -> null);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        writer.join();
+
+        readOnce();
+        assertEquals(1, replica.reads.sum());
+        assertEquals(1, router.primaryReads());
+        assertTrue(primary.pool().lastWriteMillis() > replica.appliedMillis);
+    }
+
+    private void readOnce() throws SQLException {
+        try (PooledConnection conn = router.borrow()) {
+            conn.raw().isValid(1);
+        }
+    }
+}
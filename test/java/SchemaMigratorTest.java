@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SchemaMigratorTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.openEmpty();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void concurrentMigrationsApplyEachVersionOnce() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(threads.submit(() -> new SchemaMigrator(store.pool(), SqlDialect.H2).migrate()));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(SchemaMigrator.latestVersion(), result.get().intValue());
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(SchemaMigrator.latestVersion(), count("SELECT COUNT(*) FROM schema_version"));
+    }
+
+    @Test
+    void interruptedMigrationResumesAfterItsLastStep() throws Exception {
+        int latest = store.migrate();
+        // As if the process died before the last of migration 10's five steps
+        execute("DELETE FROM schema_version WHERE version >= 10");
+        execute("DROP TABLE stock_consumer");
+        execute("DELETE FROM change_feed");
+        for (int step = 0; step < 4; step++) {
+            execute("INSERT INTO schema_migration_steps (version, step, applied_at) " +
+                "VALUES (10, " + step + ", CURRENT_TIMESTAMP)");
+        }
+
+        assertEquals(latest, store.migrate());
+        assertEquals(1, count("SELECT COUNT(*) FROM change_feed"));
+        assertEquals(0, count("SELECT COUNT(*) FROM schema_migration_steps"));
+    }
+
+    @Test
+    void onlyAMissingVersionTableCountsAsVersionZero() throws Exception {
+        execute("CREATE TABLE schema_version (applied_at TIMESTAMP)");
+
+        assertThrows(SQLException.class, store::migrate);
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached(sql)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
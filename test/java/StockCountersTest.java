@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockCountersTest {
+    private InventoryStore store;
+    private AlertPipeline alerts;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+        alerts = new AlertPipeline(new LowStockEvaluator(store.items(), store.alerts()), new OperationMetrics(),
+            100, 10, 50L);
+    }
+
+    @AfterEach
+    void closeStore() {
+        alerts.close();
+        store.close();
+    }
+
+    @Test
+    void flushWritesEachItemsConsumptionAsOneMovement() throws Exception {
+        int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 2);
+        StockCounters counters = counters(60_000L, 60_000L);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(StockCounters.Outcome.ACCEPTED, counters.consume(itemId, 2).outcome);
+        }
+        assertEquals(StockCounters.Outcome.INSUFFICIENT, counters.consume(itemId, 5).outcome);
+        assertEquals(10, store.items().find(itemId).quantity);
+
+        counters.close();
+        assertEquals(4, store.items().find(itemId).quantity);
+        assertEquals(1, count("SELECT COUNT(*) FROM stock_movements WHERE item_id = ? AND quantity_delta = -6", itemId));
+    }
+
+    @Test
+    void periodicRefreshPicksUpStockChangedElsewhere() throws Exception {
+        int itemId = store.items().insert("Widget", "", 5, BigDecimal.ONE, 0);
+        StockCounters counters = counters(20L, 50L);
+        assertEquals(4, counters.consume(itemId, 1).available);
+        waitFor(() -> store.items().find(itemId).quantity == 4);
+
+        // As another process receiving stock would, without telling these counters
+        store.items().update(itemId, null, null, 20, null, null);
+        waitFor(() -> counters.consume(itemId, 15).outcome == StockCounters.Outcome.ACCEPTED);
+        counters.close();
+        assertEquals(5, store.items().find(itemId).quantity);
+    }
+
+    @Test
+    void onlyOneConsumerAtATime() throws Exception {
+        int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 0);
+        StockCounters first = counters(60_000L, 60_000L);
+        StockCounters second = counters(60_000L, 60_000L);
+        first.consume(itemId, 1);
+
+        assertThrows(SQLException.class, () -> second.consume(itemId, 1));
+        first.close();
+        assertEquals(8, second.consume(itemId, 1).available);
+        second.close();
+        assertEquals(8, store.items().find(itemId).quantity);
+    }
+
+    private StockCounters counters(long flushMillis, long refreshMillis) {
+        return new StockCounters(store.items(), new StockConsumerClaim(store.pool(), store.dialect()), alerts,
+            itemIds -> { }, new OperationMetrics(), 4, flushMillis, refreshMillis);
+    }
+
+    interface Condition {
+        boolean holds() throws SQLException;
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        boolean held = condition.holds();
+        for (int i = 0; i < 250 && !held; i++) {
+            Thread.sleep(20);
+            held = condition.holds();
+        }
+        assertTrue(held);
+    }
+
+    private int count(String sql, int itemId) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached(sql)) {
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockLedgerTest {
+    private InventoryStore store;
+
+    @BeforeEach
+    void openStore() throws Exception {
+        store = TestStores.open();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void foldAddsUnfoldedMovementsOnce() throws Exception {
+        int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 2);
+        assertEquals(10, store.items().find(itemId).quantity);
+        assertEquals(0, foldedQuantity(itemId));
+
+        assertEquals(1, store.ledger().fold());
+        assertEquals(10, foldedQuantity(itemId));
+        assertEquals(0, store.ledger().fold());
+        assertEquals(10, store.items().find(itemId).quantity);
+    }
+
+    @Test
+    void movementCommittedAfterANewerOneIsStillFoldedAndSnapshotted() throws Exception {
+        final int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 2);
+        store.ledger().fold();
+        store.ledger().takeSnapshot();
+
+        long olderId;
+        long newerId;
+        try (PooledConnection older = store.pool().borrow()) {
+            Connection raw = older.raw();
+            raw.setAutoCommit(false);
+            JdbcStockLedger.append(older, itemId, MovementType.RECEIPT, 5, 0);
+            olderId = lastMovement(older, itemId);
+
+            // A newer movement commits, and the fold and a snapshot run, while the older is open
+            newerId = Transactions.run(store.pool(), conn -> {
+                JdbcStockLedger.append(conn, itemId, MovementType.CONSUMPTION, -3, 0);
+                return lastMovement(conn, itemId);
+            });
+            assertEquals(1, store.ledger().fold());
+            assertEquals(1, store.ledger().takeSnapshot());
+            assertEquals(7, store.items().find(itemId).quantity);
+
+            raw.commit();
+        }
+        assertTrue(olderId < newerId);
+        assertEquals(12, store.items().find(itemId).quantity);
+
+        assertEquals(1, store.ledger().fold());
+        assertEquals(1, store.ledger().takeSnapshot());
+        assertEquals(12, foldedQuantity(itemId));
+        assertEquals(12, store.items().find(itemId).quantity);
+        assertTrue(store.ledger().verify(false).isEmpty());
+    }
+
+    @Test
+    void snapshotsOnlyMoveForwardWithTheFold() throws Exception {
+        int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 2);
+        assertEquals(0, store.ledger().takeSnapshot());
+
+        store.ledger().fold();
+        assertEquals(1, store.ledger().takeSnapshot());
+        assertEquals(0, store.ledger().takeSnapshot());
+
+        store.items().consume(Collections.singletonMap(itemId, 4));
+        assertEquals(0, store.ledger().takeSnapshot());
+        store.ledger().fold();
+        assertEquals(1, store.ledger().takeSnapshot());
+        assertEquals(6, store.ledger().quantityAt(itemId, new Timestamp(System.currentTimeMillis() + 1000)));
+        assertTrue(store.ledger().verify(false).isEmpty());
+    }
+
+    @Test
+    void verifyRepairsDriftFromTheLedger() throws Exception {
+        int itemId = store.items().insert("Widget", "", 10, BigDecimal.ONE, 2);
+        store.ledger().fold();
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached("UPDATE items SET quantity = quantity + 7 WHERE item_id = ?")) {
+            stmt.setInt(1, itemId);
+            stmt.executeUpdate();
+        }
+
+        assertEquals(1, store.ledger().verify(false).size());
+        assertEquals(1, store.ledger().verify(true).size());
+        assertEquals(10, store.items().find(itemId).quantity);
+        assertTrue(store.ledger().verify(false).isEmpty());
+    }
+
+    private int foldedQuantity(int itemId) throws SQLException {
+        try (PooledConnection conn = store.pool().borrow();
+             PreparedStatement stmt = conn.prepareUncached("SELECT quantity FROM items WHERE item_id = ?")) {
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static long lastMovement(PooledConnection conn, int itemId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareUncached(
+                "SELECT MAX(movement_id) FROM stock_movements WHERE item_id = ?")) {
+            stmt.setInt(1, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Opens stores on private in-memory H2 databases, one per test. */
+final class TestStores {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private TestStores() {
+    }
+
+    /** A store whose schema is up to date. */
+    static InventoryStore open() throws SQLException, ClassNotFoundException {
+        InventoryStore store = openEmpty();
+        store.migrate();
+        return store;
+    }
+
+    /** A store on a database with no tables yet. */
+    static InventoryStore openEmpty() throws SQLException, ClassNotFoundException {
+        String url = "jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        return InventoryStore.open(new DatabaseConfig(SqlDialect.H2, url, "sa", "", 4, 5000, 50), null);
+    }
+}